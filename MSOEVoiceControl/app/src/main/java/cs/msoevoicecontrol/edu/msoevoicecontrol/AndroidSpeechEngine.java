@@ -0,0 +1,130 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This engine records from the microphone with the pocketsphinx Android recognizer.  The
+ * recognizer decodes on its own thread and calls the listeners on the main thread.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+import edu.cmu.pocketsphinx.SpeechRecognizer;
+import edu.cmu.pocketsphinx.SpeechRecognizerSetup;
+
+public class AndroidSpeechEngine implements SpeechEngine {
+
+    private final SpeechRecognizer recognizer;
+    private final GrammarCache grammarCache;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * @param acousticModel directory of the acoustic model
+     * @param dictionary pronunciation dictionary
+     * @param grammarCache where compiled grammars are kept
+     * @throws IOException if the recorder cannot be set up
+     */
+    public AndroidSpeechEngine(File acousticModel, File dictionary, GrammarCache grammarCache) throws IOException {
+        this.grammarCache = grammarCache;
+        recognizer = SpeechRecognizerSetup.defaultSetup()
+                .setAcousticModel(acousticModel)
+                .setDictionary(dictionary)
+                .getRecognizer();
+        recognizer.addListener(new RecognitionListener() {
+            @Override
+            public void onBeginningOfSpeech() {
+                for (Listener listener : listeners) {
+                    listener.onBeginningOfSpeech();
+                }
+            }
+
+            @Override
+            public void onEndOfSpeech() {
+                for (Listener listener : listeners) {
+                    listener.onEndOfSpeech();
+                }
+            }
+
+            @Override
+            public void onPartialResult(Hypothesis hypothesis) {
+                String text = text(hypothesis);
+                for (Listener listener : listeners) {
+                    listener.onPartialResult(text);
+                }
+            }
+
+            @Override
+            public void onResult(Hypothesis hypothesis) {
+                String text = text(hypothesis);
+                for (Listener listener : listeners) {
+                    listener.onResult(text);
+                }
+            }
+
+            @Override
+            public void onError(Exception error) {
+                for (Listener listener : listeners) {
+                    listener.onError(error);
+                }
+            }
+
+            @Override
+            public void onTimeout() {
+                for (Listener listener : listeners) {
+                    listener.onTimeout();
+                }
+            }
+        });
+    }
+
+    private static String text(Hypothesis hypothesis) {
+        return hypothesis == null ? null : hypothesis.getHypstr();
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public GrammarCache.Source addGrammarSearch(String name, File grammar, File dictionary) throws IOException {
+        return grammarCache.addSearch(recognizer.getDecoder(), name, grammar, dictionary);
+    }
+
+    @Override
+    public void addKeywordSearch(String name, File keywords) {
+        recognizer.addKeywordSearch(name, keywords);
+    }
+
+    @Override
+    public boolean startListening(String searchName) {
+        return recognizer.startListening(searchName);
+    }
+
+    @Override
+    public boolean startListening(String searchName, int timeoutMs) {
+        return recognizer.startListening(searchName, timeoutMs);
+    }
+
+    @Override
+    public boolean stop() {
+        return recognizer.stop();
+    }
+
+    @Override
+    public boolean cancel() {
+        return recognizer.cancel();
+    }
+
+    @Override
+    public void shutdown() {
+        recognizer.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class reads the assets packaged in the APK for the {@link AssetStore}.  Uncompressed
+ * assets are copied straight from the APK file with a channel transfer; compressed ones
+ * fall back to a channel over the asset stream.
+ */
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+public class ApkAssetSource implements AssetStore.Source {
+
+    private final AssetManager assets;
+
+    public ApkAssetSource(AssetManager assets) {
+        this.assets = assets;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return assets.open(path);
+    }
+
+    @Override
+    public void copyTo(String path, FileChannel target) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(path);
+        } catch (FileNotFoundException compressed) {
+            copyStream(path, target);
+            return;
+        }
+        try {
+            //the stream does not own the descriptor, closing the AssetFileDescriptor closes it
+            FileChannel apk = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+            long position = descriptor.getStartOffset();
+            long remaining = descriptor.getLength();
+            while (remaining > 0) {
+                long sent = apk.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    throw new IOException("Short read copying " + path);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    private void copyStream(String path, FileChannel target) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(assets.open(path));
+        try {
+            long position = 0;
+            long sent;
+            while ((sent = target.transferFrom(in, position, 1 << 20)) > 0) {
+                position += sent;
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
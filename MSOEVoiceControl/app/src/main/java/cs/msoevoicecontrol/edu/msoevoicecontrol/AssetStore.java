@@ -0,0 +1,205 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class keeps an on-disk copy of the recognizer assets in step with the APK.  The build
+ * writes a manifest with the hash, size and path of every asset and a version line that
+ * hashes the whole manifest.  When the installed version matches, syncing only compares the
+ * two version lines.  Otherwise only the files whose hash changed are copied, in parallel,
+ * and the installed manifest is replaced last so an interrupted sync is retried.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AssetStore {
+
+    public static final String MANIFEST_NAME = "assets.manifest";
+    public static final String SYNC_DIR = "sync";
+    private static final String INSTALLED_MANIFEST = ".manifest";
+    private static final String VERSION_PREFIX = "# ";
+    private static final int MAX_COPY_THREADS = 4;
+
+    /**
+     * Where the packaged assets are read from
+     */
+    public interface Source {
+        /**
+         * @param path asset path, relative to the asset root
+         */
+        InputStream open(String path) throws IOException;
+
+        /**
+         * This copies an asset into the target channel, which is empty and positioned at zero
+         * @param path asset path, relative to the asset root
+         */
+        void copyTo(String path, FileChannel target) throws IOException;
+    }
+
+    private final Source source;
+    private final File root;
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+
+    /**
+     * @param source the packaged assets
+     * @param root directory the {@value #SYNC_DIR} assets are installed into
+     */
+    public AssetStore(Source source, File root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * This brings the installed assets up to date with the packaged manifest
+     * @return the directory the assets are installed in
+     * @throws IOException if an asset cannot be read or written
+     */
+    public File sync() throws IOException {
+        File installed = new File(root, INSTALLED_MANIFEST);
+        String packagedVersion = readVersion(source.open(MANIFEST_NAME));
+        if (installed.isFile() && packagedVersion.equals(readVersion(new FileInputStream(installed)))) {
+            return root;
+        }
+
+        Map<String, String> packaged = readEntries(source.open(MANIFEST_NAME));
+        Map<String, String> current = installed.isFile()
+                ? readEntries(new FileInputStream(installed))
+                : new HashMap<String, String>();
+
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : packaged.entrySet()) {
+            String path = entry.getKey();
+            if (!entry.getValue().equals(current.get(path)) || !new File(root, path).isFile()) {
+                changed.add(path);
+            }
+        }
+        for (String path : current.keySet()) {
+            if (!packaged.containsKey(path)) {
+                new File(root, path).delete();
+            }
+        }
+
+        //the installed manifest is dropped first so a failed copy is redone next time
+        installed.delete();
+        copyAll(changed);
+        copyFile(MANIFEST_NAME, installed);
+        return root;
+    }
+
+    private void copyAll(List<String> paths) throws IOException {
+        if (paths.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(paths.size(), Math.min(MAX_COPY_THREADS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> copies = new ArrayList<>();
+            for (final String path : paths) {
+                copies.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        copyFile(SYNC_DIR + "/" + path, new File(root, path));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> copy : copies) {
+                copy.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying assets");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void copyFile(String assetPath, File target) throws IOException {
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temp = new File(parent, target.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            FileChannel channel = out.getChannel();
+            source.copyTo(assetPath, channel);
+            copiedBytes.addAndGet(channel.size());
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(target)) {
+            target.delete();
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot move " + temp + " to " + target);
+            }
+        }
+        copiedFiles.incrementAndGet();
+    }
+
+    private static String readVersion(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(VERSION_PREFIX)) {
+                throw new IOException("Asset manifest has no version line");
+            }
+            return line.substring(VERSION_PREFIX.length()).trim();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * This reads the manifest as a map of path to hash
+     */
+    private static Map<String, String> readEntries(InputStream in) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith(VERSION_PREFIX)) {
+                    continue;
+                }
+                //hash size path, where the path may contain spaces
+                String[] fields = line.split(" ", 3);
+                if (fields.length != 3) {
+                    throw new IOException("Bad asset manifest line: " + line);
+                }
+                entries.put(fields[2], fields[0]);
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    public long getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+}
@@ -0,0 +1,65 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This enum lists what the connected product can do.  A set of capabilities is an int with
+ * one bit per value, computed once per product, component or connectivity change, so
+ * checking one is a single bit test.
+ */
+
+public enum Capability {
+    PRODUCT,
+    CONNECTED,
+    AIRCRAFT,
+    HANDHELD,
+    CAMERA,
+    PLAYBACK,
+    MEDIA_MANAGER,
+    REMOTE_CONTROLLER,
+    FLIGHT_CONTROLLER,
+    COMPASS,
+    SIMULATOR,
+    GIMBAL,
+    AIRLINK,
+    WIFI_LINK,
+    LIGHTBRIDGE_LINK,
+    BATTERY;
+
+    /** this capability's bit */
+    public final int mask = 1 << ordinal();
+
+    /**
+     * @return whether this capability is in the set
+     */
+    public boolean in(int capabilities) {
+        return (capabilities & mask) != 0;
+    }
+
+    /**
+     * @return whether the set changed from not having this capability to having it
+     */
+    public boolean gained(int previous, int current) {
+        return !in(previous) && in(current);
+    }
+
+    /**
+     * @return whether the set changed from having this capability to not having it
+     */
+    public boolean lost(int previous, int current) {
+        return in(previous) && !in(current);
+    }
+
+    /**
+     * @return the names of the capabilities in the set, for logging
+     */
+    public static String describe(int capabilities) {
+        StringBuilder names = new StringBuilder("[");
+        for (Capability capability : values()) {
+            if (capability.in(capabilities)) {
+                if (names.length() > 1) {
+                    names.append(", ");
+                }
+                names.append(capability.name());
+            }
+        }
+        return names.append(']').toString();
+    }
+}
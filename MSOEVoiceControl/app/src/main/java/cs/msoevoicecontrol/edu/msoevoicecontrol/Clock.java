@@ -0,0 +1,20 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This interface is the time source for the control code, so it can run on the system
+ * clock on the phone and on a {@link VirtualClock} in the simulator.
+ */
+
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return the current time in nanoseconds, with the same meaning as {@link System#nanoTime()}
+     */
+    long nanoTime();
+}
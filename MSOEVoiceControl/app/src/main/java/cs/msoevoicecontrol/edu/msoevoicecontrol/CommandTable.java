@@ -0,0 +1,619 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class compiles the phrases of a JSGF grammar into an immutable token trie that maps
+ * each phrase to its {@link VoiceCommand}, and parses the aircraft a command is addressed to
+ * and the amount spoken after a move or turn.
+ * A hypothesis is read once: each word is hashed in place and resolved to a word id without
+ * creating substrings, and the ids drive the trie and a small number state machine.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CommandTable {
+
+    private static final int NO_EDGE = -1;
+    private static final int UNKNOWN_WORD = -1;
+
+    // what a word means inside an amount
+    private static final int PHRASE = 0;
+    private static final int DIGIT = 1;
+    private static final int TEEN = 2;
+    private static final int TENS = 3;
+    private static final int HUNDRED = 4;
+    private static final int AND = 5;
+    private static final int POINT = 6;
+    private static final int UNIT = 7;
+    private static final int ALL = 8;
+
+    // where the number state machine is
+    private static final int START = 0;
+    private static final int AFTER_DIGIT = 1;
+    private static final int AFTER_TENS = 2;
+    private static final int AFTER_HUNDRED = 3;
+    private static final int AFTER_AND = 4;
+    private static final int WHOLE = 5;
+    private static final int AFTER_POINT = 6;
+    private static final int FRACTION = 7;
+
+    private static final String[] DIGITS = {
+            "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine"};
+    private static final String[] TEENS = {
+            "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen",
+            "seventeen", "eighteen", "nineteen"};
+    private static final String[] DECADES = {
+            "twenty", "thirty", "forty", "fifty", "sixty", "seventy", "eighty", "ninety"};
+
+    //words the parser knows without the grammar, and what they mean
+    private static final Map<String, Integer> WORD_KINDS = new LinkedHashMap<>();
+    private static final Map<String, Integer> WORD_VALUES = new LinkedHashMap<>();
+    private static final SpokenCommand.Unit[] UNITS = SpokenCommand.Unit.values();
+
+    static {
+        for (int i = 0; i < DIGITS.length; i++) {
+            parserWord(DIGITS[i], DIGIT, i);
+        }
+        for (int i = 0; i < TEENS.length; i++) {
+            parserWord(TEENS[i], TEEN, 10 + i);
+        }
+        for (int i = 0; i < DECADES.length; i++) {
+            parserWord(DECADES[i], TENS, 20 + 10 * i);
+        }
+        parserWord("hundred", HUNDRED, 100);
+        parserWord("and", AND, 0);
+        parserWord("point", POINT, 0);
+        parserWord("meter", UNIT, SpokenCommand.Unit.METERS.ordinal());
+        parserWord("meters", UNIT, SpokenCommand.Unit.METERS.ordinal());
+        parserWord("metre", UNIT, SpokenCommand.Unit.METERS.ordinal());
+        parserWord("metres", UNIT, SpokenCommand.Unit.METERS.ordinal());
+        parserWord("foot", UNIT, SpokenCommand.Unit.FEET.ordinal());
+        parserWord("feet", UNIT, SpokenCommand.Unit.FEET.ordinal());
+        parserWord("degree", UNIT, SpokenCommand.Unit.DEGREES.ordinal());
+        parserWord("degrees", UNIT, SpokenCommand.Unit.DEGREES.ordinal());
+        parserWord("all", ALL, SpokenCommand.ALL);
+    }
+
+    private final String[] words;
+    private final int[] wordHashes;
+    private final int[] kinds;
+    private final int[] values;
+    private final int[] slots;
+    private final int slotMask;
+    private final int[] transitions;
+    private final VoiceCommand[] accepts;
+    private final boolean[] extendable;
+    private final int vocabularySize;
+
+    private CommandTable(List<String> phraseWords, int[] transitions, VoiceCommand[] accepts) {
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.vocabularySize = phraseWords.size();
+        this.extendable = new boolean[accepts.length];
+        for (int i = 0; i < transitions.length; i++) {
+            if (transitions[i] != NO_EDGE) {
+                extendable[i / vocabularySize] = true;
+            }
+        }
+
+        // phrase words come first so their ids index the transition rows
+        List<String> all = new ArrayList<>(phraseWords);
+        for (String word : WORD_KINDS.keySet()) {
+            if (!all.contains(word)) {
+                all.add(word);
+            }
+        }
+        words = all.toArray(new String[all.size()]);
+        wordHashes = new int[words.length];
+        kinds = new int[words.length];
+        values = new int[words.length];
+        int capacity = Integer.highestOneBit(words.length * 4 - 1);
+        slots = new int[capacity];
+        slotMask = capacity - 1;
+        Arrays.fill(slots, UNKNOWN_WORD);
+        for (int id = 0; id < words.length; id++) {
+            Integer kind = WORD_KINDS.get(words[id]);
+            if (kind != null) {
+                kinds[id] = kind;
+                values[id] = WORD_VALUES.get(words[id]);
+            }
+            wordHashes[id] = words[id].hashCode();
+            int slot = wordHashes[id] & slotMask;
+            while (slots[slot] != UNKNOWN_WORD) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    /**
+     * This compiles the grammar file
+     * @param grammar JSGF grammar file
+     * @return the compiled table
+     * @throws IOException if the grammar cannot be read
+     */
+    public static CommandTable compile(File grammar) throws IOException {
+        Reader reader = new FileReader(grammar);
+        try {
+            return compile(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * This compiles every rule of the grammar that is a plain list of word alternatives.
+     * Rules that reference other rules, such as {@code <move_or_turn> [<amount>]}, are skipped, as are
+     * rules made only of words the parser knows, such as numbers, units and "all".
+     * @param grammar JSGF grammar source
+     * @return the compiled table
+     * @throws IOException if the grammar cannot be read
+     * @throws IllegalArgumentException if a phrase does not end with a command keyword
+     */
+    public static CommandTable compile(Reader grammar) throws IOException {
+        List<String[]> phrases = new ArrayList<>();
+        for (String body : readRuleBodies(grammar)) {
+            if (body.indexOf('<') >= 0) {
+                continue;
+            }
+            for (String alternative : body.split("\\|")) {
+                String phrase = alternative.trim();
+                if (!phrase.isEmpty()) {
+                    String[] tokens = phrase.split("\\s+");
+                    if (!isParserWords(tokens)) {
+                        phrases.add(tokens);
+                    }
+                }
+            }
+        }
+
+        Map<String, Integer> vocabulary = new LinkedHashMap<>();
+        for (String[] tokens : phrases) {
+            for (String token : tokens) {
+                if (!vocabulary.containsKey(token)) {
+                    vocabulary.put(token, vocabulary.size());
+                }
+            }
+        }
+
+        int vocabularySize = vocabulary.size();
+        List<int[]> rows = new ArrayList<>();
+        List<VoiceCommand> accepts = new ArrayList<>();
+        rows.add(newRow(vocabularySize));
+        accepts.add(null);
+        for (String[] tokens : phrases) {
+            VoiceCommand command = VoiceCommand.forKeyword(tokens[tokens.length - 1]);
+            if (command == null) {
+                throw new IllegalArgumentException("No command for phrase: " + Arrays.toString(tokens));
+            }
+            int node = 0;
+            for (String token : tokens) {
+                int id = vocabulary.get(token);
+                if (rows.get(node)[id] == NO_EDGE) {
+                    rows.get(node)[id] = rows.size();
+                    rows.add(newRow(vocabularySize));
+                    accepts.add(null);
+                }
+                node = rows.get(node)[id];
+            }
+            accepts.set(node, command);
+        }
+
+        int[] transitions = new int[rows.size() * vocabularySize];
+        for (int i = 0; i < rows.size(); i++) {
+            System.arraycopy(rows.get(i), 0, transitions, i * vocabularySize, vocabularySize);
+        }
+        return new CommandTable(new ArrayList<>(vocabulary.keySet()), transitions,
+                accepts.toArray(new VoiceCommand[accepts.size()]));
+    }
+
+    /**
+     * This looks up a single phrase
+     * @param phrase words separated by single spaces
+     * @return the command or null if the phrase is not in the grammar
+     */
+    public VoiceCommand lookup(String phrase) {
+        int node = 0;
+        int position = 0;
+        int length = phrase.length();
+        while (position < length) {
+            int end = phrase.indexOf(' ', position);
+            if (end < 0) {
+                end = length;
+            }
+            node = next(node, find(phrase, position, end));
+            if (node == NO_EDGE) {
+                return null;
+            }
+            position = end + 1;
+        }
+        return accepts[node];
+    }
+
+    /**
+     * This splits a hypothesis into its commands, taking the longest phrase at each point.
+     * Words that do not start a phrase are skipped.
+     * @param hypothesis words separated by spaces
+     * @param out cleared, then filled with the commands in spoken order
+     * @return how many commands were found
+     */
+    public int parse(String hypothesis, Parsed out) {
+        return parse(hypothesis, out, true);
+    }
+
+    /**
+     * This splits a hypothesis into its commands, taking the longest phrase at each point,
+     * the address before it and the amount after each move or turn.  An address is "all" or
+     * a whole number; a number right after a move or turn is always read as its amount.
+     * For a partial hypothesis the last command is left out while more words could still
+     * change it: a phrase that could grow into a longer one, or a move or turn at the very
+     * end whose amount may not be spoken yet.
+     * @param hypothesis words separated by spaces
+     * @param out cleared, then filled with the commands in spoken order
+     * @param complete false if the speaker may still be talking
+     * @return how many commands were found
+     */
+    public int parse(String hypothesis, Parsed out, boolean complete) {
+        out.clear();
+        int count = tokenize(hypothesis, out);
+        int[] tokens = out.tokens;
+        int position = 0;
+        while (position < count) {
+            int target = SpokenCommand.NO_TARGET;
+            int phraseStart = readTarget(tokens, position, count, out);
+            if (phraseStart > position) {
+                target = out.target;
+            }
+            int node = 0;
+            VoiceCommand match = null;
+            int matchEnd = position;
+            boolean open = false;
+            for (int i = phraseStart; i < count; i++) {
+                node = next(node, tokens[i]);
+                if (node == NO_EDGE) {
+                    break;
+                }
+                if (accepts[node] != null) {
+                    match = accepts[node];
+                    matchEnd = i + 1;
+                }
+                open = i == count - 1 && extendable[node];
+            }
+            if (!complete && open) {
+                break;
+            }
+            if (match == null) {
+                position++;
+                continue;
+            }
+
+            position = matchEnd;
+            double amount = Double.NaN;
+            SpokenCommand.Unit unit = SpokenCommand.Unit.NONE;
+            if (match.takesAmount()) {
+                int end = readNumber(tokens, position, count, out);
+                if (end > position) {
+                    amount = out.number;
+                    position = end;
+                    if (position < count && tokens[position] != UNKNOWN_WORD && kinds[tokens[position]] == UNIT) {
+                        unit = UNITS[values[tokens[position]]];
+                        position++;
+                    }
+                }
+                if (!complete && (out.unfinished || position == count && unit == SpokenCommand.Unit.NONE)) {
+                    break;
+                }
+            }
+            out.add(match, amount, unit, target);
+        }
+        return out.size;
+    }
+
+    /**
+     * This reads the address of a command starting at {@code start}
+     * @return the index after the address, or {@code start} if there is none
+     */
+    private int readTarget(int[] tokens, int start, int count, Parsed out) {
+        int id = tokens[start];
+        if (id != UNKNOWN_WORD && kinds[id] == ALL) {
+            out.target = SpokenCommand.ALL;
+            return start + 1;
+        }
+        int end = readNumber(tokens, start, count, out);
+        if (end == start || out.number < 1 || out.number != Math.floor(out.number)) {
+            return start;
+        }
+        out.target = (int) out.number;
+        return end;
+    }
+
+    /**
+     * This reads a number such as "three", "forty two", "one hundred and five" or
+     * "two point five" starting at {@code start}
+     * @return the index after the last word of the number, or {@code start} if there is none
+     *         ({@link Parsed#unfinished} is set if the hypothesis ends in a dangling "and" or "point")
+     */
+    private int readNumber(int[] tokens, int start, int count, Parsed out) {
+        int state = START;
+        int whole = 0;
+        long fraction = 0;
+        long divisor = 1;
+        int end = start;
+        int i = start;
+        for (; i < count; i++) {
+            int id = tokens[i];
+            if (id == UNKNOWN_WORD) {
+                break;
+            }
+            int kind = kinds[id];
+            int value = values[id];
+            if (state == AFTER_POINT || state == FRACTION) {
+                if (kind != DIGIT) {
+                    break;
+                }
+                if (divisor < 1000000000L) {
+                    fraction = fraction * 10 + value;
+                    divisor *= 10;
+                }
+                state = FRACTION;
+                end = i + 1;
+                continue;
+            }
+            if (kind == POINT) {
+                if (state == START || state == AFTER_AND) {
+                    break;
+                }
+                // not consumed until a digit follows
+                state = AFTER_POINT;
+                continue;
+            }
+
+            int next = -1;
+            switch (state) {
+                case START:
+                    if (kind == DIGIT) {
+                        next = AFTER_DIGIT;
+                    } else if (kind == TEEN) {
+                        next = WHOLE;
+                    } else if (kind == TENS) {
+                        next = AFTER_TENS;
+                    }
+                    break;
+                case AFTER_DIGIT:
+                    if (kind == HUNDRED && whole > 0) {
+                        whole *= 100;
+                        value = 0;
+                        next = AFTER_HUNDRED;
+                    }
+                    break;
+                case AFTER_TENS:
+                    if (kind == DIGIT && value > 0) {
+                        next = WHOLE;
+                    }
+                    break;
+                case AFTER_HUNDRED:
+                case AFTER_AND:
+                    if (kind == AND && state == AFTER_HUNDRED) {
+                        // not consumed until the rest of the number follows
+                        state = AFTER_AND;
+                        continue;
+                    }
+                    if (kind == DIGIT && value > 0 || kind == TEEN) {
+                        next = WHOLE;
+                    } else if (kind == TENS) {
+                        next = AFTER_TENS;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (next < 0) {
+                break;
+            }
+            whole += value;
+            state = next;
+            end = i + 1;
+        }
+        out.number = whole + (double) fraction / divisor;
+        out.unfinished = i == count && (state == AFTER_AND || state == AFTER_POINT);
+        return end;
+    }
+
+    private int tokenize(String text, Parsed out) {
+        int count = 0;
+        int length = text.length();
+        int position = 0;
+        while (position < length) {
+            while (position < length && text.charAt(position) <= ' ') {
+                position++;
+            }
+            if (position == length) {
+                break;
+            }
+            int start = position;
+            int hash = 0;
+            while (position < length && text.charAt(position) > ' ') {
+                hash = 31 * hash + text.charAt(position);
+                position++;
+            }
+            out.token(count++, find(text, start, position, hash));
+        }
+        return count;
+    }
+
+    private int find(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return find(text, start, end, hash);
+    }
+
+    /**
+     * This finds the id of the word between {@code start} and {@code end} without copying it
+     */
+    private int find(String text, int start, int end, int hash) {
+        int length = end - start;
+        for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            int id = slots[slot];
+            if (id == UNKNOWN_WORD) {
+                return UNKNOWN_WORD;
+            }
+            if (wordHashes[id] == hash && words[id].length() == length
+                    && text.regionMatches(start, words[id], 0, length)) {
+                return id;
+            }
+        }
+    }
+
+    private int next(int node, int id) {
+        if (id == UNKNOWN_WORD || id >= vocabularySize) {
+            return NO_EDGE;
+        }
+        return transitions[node * vocabularySize + id];
+    }
+
+    private static void parserWord(String word, int kind, int value) {
+        WORD_KINDS.put(word, kind);
+        WORD_VALUES.put(word, value);
+    }
+
+    private static boolean isParserWords(String[] tokens) {
+        for (String token : tokens) {
+            if (!WORD_KINDS.containsKey(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] newRow(int size) {
+        int[] row = new int[size];
+        Arrays.fill(row, NO_EDGE);
+        return row;
+    }
+
+    /**
+     * This strips comments and the header from a grammar and returns the body of each rule
+     */
+    private static List<String> readRuleBodies(Reader grammar) throws IOException {
+        StringBuilder source = new StringBuilder();
+        BufferedReader reader = new BufferedReader(grammar);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf("//");
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            source.append(line).append(' ');
+        }
+        String text = source.toString().replaceAll("/\\*.*?\\*/", " ");
+
+        List<String> bodies = new ArrayList<>();
+        for (String statement : text.split(";")) {
+            int equals = statement.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            bodies.add(statement.substring(equals + 1).trim());
+        }
+        return bodies;
+    }
+
+
+    /**
+     * This holds the commands of one parsed hypothesis.  It is reused from one parse to the
+     * next, so parsing a hypothesis does not allocate once the buffers have grown to fit.
+     */
+    public static final class Parsed {
+
+        private int[] tokens = new int[16];
+        private VoiceCommand[] commands = new VoiceCommand[4];
+        private double[] amounts = new double[4];
+        private SpokenCommand.Unit[] units = new SpokenCommand.Unit[4];
+        private int[] targets = new int[4];
+        private int size;
+        private int target;
+        private double number;
+        private boolean unfinished;
+
+        public int size() {
+            return size;
+        }
+
+        public VoiceCommand getCommand(int index) {
+            return commands[index];
+        }
+
+        /**
+         * @return the amount spoken after the command, or NaN if none was
+         */
+        public double getAmount(int index) {
+            return amounts[index];
+        }
+
+        public SpokenCommand.Unit getUnit(int index) {
+            return units[index];
+        }
+
+        /**
+         * @return the aircraft the command was addressed to, {@link SpokenCommand#ALL} or
+         *         {@link SpokenCommand#NO_TARGET}
+         */
+        public int getTarget(int index) {
+            return targets[index];
+        }
+
+        /**
+         * @return whether the command at {@code index} is the given one
+         */
+        public boolean matches(int index, SpokenCommand command) {
+            return commands[index] == command.command
+                    && Double.compare(amounts[index], command.amount) == 0
+                    && units[index] == command.unit
+                    && targets[index] == command.target;
+        }
+
+        /**
+         * @return the command at {@code index}, allocating only if it has an amount or address
+         */
+        public SpokenCommand get(int index) {
+            if (Double.isNaN(amounts[index]) && targets[index] == SpokenCommand.NO_TARGET) {
+                return SpokenCommand.of(commands[index]);
+            }
+            return new SpokenCommand(commands[index], amounts[index], units[index], targets[index]);
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private void token(int index, int id) {
+            if (index == tokens.length) {
+                tokens = Arrays.copyOf(tokens, index * 2);
+            }
+            tokens[index] = id;
+        }
+
+        private void add(VoiceCommand command, double amount, SpokenCommand.Unit unit, int target) {
+            if (size == commands.length) {
+                commands = Arrays.copyOf(commands, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+                units = Arrays.copyOf(units, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            commands[size] = command;
+            amounts[size] = amount;
+            units[size] = unit;
+            targets[size] = target;
+            size++;
+        }
+    }
+}
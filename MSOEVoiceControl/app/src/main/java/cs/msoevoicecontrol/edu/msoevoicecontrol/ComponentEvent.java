@@ -0,0 +1,31 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This event is published on the {@link EventBus} when the product's {@link Capability}
+ * set changes.
+ */
+
+public final class ComponentEvent {
+
+    /** the capabilities before the change */
+    public final int previous;
+    /** the capabilities now */
+    public final int current;
+
+    public ComponentEvent(int previous, int current) {
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public boolean gained(Capability capability) {
+        return capability.gained(previous, current);
+    }
+
+    public boolean lost(Capability capability) {
+        return capability.lost(previous, current);
+    }
+
+    @Override
+    public String toString() {
+        return Capability.describe(previous) + " -> " + Capability.describe(current);
+    }
+}
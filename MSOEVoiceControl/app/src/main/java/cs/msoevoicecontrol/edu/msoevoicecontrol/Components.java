@@ -0,0 +1,112 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is an immutable snapshot of the connected product, the components the app
+ * uses and its {@link Capability} set.  FPVApplication rebuilds it when the SDK reports a
+ * product, component or connectivity change and publishes it through a volatile field,
+ * so reading any component or testing a capability is a single volatile load.
+ */
+
+import dji.sdk.airlink.AirLink;
+import dji.sdk.base.BaseProduct;
+import dji.sdk.battery.Battery;
+import dji.sdk.camera.Camera;
+import dji.sdk.flightcontroller.Compass;
+import dji.sdk.flightcontroller.FlightController;
+import dji.sdk.gimbal.Gimbal;
+import dji.sdk.products.Aircraft;
+import dji.sdk.products.HandHeld;
+
+public final class Components {
+
+    public static final Components EMPTY = new Components(null);
+
+    /** the connected product, or null */
+    public final BaseProduct product;
+    /** the product if it is an aircraft, or null */
+    public final Aircraft aircraft;
+    public final FlightController flightController;
+    public final Compass compass;
+    public final Camera camera;
+    public final Gimbal gimbal;
+    public final Battery battery;
+    /** the {@link Capability} bits */
+    public final int capabilities;
+
+    private Components(BaseProduct product) {
+        this.product = product;
+        this.aircraft = product instanceof Aircraft ? (Aircraft) product : null;
+        this.flightController = aircraft == null ? null : aircraft.getFlightController();
+        this.compass = flightController == null ? null : flightController.getCompass();
+        this.camera = aircraft == null ? null : aircraft.getCamera();
+        this.gimbal = aircraft == null ? null : aircraft.getGimbal();
+        this.battery = product == null ? null : product.getBattery();
+        this.capabilities = product == null ? 0 : capabilitiesOf(product);
+    }
+
+    private int capabilitiesOf(BaseProduct product) {
+        int set = Capability.PRODUCT.mask;
+        if (product.isConnected()) {
+            set |= Capability.CONNECTED.mask;
+        }
+        if (product instanceof HandHeld) {
+            set |= Capability.HANDHELD.mask;
+        }
+        if (aircraft != null) {
+            set |= Capability.AIRCRAFT.mask;
+            if (aircraft.getRemoteController() != null) {
+                set |= Capability.REMOTE_CONTROLLER.mask;
+            }
+        }
+        if (flightController != null) {
+            set |= Capability.FLIGHT_CONTROLLER.mask;
+            if (compass != null) {
+                set |= Capability.COMPASS.mask;
+            }
+            if (flightController.getSimulator() != null) {
+                set |= Capability.SIMULATOR.mask;
+            }
+        }
+        Camera productCamera = product.getCamera();
+        if (productCamera != null) {
+            set |= Capability.CAMERA.mask;
+            if (productCamera.getPlaybackManager() != null) {
+                set |= Capability.PLAYBACK.mask;
+            }
+            if (productCamera.getMediaManager() != null) {
+                set |= Capability.MEDIA_MANAGER.mask;
+            }
+        }
+        if (product.getGimbal() != null) {
+            set |= Capability.GIMBAL.mask;
+        }
+        if (battery != null) {
+            set |= Capability.BATTERY.mask;
+        }
+        AirLink airLink = product.getAirLink();
+        if (airLink != null) {
+            set |= Capability.AIRLINK.mask;
+            if (airLink.getWiFiLink() != null) {
+                set |= Capability.WIFI_LINK.mask;
+            }
+            if (airLink.getLightbridgeLink() != null) {
+                set |= Capability.LIGHTBRIDGE_LINK.mask;
+            }
+        }
+        return set;
+    }
+
+    /**
+     * This reads the components of a product from the SDK
+     * @param product the connected product, or null
+     */
+    public static Components of(BaseProduct product) {
+        return product == null ? EMPTY : new Components(product);
+    }
+
+    /**
+     * @return whether the product has the capability
+     */
+    public boolean has(Capability capability) {
+        return (capabilities & capability.mask) != 0;
+    }
+}
@@ -6,10 +6,7 @@ package cs.msoevoicecontrol.edu.msoevoicecontrol;
 
 import android.Manifest;
 import android.app.Activity;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.os.AsyncTask;
@@ -37,7 +34,8 @@ import dji.sdk.sdkmanager.DJISDKManager;
 
 public class ConnectionActivity extends Activity implements View.OnClickListener {
 
-    private static final String TAG = ConnectionActivity.class.getName();
+    //Log.isLoggable rejects tags longer than 23 characters before API 24
+    private static final String TAG = ConnectionActivity.class.getSimpleName();
     private TextView mTextConnectionStatus;
     private TextView mTextProduct;
     private TextView mVersionTv;
@@ -60,10 +58,11 @@ public class ConnectionActivity extends Activity implements View.OnClickListener
     private List<String> missingPermission;
     private AtomicBoolean isRegistrationInProgress;
     private static final int REQUEST_PERMISSION_CODE = 222;
-    protected BroadcastReceiver mReceiver = new BroadcastReceiver() {
-
+    //only the latest connection state is drawn, however many changes arrive per UI turn
+    private EventBus.Subscription connectionSubscription;
+    private final EventBus.Subscriber<ConnectionEvent> connectionSubscriber = new EventBus.Subscriber<ConnectionEvent>() {
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onEvent(ConnectionEvent event) {
             refreshSDKRelativeUI();
             updateState();
         }
@@ -80,11 +79,8 @@ public class ConnectionActivity extends Activity implements View.OnClickListener
         setContentView(R.layout.connection_activity);
         initUI();
 
-
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(FPVApplication.FLAG_CONNECTION_CHANGE);
-
-        registerReceiver(mReceiver, filter);
+        connectionSubscription = FPVApplication.getEventBus().subscribeLatest(ConnectionEvent.class,
+                FPVApplication.getMainExecutor(), connectionSubscriber);
     }
 
     private void checkAndRequestPermissions() {
@@ -147,12 +143,14 @@ public class ConnectionActivity extends Activity implements View.OnClickListener
                         } else {
                             showToast( "Register sdk fails, check network is available");
                         }
-                        Log.v(TAG, djiError.getDescription());
+                        FPVApplication.getEventLog().log(LogEvent.SDK_REGISTERED,
+                                djiError == DJISDKError.REGISTRATION_SUCCESS ? 1 : 0, djiError.getErrorCode());
                     }
 
                     @Override
                     public void onProductChange(BaseProduct oldProduct, BaseProduct newProduct) {
-                        Log.d(TAG, String.format("onProductChanged oldProduct:%s, newProduct:%s", oldProduct, newProduct));
+                        FPVApplication.getEventLog().log(LogEvent.PRODUCT_CHANGED,
+                                oldProduct == null ? 0 : 1, newProduct == null ? 0 : 1);
                     }
                 });
                 }
@@ -163,28 +161,33 @@ public class ConnectionActivity extends Activity implements View.OnClickListener
 
     @Override
     public void onResume() {
-        Log.e(TAG, "onResume");
+        FPVApplication.getEventLog().log(LogEvent.CONNECTION_RESUME);
         super.onResume();
     }
 
     @Override
     public void onPause() {
-        Log.e(TAG, "onPause");
+        FPVApplication.getEventLog().log(LogEvent.CONNECTION_PAUSE);
         super.onPause();
     }
 
     @Override
     public void onStop() {
-        Log.e(TAG, "onStop");
+        FPVApplication.getEventLog().log(LogEvent.CONNECTION_STOP);
         super.onStop();
     }
 
     @Override
     public void onDestroy() {
-        Log.e(TAG, "onDestroy");
-        if(mReceiver != null) {
-            unregisterReceiver(mReceiver);
-            mReceiver = null;
+        FPVApplication.getEventLog().log(LogEvent.CONNECTION_DESTROY);
+        if (connectionSubscription != null) {
+            if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                Log.v(TAG, "connection events: " + connectionSubscription.getDelivered() + " delivered, "
+                        + connectionSubscription.getCoalesced() + " coalesced, latency "
+                        + connectionSubscription.getLatency());
+            }
+            connectionSubscription.cancel();
+            connectionSubscription = null;
         }
         super.onDestroy();
     }
@@ -194,7 +197,7 @@ public class ConnectionActivity extends Activity implements View.OnClickListener
 
         if (null != mProduct && mProduct.isConnected()) {
 
-            Log.v(TAG, "refreshSDK: True");
+            FPVApplication.getEventLog().log(LogEvent.PRODUCT_CONNECTED, 1, 0);
             mBtnOpen.setEnabled(true);
 
             String str = mProduct instanceof Aircraft ? "DJIAircraft" : "DJIHandHeld";
@@ -208,7 +211,7 @@ public class ConnectionActivity extends Activity implements View.OnClickListener
 
         } else {
 
-            Log.v(TAG, "refreshSDK: False");
+            FPVApplication.getEventLog().log(LogEvent.PRODUCT_CONNECTED, 0, 0);
             mBtnOpen.setEnabled(false);
 
             mTextProduct.setText(R.string.product_information);
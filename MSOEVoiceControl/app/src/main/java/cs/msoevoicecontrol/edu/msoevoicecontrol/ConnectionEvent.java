@@ -0,0 +1,23 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This event is published on the {@link EventBus} when the product connects, disconnects
+ * or is replaced.
+ */
+
+public final class ConnectionEvent {
+
+    /** whether a product is connected */
+    public final boolean connected;
+    /** the product's model name, or null if there is no product */
+    public final String model;
+
+    public ConnectionEvent(boolean connected, String model) {
+        this.connected = connected;
+        this.model = model;
+    }
+
+    @Override
+    public String toString() {
+        return connected ? "connected to " + model : "disconnected";
+    }
+}
@@ -0,0 +1,275 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This engine drives a pocketsphinx decoder from audio it is handed instead of from the
+ * microphone, so the same model, dictionary and grammar can be decoded on a desktop JVM.
+ * It is set up the way {@link AndroidSpeechEngine} is and reports the same events: speech
+ * starting and ending, a partial hypothesis after every buffer, the final hypothesis on
+ * {@link #stop()}, and a timeout when the search gives up.
+ *
+ * Audio is pushed with {@link #process(short[], int)} and the listeners are called on that
+ * thread before it returns; they may stop or restart the search from there.  With a
+ * {@link SpeechGate} set, only the audio it hears speech in is decoded; the rest still
+ * counts towards the timeout.  An engine is not thread-safe, so decode concurrently with
+ * one engine per thread.  The JNI library is loaded from {@code java.library.path}; on a
+ * desktop that is a pocketsphinx_jni built for the host, since the one in the Android
+ * archive is linked against Android's libc.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+
+public class DecoderSpeechEngine implements SpeechEngine {
+
+    static {
+        System.loadLibrary("pocketsphinx_jni");
+    }
+
+    //the Android recognizer reads the microphone in buffers this long
+    private static final float BUFFER_SECONDS = 0.4f;
+
+    private final Decoder decoder;
+    private final GrammarCache grammarCache;
+    private final int sampleRate;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    //gated audio is collected into buffers of the usual size before it is decoded
+    private final short[] gated;
+    private int gatedCount;
+    private SpeechGate gate;
+    private final SpeechGate.Sink gateSink = new SpeechGate.Sink() {
+        @Override
+        public void onSpeech(short[] frame, int count) {
+            if (!listening) {
+                return;
+            }
+            System.arraycopy(frame, 0, gated, gatedCount, count);
+            gatedCount += count;
+            //frames are all the same size, so decode as soon as the next one would not fit
+            if (gatedCount + count > gated.length) {
+                decodeGated();
+            }
+        }
+
+        @Override
+        public void onGateClosed() {
+            decodeGated();
+        }
+
+        @Override
+        public void onDropped(int count) {
+            if (listening) {
+                countDown(count);
+            }
+        }
+    };
+
+    private boolean listening;
+    private boolean inSpeech;
+    //counts utterances, so a listener restarting the search mid-buffer is noticed
+    private int utterance;
+    private int timeoutSamples = NO_TIMEOUT;
+    private int remainingSamples;
+
+    /**
+     * @param acousticModel directory of the acoustic model
+     * @param dictionary pronunciation dictionary
+     * @param grammarCache where compiled grammars are kept
+     */
+    public DecoderSpeechEngine(File acousticModel, File dictionary, GrammarCache grammarCache) {
+        this.grammarCache = grammarCache;
+        Config config = Decoder.defaultConfig();
+        config.setString("-hmm", acousticModel.getPath());
+        config.setString("-dict", dictionary.getPath());
+        decoder = new Decoder(config);
+        sampleRate = (int) decoder.getConfig().getFloat("-samprate");
+        gated = new short[getBufferSize()];
+    }
+
+    /**
+     * @return samples per second the model expects
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return samples per buffer when audio is fed at the Android recognizer's cadence
+     */
+    public int getBufferSize() {
+        return Math.round(sampleRate * BUFFER_SECONDS);
+    }
+
+    /**
+     * This decodes only the speech the gate lets through from now on
+     * @param gate the gate, or null to decode everything
+     */
+    public void setGate(SpeechGate gate) {
+        this.gate = gate;
+        gatedCount = 0;
+    }
+
+    public SpeechGate getGate() {
+        return gate;
+    }
+
+    /**
+     * @return true between starting a search and its stop, cancel or timeout
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public GrammarCache.Source addGrammarSearch(String name, File grammar, File dictionary) throws IOException {
+        return grammarCache.addSearch(decoder, name, grammar, dictionary);
+    }
+
+    @Override
+    public void addKeywordSearch(String name, File keywords) {
+        decoder.setKws(name, keywords.getPath());
+    }
+
+    @Override
+    public boolean startListening(String searchName) {
+        return startListening(searchName, NO_TIMEOUT);
+    }
+
+    @Override
+    public boolean startListening(String searchName, int timeoutMs) {
+        if (listening) {
+            return false;
+        }
+        decoder.setSearch(searchName);
+        decoder.startUtt();
+        listening = true;
+        inSpeech = false;
+        utterance++;
+        gatedCount = 0;
+        timeoutSamples = timeoutMs == NO_TIMEOUT ? NO_TIMEOUT : (int) ((long) timeoutMs * sampleRate / 1000);
+        remainingSamples = timeoutSamples;
+        return true;
+    }
+
+    /**
+     * This decodes a buffer of 16-bit mono audio at {@link #getSampleRate()} and tells the
+     * listeners what changed.  Audio is dropped while the engine is not listening.
+     * @param samples the audio
+     * @param count how many samples of the buffer to decode
+     */
+    public void process(short[] samples, int count) {
+        if (!listening) {
+            return;
+        }
+        if (gate != null) {
+            gate.process(samples, count, gateSink);
+        } else {
+            decode(samples, count);
+        }
+    }
+
+    private void decodeGated() {
+        if (gatedCount > 0) {
+            int count = gatedCount;
+            gatedCount = 0;
+            decode(gated, count);
+        }
+    }
+
+    private void decode(short[] samples, int count) {
+        if (!listening) {
+            return;
+        }
+        int current = utterance;
+        decoder.processRaw(samples, count, false, false);
+        if (decoder.getInSpeech() != inSpeech) {
+            inSpeech = !inSpeech;
+            for (Listener listener : listeners) {
+                if (inSpeech) {
+                    listener.onBeginningOfSpeech();
+                } else {
+                    listener.onEndOfSpeech();
+                }
+                if (!listening || utterance != current) {
+                    return;
+                }
+            }
+        }
+        if (inSpeech) {
+            remainingSamples = timeoutSamples;
+        }
+        String partial = text(decoder.hyp());
+        for (Listener listener : listeners) {
+            listener.onPartialResult(partial);
+            if (!listening || utterance != current) {
+                return;
+            }
+        }
+        countDown(count);
+    }
+
+    private void countDown(int count) {
+        if (timeoutSamples != NO_TIMEOUT) {
+            remainingSamples -= count;
+            if (remainingSamples <= 0) {
+                decoder.endUtt();
+                listening = false;
+                for (Listener listener : listeners) {
+                    listener.onTimeout();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean stop() {
+        if (!listening) {
+            return false;
+        }
+        decodeGated();
+        if (!listening) {
+            return true;
+        }
+        decoder.endUtt();
+        listening = false;
+        String result = text(decoder.hyp());
+        for (Listener listener : listeners) {
+            listener.onResult(result);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean cancel() {
+        if (!listening) {
+            return false;
+        }
+        decoder.endUtt();
+        listening = false;
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        cancel();
+        decoder.delete();
+    }
+
+    private static String text(Hypothesis hypothesis) {
+        return hypothesis == null ? null : hypothesis.getHypstr();
+    }
+}
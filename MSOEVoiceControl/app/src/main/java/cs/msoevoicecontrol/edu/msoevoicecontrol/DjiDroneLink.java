@@ -0,0 +1,207 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is the {@link DroneLink} for a real DJI aircraft.  It puts the flight
+ * controller into velocity virtual stick mode, reuses one {@link FlightControlData} for
+ * every stick packet and converts the controller's state into a {@link DroneState}.
+ * The compass calibration and battery states arrive on their own SDK callbacks; the
+ * latest of each is kept and added to every sample, so nothing polls the SDK for them.
+ * {@link #close()} clears all three callbacks, since the SDK keeps them on components
+ * that outlive the link.
+ */
+
+import android.support.annotation.NonNull;
+
+import dji.common.battery.BatteryState;
+import dji.common.error.DJIError;
+import dji.common.flightcontroller.Attitude;
+import dji.common.flightcontroller.CompassCalibrationState;
+import dji.common.flightcontroller.FlightControllerState;
+import dji.common.flightcontroller.LocationCoordinate3D;
+import dji.common.flightcontroller.virtualstick.FlightControlData;
+import dji.common.flightcontroller.virtualstick.FlightCoordinateSystem;
+import dji.common.flightcontroller.virtualstick.RollPitchControlMode;
+import dji.common.flightcontroller.virtualstick.VerticalControlMode;
+import dji.common.flightcontroller.virtualstick.YawControlMode;
+import dji.common.util.CommonCallbacks;
+import dji.sdk.battery.Battery;
+import dji.sdk.flightcontroller.Compass;
+import dji.sdk.flightcontroller.FlightController;
+
+public class DjiDroneLink implements DroneLink {
+
+    private final FlightController flightController;
+    private final Compass compass;
+    private final Battery battery;
+
+    //reused for every stick packet so streaming does not allocate
+    private final FlightControlData controlData = new FlightControlData(0, 0, 0, 0);
+    private volatile CompletionCallback stickCallback;
+    private final CommonCallbacks.CompletionCallback stickResult = new CommonCallbacks.CompletionCallback() {
+        @Override
+        public void onResult(DJIError djiError) {
+            CompletionCallback callback = stickCallback;
+            if (callback != null) {
+                callback.onResult(djiError == null ? null : djiError.getDescription());
+            }
+        }
+    };
+
+    //only touched on the SDK's state callback thread
+    private final DroneState state = new DroneState();
+    private volatile StateListener stateListener;
+    private volatile CompassState compassState = CompassState.UNKNOWN;
+    private volatile int batteryPercent = -1;
+
+    /**
+     * Creates a link over the given flight controller and sets up the virtual stick modes
+     * @param flightController the aircraft's flight controller
+     * @param battery the aircraft's battery, may be null
+     * @param callback told whether virtual stick mode was enabled, may be null
+     */
+    public DjiDroneLink(FlightController flightController, Battery battery, final CompletionCallback callback) {
+        this.flightController = flightController;
+        this.compass = flightController.getCompass();
+        this.battery = battery;
+        flightController.setVirtualStickModeEnabled(true, wrap(callback));
+        flightController.setRollPitchControlMode(RollPitchControlMode.VELOCITY);
+        flightController.setYawControlMode(YawControlMode.ANGULAR_VELOCITY);
+        flightController.setVerticalControlMode(VerticalControlMode.VELOCITY);
+        flightController.setRollPitchCoordinateSystem(FlightCoordinateSystem.BODY);
+        flightController.setStateCallback(new FlightControllerState.Callback() {
+            @Override
+            public void onUpdate(@NonNull FlightControllerState flightControllerState) {
+                publish(flightControllerState);
+            }
+        });
+        if (compass != null) {
+            //read once here; from then on the callback reports every change
+            compassState = toCompassState(compass.getCalibrationState());
+            compass.setCalibrationStateCallback(new CompassCalibrationState.Callback() {
+                @Override
+                public void onUpdate(@NonNull CompassCalibrationState calibrationState) {
+                    compassState = toCompassState(calibrationState);
+                }
+            });
+        }
+        if (battery != null) {
+            battery.setStateCallback(new BatteryState.Callback() {
+                @Override
+                public void onUpdate(BatteryState batteryState) {
+                    batteryPercent = batteryState.getChargeRemainingInPercent();
+                }
+            });
+        }
+    }
+
+    private void publish(FlightControllerState flightControllerState) {
+        StateListener listener = stateListener;
+        if (listener == null) {
+            return;
+        }
+        Attitude attitude = flightControllerState.getAttitude();
+        LocationCoordinate3D location = flightControllerState.getAircraftLocation();
+        if (attitude == null || location == null) {
+            return;
+        }
+        state.timestampNanos = System.nanoTime();
+        state.pitch = attitude.pitch;
+        state.roll = attitude.roll;
+        state.yaw = attitude.yaw;
+        state.velocityX = flightControllerState.getVelocityX();
+        state.velocityY = flightControllerState.getVelocityY();
+        state.velocityZ = flightControllerState.getVelocityZ();
+        state.altitude = location.getAltitude();
+        state.latitude = location.getLatitude();
+        state.longitude = location.getLongitude();
+        state.satelliteCount = flightControllerState.getSatelliteCount();
+        state.flying = flightControllerState.isFlying();
+        state.orientationMode = flightControllerState.getOrientationMode().ordinal();
+        state.compassState = compassState;
+        state.batteryPercent = batteryPercent;
+        listener.onStateUpdate(state);
+    }
+
+    @Override
+    public void sendVirtualStick(float pitch, float roll, float yaw, float throttle, CompletionCallback callback) {
+        stickCallback = callback;
+        controlData.setPitch(pitch);
+        controlData.setRoll(roll);
+        controlData.setYaw(yaw);
+        controlData.setVerticalThrottle(throttle);
+        flightController.sendVirtualStickFlightControlData(controlData, stickResult);
+    }
+
+    @Override
+    public void startTakeoff(CompletionCallback callback) {
+        flightController.startTakeoff(wrap(callback));
+    }
+
+    @Override
+    public void startLanding(CompletionCallback callback) {
+        flightController.startLanding(wrap(callback));
+    }
+
+    @Override
+    public void startCompassCalibration(CompletionCallback callback) {
+        if (compass == null) {
+            if (callback != null) {
+                callback.onResult("the aircraft has no compass");
+            }
+            return;
+        }
+        compass.startCalibration(wrap(callback));
+    }
+
+    @Override
+    public CompassState getCompassState() {
+        return compassState;
+    }
+
+    private static CompassState toCompassState(CompassCalibrationState calibrationState) {
+        if (calibrationState == null) {
+            return CompassState.UNKNOWN;
+        }
+        switch (calibrationState) {
+            case NOT_CALIBRATING:
+                return CompassState.NOT_CALIBRATING;
+            case HORIZONTAL:
+            case VERTICAL:
+                return CompassState.CALIBRATING;
+            case SUCCESSFUL:
+                return CompassState.SUCCESSFUL;
+            case FAILED:
+                return CompassState.FAILED;
+            default:
+                return CompassState.UNKNOWN;
+        }
+    }
+
+    @Override
+    public void setStateListener(StateListener listener) {
+        this.stateListener = listener;
+    }
+
+    @Override
+    public void close() {
+        stateListener = null;
+        stickCallback = null;
+        flightController.setStateCallback(null);
+        if (compass != null) {
+            compass.setCalibrationStateCallback(null);
+        }
+        if (battery != null) {
+            battery.setStateCallback(null);
+        }
+    }
+
+    private static CommonCallbacks.CompletionCallback wrap(final CompletionCallback callback) {
+        return new CommonCallbacks.CompletionCallback() {
+            @Override
+            public void onResult(DJIError djiError) {
+                if (callback != null) {
+                    callback.onResult(djiError == null ? null : djiError.getDescription());
+                }
+            }
+        };
+    }
+}
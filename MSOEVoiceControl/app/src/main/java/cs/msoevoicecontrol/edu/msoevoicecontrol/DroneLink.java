@@ -0,0 +1,63 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This interface is everything the app needs from an aircraft: virtual stick input,
+ * take-off and landing, the compass and a stream of state updates.  {@link DjiDroneLink}
+ * drives a real DJI aircraft and {@link SimulatedDrone} stands in for one on any JVM.
+ *
+ * Stick values follow the modes the app sets up: roll and pitch are body-frame velocities
+ * in m/s, yaw is an angular velocity in degrees per second and throttle is a vertical
+ * velocity in m/s.
+ */
+
+public interface DroneLink {
+
+    /**
+     * Receives the result of a request
+     */
+    interface CompletionCallback {
+        /**
+         * @param error a description of what went wrong, or null on success
+         */
+        void onResult(String error);
+    }
+
+    /**
+     * Receives state updates; the state object is reused between calls
+     */
+    interface StateListener {
+        void onStateUpdate(DroneState state);
+    }
+
+    enum CompassState {
+        UNKNOWN,
+        NOT_CALIBRATING,
+        CALIBRATING,
+        SUCCESSFUL,
+        FAILED
+    }
+
+    /**
+     * This sends one virtual stick packet.  Callers stream these at a fixed rate.
+     * @param callback may be null
+     */
+    void sendVirtualStick(float pitch, float roll, float yaw, float throttle, CompletionCallback callback);
+
+    void startTakeoff(CompletionCallback callback);
+
+    void startLanding(CompletionCallback callback);
+
+    void startCompassCalibration(CompletionCallback callback);
+
+    CompassState getCompassState();
+
+    /**
+     * @param listener receives state updates, or null to stop them
+     */
+    void setStateListener(StateListener listener);
+
+    /**
+     * This stops the state updates and lets go of every callback the link registered.  The
+     * link is not used again after this.
+     */
+    void close();
+}
@@ -0,0 +1,53 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class holds one telemetry sample from a {@link DroneLink}.  Links reuse the same
+ * instance for every update, so listeners must copy what they want to keep.
+ */
+
+public class DroneState {
+    /** when the sample was taken, in the link's clock */
+    public long timestampNanos;
+    /** attitude in degrees */
+    public double pitch;
+    public double roll;
+    public double yaw;
+    /** velocity in m/s, north, east and down */
+    public float velocityX;
+    public float velocityY;
+    public float velocityZ;
+    /** altitude above the take-off point in m */
+    public float altitude;
+    /** position in degrees */
+    public double latitude;
+    public double longitude;
+    /** GPS satellites the position is fixed from, or -1 if not known */
+    public int satelliteCount = -1;
+    public boolean flying;
+    /** ordinal of the flight controller's orientation mode */
+    public int orientationMode;
+    /** the compass calibration state when the sample was taken */
+    public DroneLink.CompassState compassState = DroneLink.CompassState.UNKNOWN;
+    /** charge remaining in percent, or -1 if the battery is not known */
+    public int batteryPercent = -1;
+
+    /**
+     * This copies another sample into this one
+     */
+    public void set(DroneState other) {
+        timestampNanos = other.timestampNanos;
+        pitch = other.pitch;
+        roll = other.roll;
+        yaw = other.yaw;
+        velocityX = other.velocityX;
+        velocityY = other.velocityY;
+        velocityZ = other.velocityZ;
+        altitude = other.altitude;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        satelliteCount = other.satelliteCount;
+        flying = other.flying;
+        orientationMode = other.orientationMode;
+        compassState = other.compassState;
+        batteryPercent = other.batteryPercent;
+    }
+}
@@ -0,0 +1,275 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is an in-process publish/subscribe bus for typed events.  Subscribers pick
+ * the {@link Executor} they are called on and whether they want every event or only the
+ * latest one, in which case events published while an earlier one is still waiting replace
+ * it.  Publishing does not lock: the subscriber list of each event type is an array
+ * swapped by compare-and-set, and each subscriber drains its own queue or slot with a
+ * single task that is reused.
+ *
+ * Events are matched on their exact class.  The bus records how long each event waited
+ * between publish and delivery, per event type.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EventBus {
+
+    /**
+     * Receives events of one type
+     */
+    public interface Subscriber<E> {
+        void onEvent(E event);
+    }
+
+    /** runs subscribers on the publishing thread */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private static final class Envelope {
+        final Object event;
+        final long publishNanos;
+
+        Envelope(Object event, long publishNanos) {
+            this.event = event;
+            this.publishNanos = publishNanos;
+        }
+    }
+
+    /**
+     * The subscribers and statistics of one event type
+     */
+    private static final class Topic {
+        final AtomicReference<Subscription[]> subscriptions = new AtomicReference<>(NONE);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong published = new AtomicLong();
+    }
+
+    /**
+     * A subscriber's registration, used to cancel it and read its statistics
+     */
+    public static final class Subscription {
+        private final Topic topic;
+        private final Subscriber<Object> subscriber;
+        private final Executor executor;
+        private final Clock clock;
+        //exactly one of these is used, depending on whether events are coalesced
+        private final ConcurrentLinkedQueue<Envelope> queue;
+        private final AtomicReference<Envelope> latest;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private volatile boolean cancelled;
+
+        private final Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                do {
+                    try {
+                        Envelope envelope;
+                        while (!cancelled && (envelope = next()) != null) {
+                            deliver(envelope);
+                        }
+                    } finally {
+                        scheduled.set(false);
+                    }
+                    //something may have arrived after the last poll but before the flag was cleared
+                } while (!cancelled && pending() && scheduled.compareAndSet(false, true));
+            }
+        };
+
+        @SuppressWarnings("unchecked")
+        private Subscription(Topic topic, Subscriber<?> subscriber, Executor executor, Clock clock, boolean coalesce) {
+            this.topic = topic;
+            this.subscriber = (Subscriber<Object>) subscriber;
+            this.executor = executor;
+            this.clock = clock;
+            this.queue = coalesce ? null : new ConcurrentLinkedQueue<Envelope>();
+            this.latest = coalesce ? new AtomicReference<Envelope>() : null;
+        }
+
+        private void offer(Envelope envelope) {
+            if (queue != null) {
+                queue.add(envelope);
+            } else if (latest.getAndSet(envelope) != null) {
+                //the waiting event is replaced; its drain is already scheduled
+                coalesced.incrementAndGet();
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(drain);
+            }
+        }
+
+        private Envelope next() {
+            return queue != null ? queue.poll() : latest.getAndSet(null);
+        }
+
+        private boolean pending() {
+            return queue != null ? !queue.isEmpty() : latest.get() != null;
+        }
+
+        private void deliver(Envelope envelope) {
+            long waited = clock.nanoTime() - envelope.publishNanos;
+            latency.record(waited);
+            topic.latency.record(waited);
+            delivered.incrementAndGet();
+            subscriber.onEvent(envelope.event);
+        }
+
+        /**
+         * This stops delivery.  Events already handed to the executor are dropped.
+         */
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            Subscription[] current;
+            Subscription[] updated;
+            do {
+                current = topic.subscriptions.get();
+                int index = Arrays.asList(current).indexOf(this);
+                if (index < 0) {
+                    return;
+                }
+                updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            } while (!topic.subscriptions.compareAndSet(current, updated));
+        }
+
+        /**
+         * @return publish-to-delivery latency of this subscriber's events
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        /**
+         * @return events replaced by a newer one before they were delivered
+         */
+        public long getCoalesced() {
+            return coalesced.get();
+        }
+    }
+
+    private final ConcurrentMap<Class<?>, Topic> topics = new ConcurrentHashMap<>();
+    private final Clock clock;
+
+    public EventBus() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * @param clock time source for the latency measurements
+     */
+    public EventBus(Clock clock) {
+        this.clock = clock;
+    }
+
+    private Topic topic(Class<?> type) {
+        Topic topic = topics.get(type);
+        if (topic == null) {
+            Topic created = new Topic();
+            topic = topics.putIfAbsent(type, created);
+            if (topic == null) {
+                topic = created;
+            }
+        }
+        return topic;
+    }
+
+    /**
+     * This subscribes to every event of a type
+     * @param type the exact class of the events
+     * @param executor where the subscriber is called; events reach it in publish order
+     */
+    public <E> Subscription subscribe(Class<E> type, Executor executor, Subscriber<? super E> subscriber) {
+        return add(type, executor, subscriber, false);
+    }
+
+    /**
+     * This subscribes to the latest event of a type.  An event published while the previous
+     * one is still waiting for the executor replaces it, so a slow subscriber only ever sees
+     * the newest state.
+     * @param type the exact class of the events
+     * @param executor where the subscriber is called
+     */
+    public <E> Subscription subscribeLatest(Class<E> type, Executor executor, Subscriber<? super E> subscriber) {
+        return add(type, executor, subscriber, true);
+    }
+
+    private Subscription add(Class<?> type, Executor executor, Subscriber<?> subscriber, boolean coalesce) {
+        Topic topic = topic(type);
+        Subscription subscription = new Subscription(topic, subscriber, executor, clock, coalesce);
+        Subscription[] current;
+        Subscription[] updated;
+        do {
+            current = topic.subscriptions.get();
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+        } while (!topic.subscriptions.compareAndSet(current, updated));
+        return subscription;
+    }
+
+    /**
+     * This hands an event to every subscriber of its class
+     */
+    public void publish(Object event) {
+        Topic topic = topics.get(event.getClass());
+        if (topic == null) {
+            return;
+        }
+        topic.published.incrementAndGet();
+        Subscription[] subscriptions = topic.subscriptions.get();
+        if (subscriptions.length == 0) {
+            return;
+        }
+        Envelope envelope = new Envelope(event, clock.nanoTime());
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(envelope);
+        }
+    }
+
+    /**
+     * @return whether anything is subscribed to the type, so publishers can skip building
+     * events nobody will see
+     */
+    public boolean hasSubscribers(Class<?> type) {
+        Topic topic = topics.get(type);
+        return topic != null && topic.subscriptions.get().length > 0;
+    }
+
+    /**
+     * @return publish-to-delivery latency of every event of the type
+     */
+    public LatencyHistogram getLatency(Class<?> type) {
+        return topic(type).latency;
+    }
+
+    /**
+     * @return how many events of the type were published while it had been subscribed to
+     */
+    public long getPublished(Class<?> type) {
+        return topic(type).published.get();
+    }
+}
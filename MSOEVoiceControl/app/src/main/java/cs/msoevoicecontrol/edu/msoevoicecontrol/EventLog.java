@@ -0,0 +1,276 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is a low-overhead binary event log.  Callers claim a slot in a lock-free ring
+ * and write a fixed-layout record (timestamp, event, two numbers) without formatting or
+ * allocating; when the ring is full the record is dropped and counted.  A background
+ * thread drains the ring to a log file that rotates once it reaches a size limit.
+ *
+ * Each file starts with the 8 byte magic "EVTLOG01" followed by 32 byte big-endian records:
+ * long timestamp in nanoseconds, int event ordinal, int unused, long a, long b.
+ */
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class EventLog {
+
+    public static final String FILE_NAME = "events.bin";
+    private static final byte[] MAGIC = {'E', 'V', 'T', 'L', 'O', 'G', '0', '1'};
+    private static final int RECORD_LONGS = 4;
+    private static final int RECORD_BYTES = RECORD_LONGS * 8;
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final long DEFAULT_MAX_FILE_BYTES = 1024 * 1024;
+    private static final int DEFAULT_MAX_FILES = 4;
+    private static final long IDLE_PARK_NANOS = 10000000L;
+
+    private final long[] records;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+    private volatile boolean running;
+    private Thread drainer;
+    private File dir;
+    private FileOutputStream file;
+    private FileChannel channel;
+    private volatile long written;
+
+    public EventLog() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * @param capacity records in the ring, rounded up to a power of two
+     * @param maxFileBytes size at which the log file is rotated
+     * @param maxFiles how many log files are kept, including the current one
+     */
+    public EventLog(int capacity, long maxFileBytes, int maxFiles) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.records = new long[size * RECORD_LONGS];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * This records an event with no values
+     */
+    public void log(LogEvent event) {
+        log(event, 0, 0);
+    }
+
+    /**
+     * This records an event.  It never blocks and never allocates.
+     * @param event what happened
+     * @param a first value, see the event's format
+     * @param b second value, see the event's format
+     */
+    public void log(LogEvent event, long a, long b) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        int slot = (int) (sequence & mask);
+        int base = slot * RECORD_LONGS;
+        records[base] = System.nanoTime();
+        records[base + 1] = event.ordinal();
+        records[base + 2] = a;
+        records[base + 3] = b;
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * This starts draining the ring into the log directory
+     * @param dir directory the log files are written to
+     * @throws IOException if the log file cannot be opened
+     */
+    public synchronized void start(File dir) throws IOException {
+        if (drainer != null) {
+            return;
+        }
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        openFile();
+        running = true;
+        drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "event-log");
+        drainer.setDaemon(true);
+        drainer.setPriority(Thread.MIN_PRIORITY);
+        drainer.start();
+    }
+
+    /**
+     * This writes out what is in the ring and stops the background thread
+     */
+    public synchronized void stop() {
+        if (drainer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainer = null;
+    }
+
+    private void drain() {
+        try {
+            while (running) {
+                if (drainAvailable() == 0) {
+                    flush();
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+            drainAvailable();
+            flush();
+        } catch (IOException e) {
+            running = false;
+        } finally {
+            try {
+                file.close();
+            } catch (IOException e) {
+                //the log is closing anyway
+            }
+        }
+    }
+
+    private int drainAvailable() throws IOException {
+        int count = 0;
+        long h = head;
+        while (true) {
+            int slot = (int) (h & mask);
+            if (published.get(slot) != h) {
+                break;
+            }
+            if (out.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            int base = slot * RECORD_LONGS;
+            out.putLong(records[base]);
+            out.putInt((int) records[base + 1]);
+            out.putInt(0);
+            out.putLong(records[base + 2]);
+            out.putLong(records[base + 3]);
+            h++;
+            head = h;
+            count++;
+        }
+        return count;
+    }
+
+    private void flush() throws IOException {
+        if (out.position() == 0) {
+            return;
+        }
+        out.flip();
+        while (out.hasRemaining()) {
+            written += channel.write(out);
+        }
+        out.clear();
+        if (channel.size() >= maxFileBytes) {
+            rotate();
+        }
+    }
+
+    private void openFile() throws IOException {
+        file = new FileOutputStream(new File(dir, FILE_NAME));
+        channel = file.getChannel();
+        ByteBuffer magic = ByteBuffer.wrap(MAGIC);
+        while (magic.hasRemaining()) {
+            channel.write(magic);
+        }
+    }
+
+    /**
+     * This moves events.bin to events.bin.1, events.bin.1 to events.bin.2 and so on,
+     * dropping the oldest file, and starts a new events.bin
+     */
+    private void rotate() throws IOException {
+        file.close();
+        new File(dir, FILE_NAME + "." + (maxFiles - 1)).delete();
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            new File(dir, FILE_NAME + "." + i).renameTo(new File(dir, FILE_NAME + "." + (i + 1)));
+        }
+        new File(dir, FILE_NAME).renameTo(new File(dir, FILE_NAME + "." + 1));
+        openFile();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getBytesWritten() {
+        return written;
+    }
+
+    /**
+     * This turns a log file back into text, one event per line
+     * @param log a file written by this class
+     * @param text where the lines are written
+     * @throws IOException if the file cannot be read or is not an event log
+     */
+    public static void dump(File log, Writer text) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)));
+        BufferedWriter writer = new BufferedWriter(text);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC)) {
+                throw new IOException(log + " is not an event log");
+            }
+            LogEvent[] events = LogEvent.values();
+            while (true) {
+                long timestamp;
+                try {
+                    timestamp = in.readLong();
+                } catch (EOFException end) {
+                    break;
+                }
+                int event = in.readInt();
+                in.readInt();
+                long a = in.readLong();
+                long b = in.readLong();
+                String name = event >= 0 && event < events.length ? events[event].format(a, b) : "event " + event;
+                writer.write(timestamp + " " + name);
+                writer.newLine();
+            }
+            writer.flush();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -5,7 +5,6 @@ package cs.msoevoicecontrol.edu.msoevoicecontrol;
  */
 import android.app.Application;
 import android.content.Context;
-import android.content.Intent;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
@@ -13,6 +12,10 @@ import android.support.v4.content.ContextCompat;
 import android.util.Log;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
 import dji.common.error.DJIError;
 import dji.common.error.DJISDKError;
 import dji.sdk.base.BaseComponent;
@@ -24,12 +27,29 @@ import dji.sdk.sdkmanager.DJISDKManager;
 
 
 public class FPVApplication extends Application {
-    public static final String FLAG_CONNECTION_CHANGE = "FPV_APP_Connection_change";
+    //the SDK connects one product, which answers to "one"; the fleet numbers the others from two
+    public static final int LOCAL_DRONE = 1;
     private DJISDKManager.SDKManagerCallback djiSDKManagerCallback;
     private BaseProduct.BaseProductListener djiBaseProductListener;
     private BaseComponent.ComponentListener djiComponentListener;
-    private static BaseProduct product;
-    public Handler handler;
+    //rebuilt on product and component changes; never null
+    private static volatile Components components = Components.EMPTY;
+    //connection, component and telemetry events for the activities
+    private static final EventBus eventBus = new EventBus();
+    //compass, flight controller and battery state, published on the bus as it changes
+    private static final FlightStateStore flightState = new FlightStateStore(eventBus);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Executor mainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mainHandler.post(command);
+        }
+    };
+    private static final EventLog eventLog = new EventLog();
+    //aircraft other than the connected product, addressed by number or as "all".  The SDK
+    //gives the app no way to reach a second aircraft, so nothing registers one yet and the
+    //fleet stays empty; a link added through getFleet() is flown while MainActivity runs.
+    private static final FleetManager fleet = new FleetManager(LOCAL_DRONE + 1);
     private Application instance;
 
     @Override
@@ -41,52 +61,99 @@ public class FPVApplication extends Application {
         instance = app;
     }
 
-    public static synchronized Aircraft getAircraftInstance() {
-        if (!isAircraftConnected()) {
-            return null;
+    public static EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * @return the bus that {@link ConnectionEvent}, {@link ComponentEvent} and
+     * {@link TelemetryEvent} are published on
+     */
+    public static EventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * @return the latest compass, flight controller and battery state
+     */
+    public static FlightStateStore getFlightState() {
+        return flightState;
+    }
+
+    /**
+     * @return the aircraft flown alongside the connected product
+     */
+    public static FleetManager getFleet() {
+        return fleet;
+    }
+
+    /**
+     * @return an executor that runs bus subscribers on the UI thread
+     */
+    public static Executor getMainExecutor() {
+        return mainExecutor;
+    }
+
+    /**
+     * @return the current product and its components, read with a single volatile load
+     */
+    public static Components getComponents() {
+        Components current = components;
+        if (current.product == null) {
+            //no change has been reported yet, so ask the SDK in case a product is already there
+            BaseProduct product = DJISDKManager.getInstance().getProduct();
+            if (product != null) {
+                current = refreshComponents(product);
+            }
         }
-        return (Aircraft) getProductInstance();
+        return current;
     }
 
-    public static synchronized BaseProduct getProductInstance() {
-        if(product == null) {
-            product = DJISDKManager.getInstance().getProduct();
+    private static synchronized Components refreshComponents(BaseProduct product) {
+        int previous = components.capabilities;
+        components = Components.of(product);
+        int current = components.capabilities;
+        if (current != previous) {
+            eventBus.publish(new ComponentEvent(previous, current));
         }
-        return product;
+        return components;
+    }
+
+    public static Aircraft getAircraftInstance() {
+        return getComponents().aircraft;
+    }
+
+    public static BaseProduct getProductInstance() {
+        return getComponents().product;
     }
 
     public static boolean isAircraftConnected() {
-        return getProductInstance() != null && getProductInstance() instanceof Aircraft;
+        return getComponents().aircraft != null;
     }
 
-    public static synchronized Camera getCameraInstance() {
-        if(getProductInstance() == null)
-            return null;
-        Camera camera = null;
-        if(getProductInstance() instanceof Aircraft)
-            camera = ((Aircraft) getProductInstance()).getCamera();
-        return camera;
+    public static Camera getCameraInstance() {
+        return getComponents().camera;
     }
 
-    public static synchronized Gimbal getGimbalInstance() {
-        if(getProductInstance() == null)
-            return null;
-        Gimbal gimbal = null;
-        if (getProductInstance() instanceof Aircraft)
-            gimbal = getProductInstance().getGimbal();
-        return gimbal;
+    public static Gimbal getGimbalInstance() {
+        return getComponents().gimbal;
     }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        handler = new Handler(Looper.getMainLooper());
+        try {
+            eventLog.start(new File(getApplicationContext().getFilesDir(), "logs"));
+        } catch (IOException e) {
+            Log.e(FPVApplication.class.getName(), "cannot open event log", e);
+        }
         djiComponentListener = new BaseComponent.ComponentListener()
         {
             @Override
             public void onConnectivityChange(boolean inSonnected)
             {
-                notifyStatusChange();
+                refreshComponents(components.product);
+                publishConnection();
             }
         };
 
@@ -95,13 +162,15 @@ public class FPVApplication extends Application {
             public void onComponentChange(BaseProduct.ComponentKey componentKey, BaseComponent oldComponent, BaseComponent newComponent) {
                 if (newComponent != null)
                     newComponent.setComponentListener(djiComponentListener);
-                notifyStatusChange();
+                refreshComponents(components.product);
+                publishConnection();
             }
 
             @Override
             public void onConnectivityChange(boolean b)
             {
-                notifyStatusChange();
+                refreshComponents(components.product);
+                publishConnection();
             }
         };
 
@@ -131,17 +200,18 @@ public class FPVApplication extends Application {
                         }
                     });
                 }
-                Log.e("TAG", error.toString());
+                eventLog.log(LogEvent.SDK_REGISTERED,
+                        error == DJISDKError.REGISTRATION_SUCCESS ? 1 : 0, error == null ? 0 : error.getErrorCode());
             }
 
             //Listens to the connected product changing, including two parts, component changing or product connection changing.
             @Override
             public void onProductChange(BaseProduct oldProduct, BaseProduct newProduct) {
-                product = newProduct;
-                if (product != null) {
-                    product.setBaseProductListener(djiBaseProductListener);
+                if (newProduct != null) {
+                    newProduct.setBaseProductListener(djiBaseProductListener);
                 }
-                notifyStatusChange();
+                refreshComponents(newProduct);
+                publishConnection();
             }
         };
 
@@ -158,18 +228,16 @@ public class FPVApplication extends Application {
         }
     }
 
-    private void notifyStatusChange() {
-        handler.removeCallbacks(updateRunnable);
-        handler.postDelayed(updateRunnable, 500);
-    }
-
-    private Runnable updateRunnable = new Runnable()
-    {
-        @Override
-        public void run()
-        {
-            Intent intent = new Intent(FLAG_CONNECTION_CHANGE);
-            getApplicationContext().sendBroadcast(intent);
+    /**
+     * This tells subscribers about the product's connection.  Bursts of SDK callbacks are
+     * merged by subscribers that only want the latest event, rather than by a fixed delay.
+     */
+    private static void publishConnection() {
+        Components current = components;
+        String model = null;
+        if (current.product != null && current.product.getModel() != null) {
+            model = current.product.getModel().getDisplayName();
         }
-    };
+        eventBus.publish(new ConnectionEvent(current.has(Capability.CONNECTED), model));
+    }
 }
@@ -0,0 +1,471 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class keeps a registry of aircraft and flies each one through its own
+ * {@link MotionController}.  Every aircraft has a serial executor of its own: its commands
+ * and control ticks run one at a time, in order, on a shared worker pool.  One ticker
+ * thread marks every aircraft due at the control rate.  An aircraft whose last tick has not
+ * finished, because its link is slow or blocked, skips the tick instead of queueing
+ * behind it, so it holds at most one worker and never builds a backlog for the others.
+ *
+ * Commands follow the activity's rules: a new command replaces the one in progress, so
+ * each aircraft keeps only the latest command it has not started, and "finish" stops the
+ * aircraft's move or turn where the activity's stops its own, without landing either.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FleetManager {
+
+    public static final int DEFAULT_RATE_HZ = VirtualStickLoop.DEFAULT_RATE_HZ;
+    public static final int DEFAULT_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    //what a move or turn does when no amount is spoken, as on the aircraft being flown
+    public static final double TURN_DEGREES = 10;
+    public static final double MOVE_METERS = 3;
+    public static final double CLIMB_METERS = 0.3;
+    public static final double REVERSE_DEGREES = 180;
+
+    private static final long NOT_DUE = 0;
+
+    /**
+     * One aircraft in the fleet
+     */
+    public static final class Drone implements DroneLink.StateListener {
+
+        private final int id;
+        private final DroneLink link;
+        private final Clock clock;
+        private final MotionController controller;
+        private final LatencyHistogram fleetLatency;
+        private final ExecutorService workers;
+
+        private final DroneState state = new DroneState();
+        private boolean hasState;
+
+        private final AtomicReference<SpokenCommand> pending = new AtomicReference<>();
+        private final AtomicLong dueNanos = new AtomicLong(NOT_DUE);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean removed;
+
+        private final LatencyHistogram tickLatency = new LatencyHistogram();
+        private final AtomicLong skippedTicks = new AtomicLong();
+        private final AtomicLong replacedCommands = new AtomicLong();
+        private final AtomicLong rejectedCommands = new AtomicLong();
+
+        private final Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                do {
+                    SpokenCommand command = pending.getAndSet(null);
+                    if (command != null) {
+                        execute(command);
+                    }
+                    long due = dueNanos.get();
+                    if (due != NOT_DUE) {
+                        if (!removed) {
+                            controller.send(0, 0, 0, 0);
+                        }
+                        long done = clock.nanoTime();
+                        tickLatency.record(done - due);
+                        fleetLatency.record(done - due);
+                        dueNanos.set(NOT_DUE);
+                    }
+                    scheduled.set(false);
+                } while ((pending.get() != null || dueNanos.get() != NOT_DUE) && scheduled.compareAndSet(false, true));
+            }
+        };
+
+        private Drone(int id, final DroneLink link, Clock clock, ExecutorService workers, LatencyHistogram fleetLatency) {
+            this.id = id;
+            this.link = link;
+            this.clock = clock;
+            this.workers = workers;
+            this.fleetLatency = fleetLatency;
+            this.controller = new MotionController(new VirtualStickLoop.Output() {
+                @Override
+                public void send(float pitch, float roll, float yaw, float throttle) {
+                    link.sendVirtualStick(pitch, roll, yaw, throttle, null);
+                }
+            }, clock, null);
+        }
+
+        @Override
+        public void onStateUpdate(DroneState update) {
+            controller.onStateUpdate(update);
+            synchronized (state) {
+                state.set(update);
+                hasState = true;
+            }
+        }
+
+        /**
+         * This copies the latest telemetry
+         * @return false if none has arrived yet
+         */
+        public boolean getState(DroneState out) {
+            synchronized (state) {
+                if (hasState) {
+                    out.set(state);
+                }
+                return hasState;
+            }
+        }
+
+        private void offer(SpokenCommand command) {
+            SpokenCommand previous = pending.getAndSet(command);
+            if (previous != null) {
+                replacedCommands.incrementAndGet();
+            }
+            schedule();
+        }
+
+        private void markDue(long nowNanos) {
+            if (dueNanos.compareAndSet(NOT_DUE, nowNanos)) {
+                schedule();
+            } else {
+                skippedTicks.incrementAndGet();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(drain);
+            }
+        }
+
+        private void execute(SpokenCommand command) {
+            if (removed) {
+                return;
+            }
+            if (command.command == VoiceCommand.FINISH) {
+                controller.cancel();
+                return;
+            }
+            if (!controller.hasTelemetry() || !command.unitFits() || !command.amountFits()) {
+                rejectedCommands.incrementAndGet();
+                return;
+            }
+            boolean started = true;
+            switch (command.command) {
+                case FORWARD:
+                    started = controller.move(command.meters(MOVE_METERS), 0, 0);
+                    break;
+                case BACK:
+                    started = controller.move(-command.meters(MOVE_METERS), 0, 0);
+                    break;
+                case UP:
+                    started = controller.move(0, 0, command.meters(CLIMB_METERS));
+                    break;
+                case DOWN:
+                    started = controller.move(0, 0, -command.meters(CLIMB_METERS));
+                    break;
+                case LEFT:
+                    controller.turn(-command.degrees(TURN_DEGREES));
+                    break;
+                case RIGHT:
+                    controller.turn(command.degrees(TURN_DEGREES));
+                    break;
+                case REVERSE:
+                    controller.turn(REVERSE_DEGREES);
+                    break;
+                default:
+                    break;
+            }
+            if (!started) {
+                rejectedCommands.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return the number the aircraft answers to
+         */
+        public int getId() {
+            return id;
+        }
+
+        public DroneLink getLink() {
+            return link;
+        }
+
+        public MotionController getController() {
+            return controller;
+        }
+
+        /**
+         * @return time from each tick falling due to its stick packet being handed to the link
+         */
+        public LatencyHistogram getTickLatency() {
+            return tickLatency;
+        }
+
+        /**
+         * @return ticks dropped because the one before had not finished
+         */
+        public long getSkippedTicks() {
+            return skippedTicks.get();
+        }
+
+        /**
+         * @return commands dropped because a newer one arrived before they started
+         */
+        public long getReplacedCommands() {
+            return replacedCommands.get();
+        }
+
+        /**
+         * @return moves and turns dropped because there was no recent telemetry or, for a
+         *         move, no position fix to steer by, or because their amount was in a unit
+         *         they cannot use or more than they may ask for
+         */
+        public long getRejectedCommands() {
+            return rejectedCommands.get();
+        }
+
+        @Override
+        public String toString() {
+            return "drone " + id + ": tick latency " + tickLatency + ", " + skippedTicks + " skipped ticks";
+        }
+    }
+
+    private final Clock clock;
+    private final long periodNanos;
+    private final int workerCount;
+    private final AtomicInteger nextId;
+    private final LatencyHistogram tickLatency = new LatencyHistogram();
+
+    private final Object lock = new Object();
+    private volatile Drone[] drones = new Drone[0];
+    //created with the first aircraft
+    private ExecutorService workers;
+    //the ticker only runs while started with at least one aircraft to tick
+    private boolean started;
+    private ScheduledExecutorService ticker;
+    private ScheduledFuture<?> future;
+
+    private final Runnable tickTask = new Runnable() {
+        @Override
+        public void run() {
+            tick(clock.nanoTime());
+        }
+    };
+
+    /**
+     * Creates a fleet on the system clock with the default rate and worker count
+     * @param firstId the number the first aircraft added answers to
+     */
+    public FleetManager(int firstId) {
+        this(Clock.SYSTEM, DEFAULT_RATE_HZ, DEFAULT_WORKERS, firstId);
+    }
+
+    /**
+     * Creates a fleet
+     * @param clock the clock the controllers run on, which telemetry timestamps must also use
+     * @param rateHz how many times per second every aircraft gets a stick packet
+     * @param workers how many threads run the aircraft; one more than the number of links
+     *                that may block at once keeps the rest flying
+     * @param firstId the number the first aircraft added answers to
+     */
+    public FleetManager(Clock clock, int rateHz, int workers, int firstId) {
+        if (rateHz <= 0 || workers <= 0) {
+            throw new IllegalArgumentException("rate and workers must be positive: " + rateHz + ", " + workers);
+        }
+        if (firstId < 1) {
+            throw new IllegalArgumentException("aircraft are numbered from one: " + firstId);
+        }
+        this.clock = clock;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rateHz;
+        this.workerCount = workers;
+        this.nextId = new AtomicInteger(firstId);
+    }
+
+    /**
+     * This adds an aircraft to the fleet and starts taking its telemetry.  The link's state
+     * listener is replaced.
+     * @return the aircraft, numbered one after the last one added
+     */
+    public Drone add(DroneLink link) {
+        synchronized (lock) {
+            if (workers == null) {
+                workers = Executors.newFixedThreadPool(workerCount, threadFactory("fleet-worker"));
+            }
+            Drone drone = new Drone(nextId.getAndIncrement(), link, clock, workers, tickLatency);
+            Drone[] grown = Arrays.copyOf(drones, drones.length + 1);
+            grown[drones.length] = drone;
+            drones = grown;
+            link.setStateListener(drone);
+            if (started) {
+                startTickerLocked();
+            }
+            return drone;
+        }
+    }
+
+    /**
+     * This removes an aircraft and stops sending to it
+     * @return false if there is no aircraft with that number
+     */
+    public boolean remove(int id) {
+        synchronized (lock) {
+            Drone[] current = drones;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].id == id) {
+                    Drone drone = current[i];
+                    Drone[] shrunk = new Drone[current.length - 1];
+                    System.arraycopy(current, 0, shrunk, 0, i);
+                    System.arraycopy(current, i + 1, shrunk, i, shrunk.length - i);
+                    drones = shrunk;
+                    drone.removed = true;
+                    drone.link.setStateListener(null);
+                    drone.controller.cancel();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the aircraft with that number, or null
+     */
+    public Drone get(int id) {
+        for (Drone drone : drones) {
+            if (drone.id == id) {
+                return drone;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the registry in the order the aircraft were added
+     */
+    public Drone[] getDrones() {
+        return drones.clone();
+    }
+
+    public int size() {
+        return drones.length;
+    }
+
+    /**
+     * This sends a command to one aircraft
+     * @return false if there is no aircraft with that number
+     */
+    public boolean command(int id, SpokenCommand command) {
+        Drone drone = get(id);
+        if (drone == null) {
+            return false;
+        }
+        drone.offer(command);
+        return true;
+    }
+
+    /**
+     * This sends a command to every aircraft
+     * @return how many aircraft it was sent to
+     */
+    public int commandAll(SpokenCommand command) {
+        Drone[] current = drones;
+        for (Drone drone : current) {
+            drone.offer(command);
+        }
+        return current.length;
+    }
+
+    /**
+     * This starts ticking every aircraft at the control rate on a dedicated thread.  An
+     * empty fleet starts the thread when its first aircraft is added.
+     */
+    public void start() {
+        synchronized (lock) {
+            started = true;
+            if (drones.length > 0) {
+                startTickerLocked();
+            }
+        }
+    }
+
+    private void startTickerLocked() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(threadFactory("fleet-ticker"));
+        future = ticker.scheduleAtFixedRate(tickTask, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * This stops ticking.  Aircraft stay registered and still take commands; a later
+     * {@link #start()} ticks them again.  The worker threads are daemons that live as long
+     * as the fleet.
+     */
+    public void stop() {
+        synchronized (lock) {
+            started = false;
+            if (ticker == null) {
+                return;
+            }
+            future.cancel(false);
+            ticker.shutdown();
+            ticker = null;
+            future = null;
+        }
+    }
+
+    /**
+     * This marks every aircraft due for a tick.  It is package visible so the fleet can be
+     * stepped by hand.
+     * @param nowNanos the current time of the fleet's clock
+     */
+    void tick(long nowNanos) {
+        for (Drone drone : drones) {
+            drone.markDue(nowNanos);
+        }
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * @return tick latency over every aircraft
+     */
+    public LatencyHistogram getTickLatency() {
+        return tickLatency;
+    }
+
+    public long getSkippedTicks() {
+        long skipped = 0;
+        for (Drone drone : drones) {
+            skipped += drone.getSkippedTicks();
+        }
+        return skipped;
+    }
+
+    @Override
+    public String toString() {
+        return drones.length + " aircraft, tick latency " + tickLatency + ", " + getSkippedTicks() + " skipped ticks";
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setPriority(Thread.MAX_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
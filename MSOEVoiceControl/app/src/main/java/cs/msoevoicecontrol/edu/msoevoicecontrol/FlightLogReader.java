@@ -0,0 +1,194 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class reads a log written by {@link FlightRecorder} and replays its telemetry
+ * samples and commands in time order.
+ */
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FlightLogReader {
+
+    /**
+     * Receives the samples of a log in time order.  The row array is reused between calls.
+     */
+    public interface Listener {
+        void onTelemetry(int[] row);
+
+        void onCommand(int[] row);
+    }
+
+    private final long startEpochMillis;
+    private final int[][] telemetry;
+    private final int[][] commands;
+
+    private FlightLogReader(long startEpochMillis, int[][] telemetry, int[][] commands) {
+        this.startEpochMillis = startEpochMillis;
+        this.telemetry = telemetry;
+        this.commands = commands;
+    }
+
+    /**
+     * This reads and decodes a whole log.  A truncated last block is ignored.
+     * @param file a log written by {@link FlightRecorder}
+     * @return the decoded log
+     * @throws IOException if the file cannot be read, is not a flight log or has a block
+     *         whose sample or column count cannot be right
+     */
+    public static FlightLogReader read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        byte[] magic = FlightRecorder.MAGIC;
+        if (data.length < magic.length + 8 || !Arrays.equals(Arrays.copyOf(data, magic.length), magic)) {
+            throw new IOException(file + " is not a flight log");
+        }
+        long start = 0;
+        for (int i = 0; i < 8; i++) {
+            start = (start << 8) | (data[magic.length + i] & 0xff);
+        }
+
+        List<int[][]> telemetryBlocks = new ArrayList<>();
+        List<int[][]> commandBlocks = new ArrayList<>();
+        int[] position = {magic.length + 8};
+        try {
+            while (position[0] < data.length) {
+                int blockStart = position[0];
+                byte type = data[position[0]++];
+                long count = FlightRecorder.readVarint(data, position);
+                long columnCount = FlightRecorder.readVarint(data, position);
+                //every column takes at least the byte of its length
+                int expected = columnCount(type);
+                if (count < 0 || count > FlightRecorder.BLOCK_SAMPLES || columnCount < 0
+                        || columnCount > data.length - position[0] || (expected > 0 && columnCount != expected)) {
+                    throw new IOException(file + " has a corrupt block at byte " + blockStart);
+                }
+                //blocks of a type this reader does not know are skipped
+                int[][] columns = new int[expected][(int) count];
+                for (int c = 0; c < columnCount; c++) {
+                    long length = FlightRecorder.readVarint(data, position);
+                    if (length < 0 || length > data.length - position[0]) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    if (c < expected) {
+                        FlightRecorder.decodeColumn(data, position[0], (int) length, c == 0 ? 2 : 1,
+                                columns[c], (int) count);
+                    }
+                    position[0] += length;
+                }
+                if (type == FlightRecorder.TELEMETRY) {
+                    telemetryBlocks.add(columns);
+                } else if (type == FlightRecorder.COMMAND) {
+                    commandBlocks.add(columns);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException truncated) {
+            //the recorder was stopped in the middle of a block
+        }
+        return new FlightLogReader(start, join(telemetryBlocks, FlightRecorder.TELEMETRY_COLUMNS.length),
+                join(commandBlocks, FlightRecorder.COMMAND_COLUMNS.length));
+    }
+
+    /**
+     * @return how many columns a block of the type has, or 0 for a type this reader does
+     *         not know
+     */
+    private static int columnCount(byte type) {
+        if (type == FlightRecorder.TELEMETRY) {
+            return FlightRecorder.TELEMETRY_COLUMNS.length;
+        } else if (type == FlightRecorder.COMMAND) {
+            return FlightRecorder.COMMAND_COLUMNS.length;
+        }
+        return 0;
+    }
+
+    private static int[][] join(List<int[][]> blocks, int columnCount) {
+        int total = 0;
+        for (int[][] block : blocks) {
+            total += block[0].length;
+        }
+        int[][] columns = new int[columnCount][total];
+        int offset = 0;
+        for (int[][] block : blocks) {
+            for (int c = 0; c < columnCount && c < block.length; c++) {
+                System.arraycopy(block[c], 0, columns[c], offset, block[c].length);
+            }
+            offset += block[0].length;
+        }
+        return columns;
+    }
+
+    /**
+     * This replays the log, merging telemetry and commands by time
+     * @param listener receives each sample
+     * @param speed how many times faster than real time to replay, or 0 for as fast as possible
+     * @throws InterruptedException if interrupted while pacing the replay
+     */
+    public void replay(Listener listener, double speed) throws InterruptedException {
+        int[] telemetryRow = new int[telemetry.length];
+        int[] commandRow = new int[commands.length];
+        int t = 0;
+        int c = 0;
+        long replayStart = System.nanoTime();
+        while (t < getTelemetryCount() || c < getCommandCount()) {
+            boolean nextIsTelemetry = c >= getCommandCount()
+                    || (t < getTelemetryCount() && telemetry[0][t] <= commands[0][c]);
+            int time = nextIsTelemetry ? telemetry[0][t] : commands[0][c];
+            if (speed > 0) {
+                long due = replayStart + (long) (time * 1000000L / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+            }
+            if (nextIsTelemetry) {
+                copyRow(telemetry, t++, telemetryRow);
+                listener.onTelemetry(telemetryRow);
+            } else {
+                copyRow(commands, c++, commandRow);
+                listener.onCommand(commandRow);
+            }
+        }
+    }
+
+    private static void copyRow(int[][] columns, int index, int[] row) {
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = columns[i][index];
+        }
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public int getTelemetryCount() {
+        return telemetry[0].length;
+    }
+
+    public int getCommandCount() {
+        return commands[0].length;
+    }
+
+    /**
+     * @return length of the flight in milliseconds
+     */
+    public int getDurationMillis() {
+        int end = 0;
+        if (getTelemetryCount() > 0) {
+            end = telemetry[0][getTelemetryCount() - 1];
+        }
+        if (getCommandCount() > 0) {
+            end = Math.max(end, commands[0][getCommandCount() - 1]);
+        }
+        return end;
+    }
+}
@@ -0,0 +1,387 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class records every telemetry sample and every stick command of a flight into a
+ * compact, append-only binary log.  Samples are collected column by column into blocks;
+ * the calling thread only stores ints into arrays.  Full blocks are encoded and written
+ * by a background thread: each column is delta encoded (the time column twice), runs of
+ * unchanged values collapse to two bytes and everything else is a zigzag varint.
+ *
+ * File layout: the 8 byte magic "FLTREC01", the recording start as a big-endian long of
+ * epoch milliseconds, then blocks of: type byte, varint sample count, varint column count
+ * and, per column, a varint byte length followed by the encoded column.  Every block
+ * decodes on its own, so a log cut short by a crash is readable up to its last block.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FlightRecorder {
+
+    public static final byte[] MAGIC = {'F', 'L', 'T', 'R', 'E', 'C', '0', '1'};
+    public static final byte TELEMETRY = 1;
+    public static final byte COMMAND = 2;
+
+    //telemetry columns: time ms, attitude in tenths of a degree, velocity in cm/s,
+    //altitude in cm and position in 1e-7 degrees
+    public static final String[] TELEMETRY_COLUMNS = {
+            "time_ms", "pitch_ddeg", "roll_ddeg", "yaw_ddeg", "vx_cms", "vy_cms", "vz_cms",
+            "altitude_cm", "latitude_e7", "longitude_e7"};
+    //command columns: time ms and stick values in thousandths
+    public static final String[] COMMAND_COLUMNS = {
+            "time_ms", "pitch_milli", "roll_milli", "yaw_milli", "throttle_milli"};
+
+    //the most samples a block holds; the reader rejects blocks with more
+    static final int BLOCK_SAMPLES = 512;
+    private static final int BLOCKS_PER_STREAM = 3;
+
+    /**
+     * A block of samples, one int array per column
+     */
+    static class Block {
+        final byte type;
+        final int[][] columns;
+        int count;
+
+        Block(byte type, int columnCount, int samples) {
+            this.type = type;
+            this.columns = new int[columnCount][samples];
+        }
+    }
+
+    /**
+     * The block being filled for one kind of sample plus the free blocks
+     */
+    private class Stream {
+        final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS_PER_STREAM);
+        Block current;
+
+        Stream(byte type, int columnCount) {
+            for (int i = 0; i < BLOCKS_PER_STREAM; i++) {
+                free.add(new Block(type, columnCount, BLOCK_SAMPLES));
+            }
+        }
+
+        /**
+         * @return the block to store the next sample in, or null if none is free
+         */
+        Block next() {
+            if (current == null) {
+                current = free.poll();
+            }
+            return current;
+        }
+
+        /**
+         * This hands the current block to the writer if it is full or if forced
+         */
+        void commit(boolean force) {
+            final Block block = current;
+            if (block == null || block.count == 0 || (!force && block.count < BLOCK_SAMPLES)) {
+                return;
+            }
+            current = null;
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeBlock(block);
+                    } finally {
+                        block.count = 0;
+                        free.offer(block);
+                    }
+                }
+            });
+        }
+    }
+
+    private final Stream telemetry = new Stream(TELEMETRY, TELEMETRY_COLUMNS.length);
+    private final Stream commands = new Stream(COMMAND, COMMAND_COLUMNS.length);
+    private final ByteSink encoded = new ByteSink();
+    private final ByteSink column = new ByteSink();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private volatile long bytesWritten;
+    private volatile IOException writeError;
+
+    private volatile boolean recording;
+    private ExecutorService writer;
+    private FileOutputStream out;
+    private long startNanos;
+
+    /**
+     * This opens the log and starts the writer thread
+     * @param file the log file, which is replaced
+     * @throws IOException if the file cannot be created
+     */
+    public synchronized void start(File file) throws IOException {
+        if (writer != null) {
+            return;
+        }
+        out = new FileOutputStream(file);
+        ByteSink header = new ByteSink();
+        header.write(MAGIC, 0, MAGIC.length);
+        long epochMillis = System.currentTimeMillis();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            header.write((byte) (epochMillis >>> shift));
+        }
+        out.write(header.bytes, 0, header.size);
+        bytesWritten = header.size;
+        startNanos = System.nanoTime();
+        writer = Executors.newSingleThreadExecutor();
+        recording = true;
+    }
+
+    /**
+     * This writes out the partly filled blocks and closes the log
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        //taking each stream's lock waits for a sample being stored on another thread
+        recording = false;
+        synchronized (telemetry) {
+            telemetry.commit(true);
+        }
+        synchronized (commands) {
+            commands.commit(true);
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        try {
+            out.close();
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+
+    /**
+     * This records a telemetry sample
+     * @param pitch pitch in degrees
+     * @param roll roll in degrees
+     * @param yaw yaw in degrees
+     * @param vx velocity north in m/s
+     * @param vy velocity east in m/s
+     * @param vz velocity down in m/s
+     * @param altitude altitude in m
+     * @param latitude latitude in degrees
+     * @param longitude longitude in degrees
+     */
+    public void recordTelemetry(double pitch, double roll, double yaw, float vx, float vy, float vz,
+                                float altitude, double latitude, double longitude) {
+        synchronized (telemetry) {
+            if (!recording) {
+                return;
+            }
+            Block block = telemetry.next();
+            if (block == null) {
+                droppedSamples.incrementAndGet();
+                return;
+            }
+            int i = block.count++;
+            int[][] c = block.columns;
+            c[0][i] = elapsedMillis();
+            c[1][i] = (int) Math.round(pitch * 10);
+            c[2][i] = (int) Math.round(roll * 10);
+            c[3][i] = (int) Math.round(yaw * 10);
+            c[4][i] = Math.round(vx * 100);
+            c[5][i] = Math.round(vy * 100);
+            c[6][i] = Math.round(vz * 100);
+            c[7][i] = Math.round(altitude * 100);
+            c[8][i] = (int) Math.round(latitude * 1e7);
+            c[9][i] = (int) Math.round(longitude * 1e7);
+            telemetry.commit(false);
+        }
+    }
+
+    /**
+     * This records a stick command sent to the flight controller
+     */
+    public void recordCommand(float pitch, float roll, float yaw, float throttle) {
+        synchronized (commands) {
+            if (!recording) {
+                return;
+            }
+            Block block = commands.next();
+            if (block == null) {
+                droppedSamples.incrementAndGet();
+                return;
+            }
+            int i = block.count++;
+            int[][] c = block.columns;
+            c[0][i] = elapsedMillis();
+            c[1][i] = Math.round(pitch * 1000);
+            c[2][i] = Math.round(roll * 1000);
+            c[3][i] = Math.round(yaw * 1000);
+            c[4][i] = Math.round(throttle * 1000);
+            commands.commit(false);
+        }
+    }
+
+    private int elapsedMillis() {
+        return (int) ((System.nanoTime() - startNanos) / 1000000);
+    }
+
+    /**
+     * This encodes and appends a block; it runs on the writer thread
+     */
+    private void writeBlock(Block block) {
+        if (writeError != null) {
+            return;
+        }
+        encoded.size = 0;
+        encoded.write(block.type);
+        encoded.writeVarint(block.count);
+        encoded.writeVarint(block.columns.length);
+        for (int i = 0; i < block.columns.length; i++) {
+            column.size = 0;
+            encodeColumn(block.columns[i], block.count, i == 0 ? 2 : 1, column);
+            encoded.writeVarint(column.size);
+            encoded.write(column.bytes, 0, column.size);
+        }
+        try {
+            out.write(encoded.bytes, 0, encoded.size);
+            bytesWritten += encoded.size;
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+
+    /**
+     * This delta encodes a column
+     * @param order 1 to store differences, 2 to store differences of differences
+     */
+    static void encodeColumn(int[] values, int count, int order, ByteSink out) {
+        long previous = 0;
+        long previousDelta = 0;
+        int run = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            previous = values[i];
+            if (order == 2) {
+                long second = delta - previousDelta;
+                previousDelta = delta;
+                delta = second;
+            }
+            if (delta == 0) {
+                run++;
+                continue;
+            }
+            if (run > 0) {
+                out.write((byte) 0);
+                out.writeVarint(run - 1);
+                run = 0;
+            }
+            out.writeVarint((delta << 1) ^ (delta >> 63));
+        }
+        if (run > 0) {
+            out.write((byte) 0);
+            out.writeVarint(run - 1);
+        }
+    }
+
+    /**
+     * This reverses {@link #encodeColumn}
+     * @param in the encoded column
+     * @param offset where the column starts in in
+     * @param length encoded length
+     * @param values receives count values
+     */
+    static void decodeColumn(byte[] in, int offset, int length, int order, int[] values, int count) {
+        int[] position = {offset};
+        int end = offset + length;
+        long previous = 0;
+        long previousDelta = 0;
+        int i = 0;
+        while (i < count && position[0] < end) {
+            long zigzag = readVarint(in, position);
+            long run = 1;
+            long delta = 0;
+            if (zigzag == 0) {
+                run = readVarint(in, position) + 1;
+            } else {
+                delta = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            for (long r = 0; r < run && i < count; r++) {
+                if (order == 2) {
+                    previousDelta += delta;
+                    previous += previousDelta;
+                } else {
+                    previous += delta;
+                }
+                values[i++] = (int) previous;
+            }
+        }
+    }
+
+    static long readVarint(byte[] in, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in[position[0]++];
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public IOException getWriteError() {
+        return writeError;
+    }
+
+    /**
+     * A growable byte array that is reused between blocks
+     */
+    static class ByteSink {
+        byte[] bytes = new byte[4096];
+        int size;
+
+        void write(byte b) {
+            ensure(1);
+            bytes[size++] = b;
+        }
+
+        void write(byte[] b, int offset, int length) {
+            ensure(length);
+            System.arraycopy(b, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, size + extra)];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+        }
+    }
+}
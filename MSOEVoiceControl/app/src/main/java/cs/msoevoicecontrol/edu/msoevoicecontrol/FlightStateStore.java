@@ -0,0 +1,137 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class keeps the latest compass, flight controller and battery state in an
+ * immutable, versioned {@link Snapshot}.  It is fed the {@link DroneState} samples the
+ * link already delivers, so UI and control code read the snapshot instead of asking the
+ * SDK.  A new snapshot is only built, and published on the {@link EventBus}, when one of
+ * its fields changes; subscribers compare it with the last one they showed to find out
+ * which.
+ */
+
+public class FlightStateStore {
+
+    /**
+     * The fields of a snapshot, used as bits in a change mask
+     */
+    public enum Field {
+        COMPASS,
+        FLYING,
+        ORIENTATION_MODE,
+        BATTERY;
+
+        /** this field's bit */
+        public final int mask = 1 << ordinal();
+
+        /**
+         * @return whether this field is in the change mask
+         */
+        public boolean in(int changed) {
+            return (changed & mask) != 0;
+        }
+    }
+
+    /**
+     * One version of the state.  Snapshots are never modified.
+     */
+    public static final class Snapshot {
+        /** the state before anything is known about the aircraft */
+        public static final Snapshot EMPTY = new Snapshot(0, DroneLink.CompassState.UNKNOWN, false, -1, -1);
+
+        /** increases by one with every change */
+        public final long version;
+        public final DroneLink.CompassState compassState;
+        public final boolean flying;
+        /** ordinal of the flight controller's orientation mode, or -1 if not known */
+        public final int orientationMode;
+        /** charge remaining in percent, or -1 if not known */
+        public final int batteryPercent;
+
+        Snapshot(long version, DroneLink.CompassState compassState, boolean flying,
+                 int orientationMode, int batteryPercent) {
+            this.version = version;
+            this.compassState = compassState;
+            this.flying = flying;
+            this.orientationMode = orientationMode;
+            this.batteryPercent = batteryPercent;
+        }
+
+        /**
+         * @param other an earlier snapshot, or null to treat every field as changed
+         * @return the {@link Field} bits that differ between the two
+         */
+        public int diff(Snapshot other) {
+            if (other == null) {
+                return (1 << Field.values().length) - 1;
+            }
+            int changed = 0;
+            if (compassState != other.compassState) {
+                changed |= Field.COMPASS.mask;
+            }
+            if (flying != other.flying) {
+                changed |= Field.FLYING.mask;
+            }
+            if (orientationMode != other.orientationMode) {
+                changed |= Field.ORIENTATION_MODE.mask;
+            }
+            if (batteryPercent != other.batteryPercent) {
+                changed |= Field.BATTERY.mask;
+            }
+            return changed;
+        }
+
+        @Override
+        public String toString() {
+            return "v" + version + " compass " + compassState + (flying ? ", flying" : ", landed")
+                    + ", orientation " + orientationMode + ", battery " + batteryPercent + "%";
+        }
+    }
+
+    private final EventBus bus;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * @param bus where new snapshots are published, may be null
+     */
+    public FlightStateStore(EventBus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * @return the latest state, read with a single volatile load
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * This takes the fields the store keeps from a sample.  Samples that change nothing
+     * cost a few comparisons and do not allocate.
+     * @return the fields that changed
+     */
+    public int update(DroneState state) {
+        return update(state.compassState, state.flying, state.orientationMode, state.batteryPercent);
+    }
+
+    /**
+     * This forgets the aircraft's state, for when it disconnects
+     * @return the fields that changed
+     */
+    public int reset() {
+        return update(DroneLink.CompassState.UNKNOWN, false, -1, -1);
+    }
+
+    private synchronized int update(DroneLink.CompassState compassState, boolean flying,
+                                    int orientationMode, int batteryPercent) {
+        Snapshot current = snapshot;
+        if (current.compassState == compassState && current.flying == flying
+                && current.orientationMode == orientationMode && current.batteryPercent == batteryPercent) {
+            return 0;
+        }
+        Snapshot next = new Snapshot(current.version + 1, compassState, flying, orientationMode, batteryPercent);
+        snapshot = next;
+        if (bus != null) {
+            bus.publish(next);
+        }
+        return next.diff(current);
+    }
+}
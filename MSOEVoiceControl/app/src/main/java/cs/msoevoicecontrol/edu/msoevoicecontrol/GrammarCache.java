@@ -0,0 +1,139 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class compiles a JSGF grammar into a finite-state grammar once and keeps the result
+ * on disk.  The cached file is keyed by the hashes of the grammar and the dictionary, so
+ * editing either one compiles it again.  If the cache cannot be read or written the
+ * grammar is added from JSGF as before.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.FsgModel;
+import edu.cmu.pocketsphinx.Jsgf;
+import edu.cmu.pocketsphinx.JsgfRule;
+import edu.cmu.pocketsphinx.LogMath;
+
+public class GrammarCache {
+
+    /**
+     * How a search was added
+     */
+    public enum Source {
+        CACHE,
+        COMPILED,
+        JSGF
+    }
+
+    private static final String FSG_EXTENSION = ".fsg";
+
+    private final File cacheDir;
+
+    /**
+     * @param cacheDir directory the compiled grammars are kept in
+     */
+    public GrammarCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * This adds a grammar search to the decoder, using the cached FSG when there is one
+     * @param decoder the decoder, already set up with the dictionary
+     * @param searchName name of the search to add
+     * @param grammar JSGF grammar file
+     * @param dictionary dictionary the decoder was set up with
+     * @return where the search came from
+     * @throws IOException if the grammar or dictionary cannot be read
+     */
+    public Source addSearch(Decoder decoder, String searchName, File grammar, File dictionary)
+            throws IOException {
+        String baseName = grammar.getName() + "-";
+        File cached = new File(cacheDir, baseName + hash(grammar) + "-" + hash(dictionary) + FSG_EXTENSION);
+        LogMath logMath = decoder.getLogmath();
+        float languageWeight = (float) decoder.getConfig().getFloat("-lw");
+
+        if (cached.isFile()) {
+            try {
+                decoder.setFsg(searchName, new FsgModel(cached.getPath(), logMath, languageWeight));
+                return Source.CACHE;
+            } catch (RuntimeException e) {
+                cached.delete();
+            }
+        }
+
+        try {
+            FsgModel model = compile(grammar, logMath, languageWeight);
+            decoder.setFsg(searchName, model);
+            store(model, cached, baseName);
+            return Source.COMPILED;
+        } catch (RuntimeException e) {
+            decoder.setJsgfFile(searchName, grammar.getPath());
+            return Source.JSGF;
+        }
+    }
+
+    private static FsgModel compile(File grammar, LogMath logMath, float languageWeight) {
+        Jsgf jsgf = new Jsgf(grammar.getPath());
+        for (JsgfRule rule : jsgf) {
+            if (rule.isPublic()) {
+                return jsgf.buildFsg(rule, logMath, languageWeight);
+            }
+        }
+        throw new IllegalArgumentException("No public rule in " + grammar);
+    }
+
+    /**
+     * This writes the compiled grammar and removes the ones compiled from older versions
+     */
+    private void store(FsgModel model, File cached, String baseName) {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            return;
+        }
+        File[] stale = cacheDir.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                if (file.getName().startsWith(baseName) && !file.equals(cached)) {
+                    file.delete();
+                }
+            }
+        }
+        File temp = new File(cacheDir, cached.getName() + ".tmp");
+        try {
+            model.writefile(temp.getPath());
+            if (!temp.renameTo(cached)) {
+                temp.delete();
+            }
+        } catch (RuntimeException e) {
+            temp.delete();
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
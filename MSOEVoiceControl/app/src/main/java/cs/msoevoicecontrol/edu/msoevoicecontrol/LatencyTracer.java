@@ -0,0 +1,220 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class follows a voice command from the operator starting to speak to the aircraft
+ * acknowledging the first stick packet that carries it.  Each {@link Stage} records into
+ * a {@link LatencyHistogram} per command plus one for all commands together, so the
+ * overlay and {@link #dump(Writer)} can show where the time goes.
+ *
+ * The trace points are called from the recognizer, UI, stick loop and SDK threads without
+ * locking, and the ones made for every stick packet do not allocate.
+ */
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LatencyTracer {
+
+    public enum Stage {
+        /** beginning to end of speech */
+        SPEECH,
+        /** end of speech to the recognizer's final result */
+        RESULT,
+        /** beginning of speech to a command taken from a partial result */
+        PARTIAL_COMMAND,
+        /** beginning of speech to a command taken from the final result */
+        FINAL_COMMAND,
+        /** running the command and updating the stick setpoint */
+        DISPATCH,
+        /** one sendVirtualStickFlightControlData call */
+        STICK_SEND,
+        /** sending a stick packet to its completion callback */
+        STICK_ACK,
+        /** beginning of speech, or the button press, to the first stick packet of the command */
+        END_TO_END
+    }
+
+    private static final int ALL = 0;
+    //stick packets whose acknowledgement is still expected; older ones are given up on
+    private static final int IN_FLIGHT = 64;
+
+    private static final VoiceCommand[] COMMANDS = VoiceCommand.values();
+
+    /**
+     * A command waiting for its first stick packet
+     */
+    private static final class Pending {
+        final VoiceCommand command;
+        final long originNanos;
+
+        Pending(VoiceCommand command, long originNanos) {
+            this.command = command;
+            this.originNanos = originNanos;
+        }
+    }
+
+    private final LatencyHistogram[][] histograms;
+    private volatile long speechStartNanos;
+    private volatile long speechEndNanos;
+
+    private final AtomicReference<Pending> pending = new AtomicReference<>();
+    //tag for the stick packets, 0 until a command has been sent
+    private volatile int activeTag;
+
+    //send times of the packets in flight, written by the stick loop and read by the SDK
+    private final long[] sendNanos = new long[IN_FLIGHT];
+    private final int[] sendTags = new int[IN_FLIGHT];
+    private volatile long sent;
+    private long acknowledged;
+
+    public LatencyTracer() {
+        histograms = new LatencyHistogram[Stage.values().length][COMMANDS.length + 1];
+        for (LatencyHistogram[] stage : histograms) {
+            for (int i = 0; i < stage.length; i++) {
+                stage[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    private void record(Stage stage, int tag, long nanos) {
+        LatencyHistogram[] stageHistograms = histograms[stage.ordinal()];
+        stageHistograms[ALL].record(nanos);
+        if (tag != ALL) {
+            stageHistograms[tag].record(nanos);
+        }
+    }
+
+    private static int tagOf(VoiceCommand command) {
+        return command == null ? ALL : command.ordinal() + 1;
+    }
+
+    /**
+     * Called when the recognizer hears speech begin
+     */
+    public void speechStarted(long nowNanos) {
+        speechStartNanos = nowNanos;
+        speechEndNanos = 0;
+    }
+
+    /**
+     * Called when the recognizer hears speech end
+     */
+    public void speechEnded(long nowNanos) {
+        long start = speechStartNanos;
+        if (start != 0) {
+            record(Stage.SPEECH, ALL, nowNanos - start);
+        }
+        speechEndNanos = nowNanos;
+    }
+
+    /**
+     * Called when the recognizer delivers its final result
+     */
+    public void resultReceived(long nowNanos) {
+        long end = speechEndNanos;
+        if (end != 0) {
+            record(Stage.RESULT, ALL, nowNanos - end);
+        }
+    }
+
+    /**
+     * Called when a command is recognized
+     * @param latencyNanos time since the beginning of speech
+     */
+    public void commandRecognized(VoiceCommand command, boolean partial, long latencyNanos) {
+        record(partial ? Stage.PARTIAL_COMMAND : Stage.FINAL_COMMAND, tagOf(command), latencyNanos);
+    }
+
+    /**
+     * Called once a command has been run
+     * @param originNanos when the command was asked for, the start of speech or a button press
+     * @param startNanos when the command started running
+     * @param endNanos when it finished
+     * @param moves whether the command changed the stick setpoint
+     */
+    public void commandDispatched(VoiceCommand command, long originNanos, long startNanos, long endNanos,
+                                  boolean moves) {
+        record(Stage.DISPATCH, tagOf(command), endNanos - startNanos);
+        if (moves) {
+            activeTag = tagOf(command);
+            pending.set(new Pending(command, originNanos));
+        }
+    }
+
+    /**
+     * Called by the stick loop around each send
+     */
+    public void stickSent(long startNanos, long endNanos) {
+        Pending command = pending.get();
+        if (command != null && pending.compareAndSet(command, null)) {
+            record(Stage.END_TO_END, tagOf(command.command), endNanos - command.originNanos);
+        }
+        int tag = activeTag;
+        record(Stage.STICK_SEND, tag, endNanos - startNanos);
+        long sequence = sent;
+        int slot = (int) (sequence & (IN_FLIGHT - 1));
+        sendNanos[slot] = startNanos;
+        sendTags[slot] = tag;
+        sent = sequence + 1;
+    }
+
+    /**
+     * Called from the stick packets' completion callback.  The SDK answers packets in the
+     * order they were sent, so each call matches the oldest packet still in flight.
+     */
+    public void stickAcknowledged(long nowNanos) {
+        long sentCount = sent;
+        if (acknowledged >= sentCount) {
+            return;
+        }
+        if (sentCount - acknowledged > IN_FLIGHT) {
+            acknowledged = sentCount - IN_FLIGHT;
+        }
+        int slot = (int) (acknowledged & (IN_FLIGHT - 1));
+        record(Stage.STICK_ACK, sendTags[slot], nowNanos - sendNanos[slot]);
+        acknowledged++;
+    }
+
+    /**
+     * @param command the command, or null for all commands
+     */
+    public LatencyHistogram getHistogram(Stage stage, VoiceCommand command) {
+        return histograms[stage.ordinal()][tagOf(command)];
+    }
+
+    /**
+     * This writes a table of count, p50, p99 and max in milliseconds for every stage and
+     * command that has recorded something
+     */
+    public void dump(Writer out) throws IOException {
+        out.write(String.format("%-16s %-8s %7s %9s %9s %9s%n", "stage", "command", "count", "p50 ms", "p99 ms", "max ms"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram[] stageHistograms = histograms[stage.ordinal()];
+            for (int tag = 0; tag < stageHistograms.length; tag++) {
+                LatencyHistogram histogram = stageHistograms[tag];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                out.write(String.format("%-16s %-8s %7d %9.1f %9.1f %9.1f%n", stage,
+                        tag == ALL ? "all" : COMMANDS[tag - 1].name().toLowerCase(), histogram.getCount(),
+                        histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                        histogram.getMax() / 1e6));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the table from {@link #dump(Writer)}
+     */
+    public String report() {
+        StringWriter out = new StringWriter();
+        try {
+            dump(out);
+        } catch (IOException e) {
+            //a StringWriter does not throw
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,38 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This enum lists the events written to the {@link EventLog}.  Callers only pass the event
+ * and up to two numbers; the text is only put together when a log file is read back.
+ */
+
+public enum LogEvent {
+    MAIN_RESUME("MainActivity onResume"),
+    MAIN_PAUSE("MainActivity onPause"),
+    MAIN_STOP("MainActivity onStop"),
+    MAIN_RETURN("MainActivity onReturn"),
+    MAIN_DESTROY("MainActivity onDestroy"),
+    VIDEO_SURFACE_MISSING("mVideoSurface is null"),
+    SURFACE_AVAILABLE("onSurfaceTextureAvailable %d x %d"),
+    SURFACE_SIZE_CHANGED("onSurfaceTextureSizeChanged %d x %d"),
+    SURFACE_DESTROYED("onSurfaceTextureDestroyed"),
+    ORIENTATION_MODE("Orientation mode changed to %d"),
+    CONNECTION_RESUME("ConnectionActivity onResume"),
+    CONNECTION_PAUSE("ConnectionActivity onPause"),
+    CONNECTION_STOP("ConnectionActivity onStop"),
+    CONNECTION_DESTROY("ConnectionActivity onDestroy"),
+    SDK_REGISTERED("SDK registration success %d, error code %d"),
+    PRODUCT_CHANGED("onProductChanged old product %d, new product %d"),
+    PRODUCT_CONNECTED("refreshSDK connected %d");
+
+    private final String format;
+
+    LogEvent(String format) {
+        this.format = format;
+    }
+
+    /**
+     * This renders the event the way it would have been logged as text
+     */
+    public String format(long a, long b) {
+        return String.format(format, a, b);
+    }
+}
@@ -0,0 +1,90 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is a fixed sequence of virtual stick setpoints, each held for a set time,
+ * that {@link MacroExecutor} plays back on an absolute schedule.  Step i starts at the sum
+ * of the durations before it, so when one step starts late the next still starts on
+ * time and the macro as a whole keeps its length.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+public final class Macro {
+
+    /**
+     * One setpoint and how long it is held
+     */
+    public static final class Step {
+        public final float pitch;
+        public final float roll;
+        public final float yaw;
+        public final float throttle;
+        public final long durationNanos;
+
+        /**
+         * @param durationMs how long the setpoint is held before the next step starts
+         */
+        public Step(float pitch, float roll, float yaw, float throttle, long durationMs) {
+            if (durationMs <= 0) {
+                throw new IllegalArgumentException("duration must be positive: " + durationMs);
+            }
+            this.pitch = pitch;
+            this.roll = roll;
+            this.yaw = yaw;
+            this.throttle = throttle;
+            this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMs);
+        }
+    }
+
+    private final String name;
+    private final Step[] steps;
+    //offsets[i] is when step i starts; offsets[steps.length] is when the macro ends
+    private final long[] offsets;
+
+    /**
+     * @param name shown in logs and reports
+     * @param steps played in order; there must be at least one
+     */
+    public Macro(String name, Step... steps) {
+        if (steps.length == 0) {
+            throw new IllegalArgumentException("a macro needs at least one step");
+        }
+        this.name = name;
+        this.steps = steps.clone();
+        this.offsets = new long[steps.length + 1];
+        for (int i = 0; i < steps.length; i++) {
+            offsets[i + 1] = offsets[i] + steps[i].durationNanos;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStepCount() {
+        return steps.length;
+    }
+
+    public Step getStep(int index) {
+        return steps[index];
+    }
+
+    /**
+     * @param index a step, or the step count for the end of the macro
+     * @return when the step starts, measured from the start of the macro
+     */
+    public long getOffsetNanos(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @return how long the macro takes when every step starts on time
+     */
+    public long getDurationNanos() {
+        return offsets[steps.length];
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + steps.length + " steps, " + TimeUnit.NANOSECONDS.toMillis(getDurationNanos()) + " ms)";
+    }
+}
@@ -0,0 +1,305 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class plays {@link Macro}s into a {@link VirtualStickLoop} from a dedicated
+ * scheduler thread.  Each step is applied at its absolute start time and held until the
+ * next one is due, so a step that starts late is shortened instead of pushing the rest of
+ * the macro back.  Running a new macro or calling {@link #cancel()} preempts the one in
+ * progress.  Every macro ends with a {@link Report} of how late each step started and how
+ * much longer or shorter than asked each step was held.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class MacroExecutor {
+
+    /** returned by {@link #poll(long)} when no macro is running */
+    public static final long IDLE = -1;
+
+    /**
+     * Told when a macro completes or is preempted, on the thread that ended it
+     */
+    public interface Listener {
+        void onMacroDone(Report report);
+    }
+
+    /**
+     * The timing of one run of a macro
+     */
+    public static final class Report {
+        public final Macro macro;
+        /** false if the macro was preempted */
+        public final boolean completed;
+        //how late each step boundary was reached, the last being the end; -1 if it was not
+        private final long[] lateness;
+
+        Report(Macro macro, boolean completed, long[] lateness) {
+            this.macro = macro;
+            this.completed = completed;
+            this.lateness = lateness;
+        }
+
+        /**
+         * @return how many steps were started
+         */
+        public int getStepsStarted() {
+            int started = 0;
+            while (started < macro.getStepCount() && lateness[started] >= 0) {
+                started++;
+            }
+            return started;
+        }
+
+        /**
+         * @return how long after its scheduled time the step started, or -1 if it did not
+         */
+        public long getStartLatenessNanos(int step) {
+            return lateness[step];
+        }
+
+        /**
+         * @return how much longer than its duration the step was held, negative if it was
+         * cut short by a late start, or 0 if it did not run to its end
+         */
+        public long getOverrunNanos(int step) {
+            if (lateness[step] < 0 || lateness[step + 1] < 0) {
+                return 0;
+            }
+            return lateness[step + 1] - lateness[step];
+        }
+
+        /**
+         * @return the latest any step started
+         */
+        public long getMaxStartLatenessNanos() {
+            long max = 0;
+            for (int i = 0; i < macro.getStepCount(); i++) {
+                max = Math.max(max, lateness[i]);
+            }
+            return max;
+        }
+
+        /**
+         * @return how long after its scheduled end the macro finished, or -1 if it was preempted
+         */
+        public long getFinishLatenessNanos() {
+            return lateness[macro.getStepCount()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(macro.getName());
+            builder.append(completed ? " finished " : " preempted ");
+            if (completed) {
+                builder.append(TimeUnit.NANOSECONDS.toMicros(getFinishLatenessNanos())).append(" us late");
+            } else {
+                builder.append("after ").append(getStepsStarted()).append(" of ").append(macro.getStepCount()).append(" steps");
+            }
+            for (int i = 0; i < macro.getStepCount() && lateness[i] >= 0; i++) {
+                builder.append(String.format(" | step %d start +%d us, overrun %+d us", i,
+                        TimeUnit.NANOSECONDS.toMicros(lateness[i]), TimeUnit.NANOSECONDS.toMicros(getOverrunNanos(i))));
+            }
+            return builder.toString();
+        }
+    }
+
+    private final VirtualStickLoop loop;
+    private final Clock clock;
+    private final Listener listener;
+    private final LatencyHistogram stepLateness = new LatencyHistogram();
+
+    //the running macro, guarded by lock
+    private final Object lock = new Object();
+    private Macro macro;
+    private long startNanos;
+    private int next;
+    private long[] lateness;
+    private long generation;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Wakes up at each step boundary of one run; stale once another macro has started
+     */
+    private final class Wake implements Runnable {
+        private final long runGeneration;
+
+        Wake(long runGeneration) {
+            this.runGeneration = runGeneration;
+        }
+
+        @Override
+        public void run() {
+            long wakeAt = advance(clock.nanoTime(), runGeneration);
+            if (wakeAt != IDLE) {
+                schedule(this, wakeAt);
+            }
+        }
+    }
+
+    /**
+     * Creates an executor
+     * @param loop receives each step's setpoint
+     * @param clock time source for the schedule; the loop should use the same one
+     * @param listener told when each macro ends, may be null
+     */
+    public MacroExecutor(VirtualStickLoop loop, Clock clock, Listener listener) {
+        this.loop = loop;
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /**
+     * This starts the scheduler thread.  An executor on a {@link VirtualClock} is stepped
+     * with {@link #poll(long)} instead of being started.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "macro-executor");
+                thread.setPriority(Thread.MAX_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * This preempts the running macro and stops the scheduler thread
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        cancel();
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private synchronized void schedule(Runnable task, long atNanos) {
+        if (scheduler != null) {
+            scheduler.schedule(task, Math.max(0, atNanos - clock.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * This starts a macro, preempting the one in progress
+     */
+    public void run(Macro macro) {
+        Report preempted;
+        long runGeneration;
+        synchronized (lock) {
+            preempted = endLocked(false);
+            this.macro = macro;
+            startNanos = clock.nanoTime();
+            next = 0;
+            lateness = new long[macro.getStepCount() + 1];
+            Arrays.fill(lateness, -1);
+            runGeneration = ++generation;
+        }
+        report(preempted);
+        schedule(new Wake(runGeneration), startNanos);
+    }
+
+    /**
+     * This preempts the running macro.  The loop keeps the last setpoint, which the caller
+     * usually replaces straight away; {@link VirtualStickLoop#release()} stops it instead.
+     * @return whether a macro was running
+     */
+    public boolean cancel() {
+        Report preempted;
+        synchronized (lock) {
+            preempted = endLocked(false);
+        }
+        report(preempted);
+        return preempted != null;
+    }
+
+    /**
+     * This applies the step that is due at the given time.  It is package visible so the
+     * executor can be stepped by hand.
+     * @param nowNanos the current time of the executor's clock
+     * @return when the next step is due, or {@link #IDLE}
+     */
+    long poll(long nowNanos) {
+        long runGeneration;
+        synchronized (lock) {
+            runGeneration = generation;
+        }
+        return advance(nowNanos, runGeneration);
+    }
+
+    private long advance(long nowNanos, long runGeneration) {
+        Report finished = null;
+        long wakeAt;
+        synchronized (lock) {
+            if (macro == null || runGeneration != generation) {
+                return IDLE;
+            }
+            int steps = macro.getStepCount();
+            int reached = next;
+            //boundaries already passed are all recorded, but only the latest step is applied
+            while (next <= steps && startNanos + macro.getOffsetNanos(next) <= nowNanos) {
+                lateness[next] = nowNanos - (startNanos + macro.getOffsetNanos(next));
+                if (next < steps) {
+                    stepLateness.record(lateness[next]);
+                }
+                next++;
+            }
+            if (next > steps) {
+                finished = endLocked(true);
+                wakeAt = IDLE;
+            } else {
+                wakeAt = startNanos + macro.getOffsetNanos(next);
+                if (next > reached) {
+                    Macro.Step step = macro.getStep(next - 1);
+                    //held until the next step is due, so a late start does not delay the rest
+                    long holdMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeAt - nowNanos + 999999));
+                    loop.command(step.pitch, step.roll, step.yaw, step.throttle, holdMs);
+                }
+            }
+        }
+        report(finished);
+        return wakeAt;
+    }
+
+    private Report endLocked(boolean completed) {
+        if (macro == null) {
+            return null;
+        }
+        Report report = new Report(macro, completed, lateness);
+        macro = null;
+        lateness = null;
+        generation++;
+        return report;
+    }
+
+    private void report(Report report) {
+        if (report != null && listener != null) {
+            listener.onMacroDone(report);
+        }
+    }
+
+    /**
+     * @return whether a macro is in progress
+     */
+    public boolean isRunning() {
+        synchronized (lock) {
+            return macro != null;
+        }
+    }
+
+    /**
+     * @return how late steps started, over every macro run
+     */
+    public LatencyHistogram getStepLateness() {
+        return stepLateness;
+    }
+}
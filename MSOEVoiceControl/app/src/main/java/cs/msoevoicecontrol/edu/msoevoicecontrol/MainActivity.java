@@ -12,11 +12,13 @@ import android.content.pm.PackageManager;
 import android.graphics.SurfaceTexture;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Environment;
 import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.TextureView;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -24,7 +26,6 @@ import android.view.TextureView.SurfaceTextureListener;
 import android.widget.Button;
 import android.widget.CompoundButton;
 import android.widget.TextView;
-import android.widget.Toast;
 import android.widget.ToggleButton;
 import java.io.File;
 import java.io.IOException;
@@ -32,62 +33,189 @@ import java.lang.ref.WeakReference;
 import java.util.HashMap;
 
 import dji.common.camera.SettingsDefinitions;
-import dji.common.error.DJIError;
-import dji.common.flightcontroller.CompassCalibrationState;
-import dji.common.flightcontroller.FlightControllerState;
-import dji.common.flightcontroller.virtualstick.FlightControlData;
-import dji.common.flightcontroller.virtualstick.FlightCoordinateSystem;
-import dji.common.flightcontroller.virtualstick.RollPitchControlMode;
-import dji.common.flightcontroller.virtualstick.VerticalControlMode;
-import dji.common.flightcontroller.virtualstick.YawControlMode;
 import dji.common.product.Model;
-import dji.common.util.CommonCallbacks;
 import dji.sdk.base.BaseProduct;
 import dji.sdk.camera.Camera;
 import dji.sdk.camera.VideoFeeder;
 import dji.sdk.codec.DJICodecManager;
-import dji.sdk.flightcontroller.Compass;
 import dji.sdk.flightcontroller.FlightController;
-import edu.cmu.pocketsphinx.Assets;
-import edu.cmu.pocketsphinx.Hypothesis;
-import edu.cmu.pocketsphinx.RecognitionListener;
-import edu.cmu.pocketsphinx.SpeechRecognizer;
-import edu.cmu.pocketsphinx.SpeechRecognizerSetup;
 
-public class MainActivity extends Activity implements SurfaceTextureListener,OnClickListener,RecognitionListener{
+public class MainActivity extends Activity implements SurfaceTextureListener,OnClickListener,SpeechEngine.Listener{
 
-    private static final String TAG = MainActivity.class.getName();
+    //Log.isLoggable rejects tags longer than 23 characters before API 24
+    private static final String TAG = MainActivity.class.getSimpleName();
     protected VideoFeeder.VideoDataCallback mReceivedVideoDataCallBack = null;
 
     private final float sensitivity = (float) 0.5;
     private static final String DIRECTIONS_COMMANDS = "directions";
-    private static final String ALL_DONE = "finish";
+    private static final String KEYWORD_COMMANDS = "keywords";
+    //in keyword mode the utterance is restarted in a pause once this many commands were spotted
+    private static final int KEYWORD_RESTART_COUNT = 8;
+    private static final long VOICE_RESTART_DELAY_MS = 1000;
     private static final int PERMISSIONS_REQUEST_RECORD_AUDIO = 1;
-    private SpeechRecognizer speechRecognizer;
+    //set to false to let the recognizer decode all of the microphone instead of gated speech
+    private static final boolean GATE_SPEECH = true;
+    private SpeechEngine speechEngine;
     private HashMap<String, Integer> captions;
+    private volatile PartialResultMatcher commandMatcher;
+    private PartialResultMatcher grammarMatcher;
+    private PartialResultMatcher keywordMatcher;
+    private ListeningMode listeningMode = ListeningMode.KEYWORDS;
+
+    /**
+     * The two ways the recognizer can listen for commands.  GRAMMAR decodes each utterance
+     * against digits.gram and restarts the decoder after every one.  KEYWORDS spots the
+     * phrases in commands.kws, the commands and the words of their amounts, continuously
+     * without restarting.  Only the grammar is trusted with the aircraft a command is
+     * addressed to, so it is used whenever there is a fleet.
+     */
+    private enum ListeningMode {
+        GRAMMAR(DIRECTIONS_COMMANDS),
+        KEYWORDS(KEYWORD_COMMANDS);
+
+        private final String searchName;
+
+        ListeningMode(String searchName) {
+            this.searchName = searchName;
+        }
+    }
 
     private static double LEFT_ROTATION_AMOUNT = -8.0;
     private static double RIGHT_ROTATION_AMOUNT = 8.0;
-    private static double FORWARD_MOVE_DISTANCE = -4.0;
-    private static double BACK_MOVE_DISTANCE = 4.0;
+    //body velocities, forward positive as MotionController steers
+    private static double FORWARD_MOVE_DISTANCE = 4.0;
+    private static double BACK_MOVE_DISTANCE = -4.0;
     private static double UP_MOVE_DISTANCE = 0.2;
     private static double DOWN_MOVE_DISTANCE = -0.2;
-    private static double REVERSE_MOVE_DISTANCE = 100.0;
-
-    private float pitch=0;
-    private float roll=0;
-    private float yaw=0;
-    private float throttle=0;
+    //closed-loop targets, used while telemetry is arriving; the stick amounts above are the fallback
+    private static double LEFT_TURN_DEGREES = -10.0;
+    private static double RIGHT_TURN_DEGREES = 10.0;
+    private static double REVERSE_TURN_DEGREES = 180.0;
+    private static double FORWARD_MOVE_METERS = 3.0;
+    private static double BACK_MOVE_METERS = -3.0;
+    private static double UP_MOVE_METERS = 0.3;
+    private static double DOWN_MOVE_METERS = -0.3;
+    private static float REVERSE_YAW_RATE = 100f;
+    private static long REVERSE_TURN_MS = 1800;
+    private static long REVERSE_SETTLE_MS = 300;
+    //half a turn at full yaw rate, then zero sticks while the rotation stops
+    private static final Macro TURN_AROUND = new Macro("turn around",
+            new Macro.Step(0, 0, REVERSE_YAW_RATE, 0, REVERSE_TURN_MS),
+            new Macro.Step(0, 0, 0, 0, REVERSE_SETTLE_MS));
 
-    private DJICodecManager mCodecManager = null;
+    private static final int VIDEO_QUEUE_CAPACITY = 32;
+    private volatile DJICodecManager mCodecManager = null;
+    private VideoIngestQueue videoQueue;
+    //a copy of the live view stream kept in the app's movies directory while not null; long press the video to toggle
+    private volatile VideoRecorder videoRecorder;
     private TextureView mVideoSurface = null;
     private Button mTakeOffBtn, mLandBtn,mLeftBtn,mRightBtn,mForwardBtn,mBackBtn,mUpBtn,mDownBtn,mCalibrateBtn,mSpinBtn;
     private ToggleButton mVoiceControlBtn;
     private TextView heading;
 
-    private FlightController flightController;
+    private DroneLink droneLink;
+    //the flight controller is started and stopped on the UI thread as it comes and goes
+    private EventBus.Subscription componentSubscription;
+    private final EventBus.Subscriber<ComponentEvent> componentSubscriber = new EventBus.Subscriber<ComponentEvent>() {
+        @Override
+        public void onEvent(ComponentEvent event) {
+            if (event.gained(Capability.FLIGHT_CONTROLLER)) {
+                FlightController flightController = FPVApplication.getComponents().flightController;
+                if (flightController != null && !isDestroyed()) {
+                    startFlightControl(flightController);
+                }
+            } else if (event.lost(Capability.FLIGHT_CONTROLLER)) {
+                stopFlightControl();
+            }
+        }
+    };
+    //the views only change for the fields that differ from the last state shown
+    private EventBus.Subscription flightStateSubscription;
+    private FlightStateStore.Snapshot shownFlightState;
+    private final EventBus.Subscriber<FlightStateStore.Snapshot> flightStateSubscriber =
+            new EventBus.Subscriber<FlightStateStore.Snapshot>() {
+        @Override
+        public void onEvent(FlightStateStore.Snapshot state) {
+            showFlightState(state);
+        }
+    };
     private Handler handler;
-    private Compass compass;
+    private VirtualStickLoop stickLoop;
+    private MacroExecutor macroExecutor;
+    private MotionController motionController;
+    private final MotionController.Listener motionListener = new MotionController.Listener() {
+        @Override
+        public void onGoalDone(MotionController.Result result) {
+            //this runs on the control loop's thread
+            postVerbose(result);
+        }
+    };
+    private final MacroExecutor.Listener macroListener = new MacroExecutor.Listener() {
+        @Override
+        public void onMacroDone(MacroExecutor.Report report) {
+            //this runs on the executor's thread
+            postVerbose(report);
+        }
+    };
+    private final FlightRecorder flightRecorder = new FlightRecorder();
+    private final Runnable restartVoiceControl = new Runnable() {
+        @Override
+        public void run() {
+            startVoiceControl();
+        }
+    };
+    //posted rather than run, so the keyword matcher is not swapped out while it is firing
+    private final Runnable switchToGrammar = new Runnable() {
+        @Override
+        public void run() {
+            if (listeningMode == ListeningMode.KEYWORDS) {
+                toggleListeningMode();
+            }
+        }
+    };
+
+    //status messages are merged per topic and drawn into the HUD once per display frame
+    private TextView statusHud;
+    private final Choreographer.FrameCallback statusFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            statusChannel.onFrame();
+        }
+    };
+    private final Runnable statusFrameRequest = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(statusFrame);
+        }
+    };
+    private final StatusChannel statusChannel = new StatusChannel(new StatusChannel.FrameScheduler() {
+        @Override
+        public void requestFrame() {
+            handler.post(statusFrameRequest);
+        }
+    });
+
+    private static final long LATENCY_OVERLAY_REFRESH_MS = 1000;
+    private final LatencyTracer latencyTracer = new LatencyTracer();
+    private TextView latencyOverlay;
+    private final Runnable latencyOverlayRefresh = new Runnable() {
+        @Override
+        public void run() {
+            latencyOverlay.setText(latencyTracer.report());
+            handler.postDelayed(this, LATENCY_OVERLAY_REFRESH_MS);
+        }
+    };
+
+    //reused on every tick of the stick loop so streaming does not allocate
+    private final DroneLink.CompletionCallback stickCallback = new DroneLink.CompletionCallback() {
+        @Override
+        public void onResult(String error) {
+            latencyTracer.stickAcknowledged(System.nanoTime());
+            if (null != error) {
+                showStatus(StatusChannel.Topic.STICK, "failure "+ error);
+            }
+        }
+    };
 
     /**
      * This method is called when this activity is first starting (created)
@@ -101,6 +229,9 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
         setContentView(R.layout.activity_main);
         handler = new Handler();
         initUI();
+        flightStateSubscription = FPVApplication.getEventBus().subscribeLatest(FlightStateStore.Snapshot.class,
+                FPVApplication.getMainExecutor(), flightStateSubscriber);
+        showFlightState(FPVApplication.getFlightState().getSnapshot());
 
         captions = new HashMap<>();
         int permissionCheck = ContextCompat.checkSelfPermission(getApplicationContext(), Manifest.permission.RECORD_AUDIO);
@@ -111,40 +242,151 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
         new SetupTask(this).execute();
 
         // The callback for receiving the raw H264 video data for camera live view
+        videoQueue = new VideoIngestQueue(VIDEO_QUEUE_CAPACITY, new VideoIngestQueue.Sink() {
+            @Override
+            public void decode(byte[] data, int size) {
+                DJICodecManager codecManager = mCodecManager;
+                if (codecManager != null) {
+                    codecManager.sendDataToDecoder(data, size);
+                }
+            }
+        });
+        videoQueue.start();
         mReceivedVideoDataCallBack = new VideoFeeder.VideoDataCallback() {
             @Override
             public void onReceive(byte[] videoBuffer, int size) {
-                if (mCodecManager != null) {
-                    mCodecManager.sendDataToDecoder(videoBuffer, size);
+                VideoRecorder recorder = videoRecorder;
+                if (recorder != null) {
+                    recorder.record(videoBuffer, size, System.nanoTime());
+                }
+                if (mCodecManager == null) {
+                    videoQueue.dropUntilKeyframe(size);
+                } else {
+                    videoQueue.offer(videoBuffer, size);
                 }
             }
         };
 
-        //Setting up the flight controller parameters
-        if (ModuleVerificationUtil.isFlightControllerAvailable()) {
-            flightController = FPVApplication.getAircraftInstance().getFlightController();
-            flightController.setStateCallback(new FlightControllerState.Callback() {
-                @Override
-                public void onUpdate(@NonNull FlightControllerState flightControllerState) {
-                    String orientationMode = flightControllerState.getOrientationMode().name();
-                    System.err.println("Orientation mode changed " + orientationMode);
+        //the flight controller is set up now if the aircraft has one, and whenever it provides one later
+        componentSubscription = FPVApplication.getEventBus().subscribe(ComponentEvent.class,
+                FPVApplication.getMainExecutor(), componentSubscriber);
+        FlightController flightController = FPVApplication.getComponents().flightController;
+        if (flightController != null) {
+            startFlightControl(flightController);
+        }
+        //the fleet flies for as long as the activity takes commands for it
+        FPVApplication.getFleet().start();
+    }
+
+    /**
+     * This puts the flight controller into virtual stick mode and starts streaming to it
+     * @param flightController the aircraft's flight controller
+     */
+    private void startFlightControl(FlightController flightController) {
+        if (droneLink != null) {
+            return;
+        }
+        startFlightRecording();
+        final DroneLink link = new DjiDroneLink(flightController, FPVApplication.getComponents().battery,
+                new DroneLink.CompletionCallback() {
+            @Override
+            public void onResult(String error) {
+                if (null == error) {
+                    showStatus(StatusChannel.Topic.FLIGHT, "Success enabling virtual stick");
+                } else {
+                    showStatus(StatusChannel.Topic.ERROR, "failure "+ error);
                 }
-            });
-            flightController.setVirtualStickModeEnabled(true, new CommonCallbacks.CompletionCallback() {
-                @Override
-                public void onResult(DJIError djiError) {
-                    if (null == djiError) {
-                        showToast("Success enabling virtual stick");
-                    } else {
-                        showToast("failure "+ djiError.getDescription());
-                    }
+            }
+        });
+        //the controller steps on every tick of the loop, between it and the link
+        final MotionController controller = new MotionController(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                long sendStart = System.nanoTime();
+                link.sendVirtualStick(pitch, roll, yaw, throttle, stickCallback);
+                latencyTracer.stickSent(sendStart, System.nanoTime());
+                flightRecorder.recordCommand(pitch, roll, yaw, throttle);
+            }
+        }, Clock.SYSTEM, motionListener);
+        link.setStateListener(new DroneLink.StateListener() {
+            @Override
+            public void onStateUpdate(DroneState state) {
+                flightRecorder.recordTelemetry(state.pitch, state.roll, state.yaw,
+                        state.velocityX, state.velocityY, state.velocityZ, state.altitude,
+                        state.latitude, state.longitude);
+                controller.onStateUpdate(state);
+                int changed = FPVApplication.getFlightState().update(state);
+                if (FlightStateStore.Field.ORIENTATION_MODE.in(changed)) {
+                    FPVApplication.getEventLog().log(LogEvent.ORIENTATION_MODE, state.orientationMode, 0);
                 }
-            });
-            flightController.setRollPitchControlMode(RollPitchControlMode.VELOCITY);
-            flightController.setYawControlMode(YawControlMode.ANGULAR_VELOCITY);
-            flightController.setVerticalControlMode(VerticalControlMode.VELOCITY);
-            flightController.setRollPitchCoordinateSystem(FlightCoordinateSystem.BODY);
-            compass = flightController.getCompass();
+                EventBus bus = FPVApplication.getEventBus();
+                if (bus.hasSubscribers(TelemetryEvent.class)) {
+                    bus.publish(new TelemetryEvent(state));
+                }
+            }
+        });
+        motionController = controller;
+        stickLoop = new VirtualStickLoop(controller);
+        stickLoop.start();
+        macroExecutor = new MacroExecutor(stickLoop, Clock.SYSTEM, macroListener);
+        macroExecutor.start();
+        droneLink = link;
+    }
+
+    /**
+     * This stops streaming to the flight controller
+     */
+    private void stopFlightControl() {
+        if (macroExecutor != null) {
+            macroExecutor.stop();
+            if (verbose())
+                Log.v(TAG, "macro step lateness: " + macroExecutor.getStepLateness());
+            macroExecutor = null;
+        }
+        if (motionController != null) {
+            motionController.cancel();
+            motionController = null;
+        }
+        if (stickLoop != null) {
+            stickLoop.stop();
+            stickLoop = null;
+        }
+        if (droneLink != null) {
+            droneLink.close();
+            droneLink = null;
+        }
+        flightRecorder.stop();
+        FPVApplication.getFlightState().reset();
+    }
+
+    /**
+     * This updates the views for the fields that changed since the last state shown
+     */
+    private void showFlightState(FlightStateStore.Snapshot state) {
+        int changed = state.diff(shownFlightState);
+        shownFlightState = state;
+        if (FlightStateStore.Field.COMPASS.in(changed)) {
+            heading.setText(compassText(state.compassState));
+        }
+        if (FlightStateStore.Field.BATTERY.in(changed) && state.batteryPercent >= 0) {
+            showStatus(StatusChannel.Topic.FLIGHT, "Battery " + state.batteryPercent + "%");
+        }
+    }
+
+    private static String compassText(DroneLink.CompassState compassState) {
+        switch (compassState) {
+            case FAILED:
+                return "Calibration Failed";
+            case NOT_CALIBRATING:
+                return "Calibrated";
+            case UNKNOWN:
+                return "Please Calibrate!";
+            case SUCCESSFUL:
+                return "Calibration Successful";
+            case CALIBRATING:
+                return "Calibrating...";
+            default:
+                return "unknown";
         }
     }
 
@@ -156,6 +398,12 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
         mVideoSurface = (TextureView)findViewById(R.id.video_previewer_surface);
         if (null != mVideoSurface) {
             mVideoSurface.setSurfaceTextureListener(this);
+            mVideoSurface.setOnLongClickListener(new View.OnLongClickListener() {
+                public boolean onLongClick(View v){
+                    toggleVideoRecording();
+                    return true;
+                }
+            });
         }
         mTakeOffBtn = (Button) findViewById(R.id.btn_take_off);
         mLandBtn = (Button) findViewById(R.id.btn_land);
@@ -169,6 +417,14 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
         mVoiceControlBtn = (ToggleButton) findViewById(R.id.btn_voice_control);
         mSpinBtn = (Button) findViewById(R.id.spinButton);
         heading = (TextView) findViewById(R.id.heading);
+        latencyOverlay = (TextView) findViewById(R.id.latency_overlay);
+        statusHud = (TextView) findViewById(R.id.status_hud);
+        statusChannel.setDisplay(new StatusChannel.Display() {
+            @Override
+            public void show(String text) {
+                statusHud.setText(text);
+            }
+        });
 
         //Event handler listeners
         mTakeOffBtn.setOnClickListener(this);
@@ -182,11 +438,32 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
         mCalibrateBtn.setOnClickListener(this);
         mSpinBtn.setOnClickListener(this);
 
+        //Buttons that mirror a voice command run through the same command dispatch
+        mLeftBtn.setTag(VoiceCommand.LEFT);
+        mRightBtn.setTag(VoiceCommand.RIGHT);
+        mForwardBtn.setTag(VoiceCommand.FORWARD);
+        mBackBtn.setTag(VoiceCommand.BACK);
+        mUpBtn.setTag(VoiceCommand.UP);
+        mDownBtn.setTag(VoiceCommand.DOWN);
+        mSpinBtn.setTag(VoiceCommand.REVERSE);
+
         mVoiceControlBtn.setOnClickListener(new View.OnClickListener() {
             public void onClick(View v){
                 startVoiceControl();
             }
         });
+        mVoiceControlBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            public boolean onLongClick(View v){
+                toggleListeningMode();
+                return true;
+            }
+        });
+        heading.setOnLongClickListener(new View.OnLongClickListener() {
+            public boolean onLongClick(View v){
+                toggleLatencyOverlay();
+                return true;
+            }
+        });
 
     }
 
@@ -201,9 +478,24 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
         @Override
         protected Exception doInBackground(Void... params) {
             try {
-                Assets assets = new Assets(activityReference.get());
-                File assetDir = assets.syncAssets();
-                activityReference.get().setupRecognizer(assetDir);
+                long start = System.nanoTime();
+                MainActivity activity = activityReference.get();
+                File storage = activity.getExternalFilesDir(null);
+                if (storage == null) {
+                    //external storage is not mounted, so the assets go in internal storage
+                    storage = activity.getFilesDir();
+                }
+                AssetStore assets = new AssetStore(new ApkAssetSource(activity.getAssets()),
+                        new File(storage, AssetStore.SYNC_DIR));
+                File assetDir = assets.sync();
+                long synced = System.nanoTime();
+                activity.setupRecognizer(assetDir);
+                long done = System.nanoTime();
+                if (verbose()) {
+                    Log.v(TAG, "asset sync took " + (synced - start) / 1000000 + " ms ("
+                            + assets.getCopiedFiles() + " files, " + assets.getCopiedBytes() + " bytes copied), "
+                            + "recognizer setup took " + (done - synced) / 1000000 + " ms");
+                }
             } catch (IOException e) {
                 return e;
             }
@@ -247,42 +539,100 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      * for final result in onResult.
      */
     @Override
-    public void onPartialResult(Hypothesis hypothesis) {
+    public void onPartialResult(String hypothesis) {
+        if (hypothesis != null && commandMatcher != null) {
+            commandMatcher.onPartialResult(hypothesis, System.nanoTime());
+        }
     }
 
     /**
      * This is called when we stop the recognizer.
      */
     @Override
-    public void onResult(Hypothesis hypothesis) {
-        if (hypothesis != null) {
-            String text = hypothesis.getHypstr();
-            if (text.equals("backward"))
-                text = "back";
-            if(text.equals(ALL_DONE) || text.equals("Land")){
-                speechRecognizer.cancel();
-                showToast("all done");
-            } else {
-                //voice command recognized!
-                if (text.equals("up") || text.equals("fly up"))
+    public void onResult(String hypothesis) {
+        if (hypothesis != null && commandMatcher != null) {
+            long now = System.nanoTime();
+            latencyTracer.resultReceived(now);
+            commandMatcher.onFinalResult(hypothesis, now);
+            if (verbose())
+                Log.v(TAG, listeningMode + " time to command: " + commandMatcher);
+            showStatus(StatusChannel.Topic.VOICE, hypothesis);
+        }
+    }
+
+    /**
+     * This runs a command that was either spoken or pressed.  A spoken amount replaces the
+     * default distance or angle of a move or turn; one in the wrong unit, or more than the
+     * command may ask for, refuses the command.
+     * @param spoken the command to run
+     * @param originNanos when the command was asked for, for latency tracing
+     */
+    private void executeCommand(SpokenCommand spoken, long originNanos) {
+        long start = System.nanoTime();
+        VoiceCommand command = spoken.command;
+        if (!spoken.unitFits()) {
+            showStatus(StatusChannel.Topic.VOICE, "wrong unit: " + spoken);
+            return;
+        }
+        if (!spoken.amountFits()) {
+            showStatus(StatusChannel.Topic.VOICE, "too much: " + spoken);
+            return;
+        }
+        //commands for other aircraft go to the fleet; "all" goes there and to this one
+        if (spoken.target == SpokenCommand.ALL) {
+            FPVApplication.getFleet().commandAll(spoken);
+        } else if (spoken.target != SpokenCommand.NO_TARGET && spoken.target != FPVApplication.LOCAL_DRONE) {
+            if (!FPVApplication.getFleet().command(spoken.target, spoken)) {
+                showStatus(StatusChannel.Topic.VOICE, "no drone " + spoken.target);
+            }
+            return;
+        }
+        //any new command preempts a macro or goal in progress; the others replace it
+        boolean preempted = macroExecutor != null && macroExecutor.cancel();
+        preempted |= motionController != null && motionController.cancel();
+        if (preempted && command == VoiceCommand.FINISH) {
+            stickLoop.release();
+        }
+        switch (command) {
+            case FINISH:
+                handler.removeCallbacks(restartVoiceControl);
+                speechEngine.cancel();
+                showStatus(StatusChannel.Topic.VOICE, "all done");
+                break;
+            case UP:
+                if (!move(0, 0, directed(spoken.meters(UP_MOVE_METERS), UP_MOVE_METERS)))
                     rightJoystickInput(0, UP_MOVE_DISTANCE);
-                else if (text.equals("down") || text.equals("fly down"))
+                break;
+            case DOWN:
+                if (!move(0, 0, directed(spoken.meters(DOWN_MOVE_METERS), DOWN_MOVE_METERS)))
                     rightJoystickInput(0, DOWN_MOVE_DISTANCE);
-                else if (text.equals("left") || text.equals("turn left"))
+                break;
+            case LEFT:
+                if (!turn(directed(spoken.degrees(LEFT_TURN_DEGREES), LEFT_TURN_DEGREES)))
                     rightJoystickInput(LEFT_ROTATION_AMOUNT, 0);
-                else if (text.equals("right") || text.equals("turn right"))
+                break;
+            case RIGHT:
+                if (!turn(directed(spoken.degrees(RIGHT_TURN_DEGREES), RIGHT_TURN_DEGREES)))
                     rightJoystickInput(RIGHT_ROTATION_AMOUNT, 0);
-                else if (text.equals("forward") || text.equals("move forward"))
-                    leftJoystickInput(FORWARD_MOVE_DISTANCE, 0);
-                else if (text.equals("back") || text.equals("move backward"))
-                    leftJoystickInput(BACK_MOVE_DISTANCE, 0);
-                else if (text.equals("reverse") || text.equals("turn around"))
-                    rightJoystickInput(REVERSE_MOVE_DISTANCE, 0);
-                    rightJoystickInput(REVERSE_MOVE_DISTANCE, 0);
-                    rightJoystickInput(REVERSE_MOVE_DISTANCE, 0);
-            }
-            showToast(text);
+                break;
+            case FORWARD:
+                if (!move(directed(spoken.meters(FORWARD_MOVE_METERS), FORWARD_MOVE_METERS), 0, 0))
+                    openLoopMove(FORWARD_MOVE_DISTANCE);
+                break;
+            case BACK:
+                if (!move(directed(spoken.meters(BACK_MOVE_METERS), BACK_MOVE_METERS), 0, 0))
+                    openLoopMove(BACK_MOVE_DISTANCE);
+                break;
+            case REVERSE:
+                if (!turn(REVERSE_TURN_DEGREES) && macroExecutor != null) {
+                    macroExecutor.run(TURN_AROUND);
+                }
+                break;
+            default:
+                break;
         }
+        latencyTracer.commandDispatched(command, originNanos, start, System.nanoTime(),
+                command != VoiceCommand.FINISH);
     }
 
     /**
@@ -290,16 +640,33 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onBeginningOfSpeech() {
-        speechRecognizer.startListening(DIRECTIONS_COMMANDS, 1000);
+        long now = System.nanoTime();
+        latencyTracer.speechStarted(now);
+        if (listeningMode == ListeningMode.KEYWORDS) {
+            commandMatcher.markSpeechStart(now);
+            return;
+        }
+        commandMatcher.onSpeechStart(now);
+        speechEngine.startListening(DIRECTIONS_COMMANDS, 1000);
     }
 
     /**
-     * We stop the speech recognizer here to get the result
+     * We stop the speech recognizer here to get the result.  Keyword spotting keeps
+     * listening, fires a move or turn it held back for an amount that never came, and is
+     * only restarted once its utterance has collected enough commands.
      */
     @Override
     public void onEndOfSpeech() {
-        speechRecognizer.stop();
-        speechRecognizer.startListening(DIRECTIONS_COMMANDS);
+        long now = System.nanoTime();
+        latencyTracer.speechEnded(now);
+        if (listeningMode == ListeningMode.KEYWORDS) {
+            commandMatcher.onSpeechPause(now);
+            if (commandMatcher.getFiredCount() < KEYWORD_RESTART_COUNT) {
+                return;
+            }
+        }
+        speechEngine.stop();
+        speechEngine.startListening(listeningMode.searchName);
     }
 
     /**
@@ -308,13 +675,41 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      * @throws IOException
      */
     private void setupRecognizer(File assetsDir) throws IOException {
-        speechRecognizer = SpeechRecognizerSetup.defaultSetup()
-                .setAcousticModel(new File(assetsDir, "en-us-ptm"))
-                .setDictionary(new File(assetsDir, "cmudict-en-us.dict"))
-                .getRecognizer();
-        speechRecognizer.addListener(this);
+        File dictionary = new File(assetsDir, "commands.dict");
+        File acousticModel = new File(assetsDir, "en-us-ptm");
+        GrammarCache grammarCache = new GrammarCache(new File(getCacheDir(), "fsg"));
+        speechEngine = GATE_SPEECH
+                ? new MicrophoneSpeechEngine(acousticModel, dictionary, grammarCache)
+                : new AndroidSpeechEngine(acousticModel, dictionary, grammarCache);
+        speechEngine.addListener(this);
         File myGrammar = new File(assetsDir, "digits.gram");
-        speechRecognizer.addGrammarSearch(DIRECTIONS_COMMANDS, myGrammar);
+        long start = System.nanoTime();
+        GrammarCache.Source source = speechEngine.addGrammarSearch(DIRECTIONS_COMMANDS, myGrammar, dictionary);
+        if (verbose())
+            Log.v(TAG, "grammar search from " + source + " took " + (System.nanoTime() - start) / 1000 + " us");
+        speechEngine.addKeywordSearch(KEYWORD_COMMANDS, new File(assetsDir, "commands.kws"));
+
+        CommandTable commandTable = CommandTable.compile(myGrammar);
+        PartialResultMatcher.Listener commandListener = new PartialResultMatcher.Listener() {
+            @Override
+            public void onCommand(SpokenCommand command, boolean partial, long latencyNanos) {
+                latencyTracer.commandRecognized(command.command, partial, latencyNanos);
+                //a spotter can miss the number in front of a command and fly it on the wrong
+                //aircraft, so addressing one is left to the grammar
+                if (listeningMode == ListeningMode.KEYWORDS
+                        && (command.target != SpokenCommand.NO_TARGET || fleetActive())) {
+                    showStatus(StatusChannel.Topic.VOICE, "not sent, say it again: " + command);
+                    handler.post(switchToGrammar);
+                    return;
+                }
+                executeCommand(command, System.nanoTime() - latencyNanos);
+            }
+        };
+        grammarMatcher = new PartialResultMatcher(commandTable, commandListener);
+        //a spotted keyword fires as soon as it is reported, except a move or turn at the end,
+        //which waits for the next keyword or a pause in case an amount follows
+        keywordMatcher = new PartialResultMatcher(commandTable, commandListener, 1, 0, false);
+        commandMatcher = listeningMode == ListeningMode.KEYWORDS ? keywordMatcher : grammarMatcher;
     }
 
     /**
@@ -323,7 +718,10 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onError(Exception error) {
-        showToast(error.toString());
+        showStatus(StatusChannel.Topic.ERROR, error.toString());
+        //after a pause, so a microphone that keeps failing does not restart in a tight loop
+        handler.removeCallbacks(restartVoiceControl);
+        handler.postDelayed(restartVoiceControl, VOICE_RESTART_DELAY_MS);
     }
 
     /**
@@ -331,6 +729,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onTimeout() {
+        startVoiceControl();
     }
 
     /**
@@ -338,12 +737,12 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onResume() {
-        Log.e(TAG, "onResume");
+        FPVApplication.getEventLog().log(LogEvent.MAIN_RESUME);
         super.onResume();
         initPreviewer();
         onProductChange();
         if(mVideoSurface == null) {
-            Log.e(TAG, "mVideoSurface is null");
+            FPVApplication.getEventLog().log(LogEvent.VIDEO_SURFACE_MISSING);
         }
     }
 
@@ -352,7 +751,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onPause() {
-        Log.e(TAG, "onPause");
+        FPVApplication.getEventLog().log(LogEvent.MAIN_PAUSE);
         uninitPreviewer();
         super.onPause();
     }
@@ -362,7 +761,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onStop() {
-        Log.e(TAG, "onStop");
+        FPVApplication.getEventLog().log(LogEvent.MAIN_STOP);
         super.onStop();
     }
 
@@ -371,7 +770,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      * @param view
      */
     public void onReturn(View view){
-        Log.e(TAG, "onReturn");
+        FPVApplication.getEventLog().log(LogEvent.MAIN_RETURN);
         this.finish();
     }
 
@@ -380,21 +779,113 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     protected void onDestroy() {
-        Log.e(TAG, "onDestroy");
+        FPVApplication.getEventLog().log(LogEvent.MAIN_DESTROY);
         uninitPreviewer();
+        flightStateSubscription.cancel();
+        //onCreate returns before subscribing when it has to ask for permissions
+        if (componentSubscription != null) {
+            componentSubscription.cancel();
+        }
+        stopFlightControl();
+        FPVApplication.getFleet().stop();
+        boolean verbose = verbose();
+        if (videoQueue != null) {
+            if (verbose)
+                Log.v(TAG, "video: " + videoQueue);
+            videoQueue.stop();
+        }
+        handler.removeCallbacks(latencyOverlayRefresh);
+        handler.removeCallbacks(switchToGrammar);
+        handler.removeCallbacks(restartVoiceControl);
+        if (verbose) {
+            Log.v(TAG, "latency:\n" + latencyTracer.report());
+            if (fleetActive()) {
+                Log.v(TAG, "fleet: " + FPVApplication.getFleet());
+            }
+        }
+        statusChannel.setDisplay(null);
+        handler.removeCallbacks(statusFrameRequest);
+        Choreographer.getInstance().removeFrameCallback(statusFrame);
+        if (verbose)
+            Log.v(TAG, "status: " + statusChannel);
+        stopVideoRecording();
         super.onDestroy();
-        if (speechRecognizer != null) {
+        if (speechEngine != null) {
             stopVoiceControl();
         }
     }
 
+    /**
+     * This starts recording telemetry and stick commands to a new flight log
+     */
+    private void startFlightRecording() {
+        File dir = getExternalFilesDir("flights");
+        if (dir == null) {
+            return;
+        }
+        try {
+            flightRecorder.start(new File(dir, "flight-" + System.currentTimeMillis() + ".log"));
+        } catch (IOException e) {
+            Log.e(TAG, "cannot record flight", e);
+        }
+    }
+
+    /**
+     * This starts recording the live view stream if it is not being recorded, or stops it
+     */
+    private void toggleVideoRecording() {
+        if (videoRecorder != null) {
+            stopVideoRecording();
+            showStatus(StatusChannel.Topic.FLIGHT, "video recording stopped");
+        } else if (startVideoRecording()) {
+            showStatus(StatusChannel.Topic.FLIGHT, "recording video");
+        } else {
+            showStatus(StatusChannel.Topic.ERROR, "cannot record video");
+        }
+    }
+
+    /**
+     * This starts recording the live view stream to a new file
+     * @return false if there is nowhere to record it
+     */
+    private boolean startVideoRecording() {
+        File dir = getExternalFilesDir(Environment.DIRECTORY_MOVIES);
+        if (dir == null) {
+            return false;
+        }
+        VideoRecorder recorder = new VideoRecorder();
+        try {
+            recorder.start(new File(dir, "flight-" + System.currentTimeMillis()));
+            videoRecorder = recorder;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "cannot record video", e);
+            return false;
+        }
+    }
+
+    /**
+     * This stops recording the live view stream, if it is being recorded
+     */
+    private void stopVideoRecording() {
+        VideoRecorder recorder = videoRecorder;
+        if (recorder == null) {
+            return;
+        }
+        //the video callback stops handing it chunks before the last ones are written out
+        videoRecorder = null;
+        recorder.stop();
+        if (verbose())
+            Log.v(TAG, "video recording: " + recorder);
+    }
+
     /**
      * This initializes the video stream portion of the app
      */
     private void initPreviewer() {
         BaseProduct product = FPVApplication.getProductInstance();
         if (product == null || !product.isConnected()) {
-            showToast(getString(R.string.disconnected));
+            showStatus(StatusChannel.Topic.ERROR, getString(R.string.disconnected));
         } else {
             if (null != mVideoSurface) {
                 mVideoSurface.setSurfaceTextureListener(this);
@@ -423,7 +914,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-        Log.e(TAG, "onSurfaceTextureAvailable");
+        FPVApplication.getEventLog().log(LogEvent.SURFACE_AVAILABLE, width, height);
         if (mCodecManager == null) {
             mCodecManager = new DJICodecManager(this, surface, width, height);
         }
@@ -437,7 +928,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
-        Log.e(TAG, "onSurfaceTextureSizeChanged");
+        FPVApplication.getEventLog().log(LogEvent.SURFACE_SIZE_CHANGED, width, height);
     }
 
     /**
@@ -447,7 +938,7 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-        Log.e(TAG,"onSurfaceTextureDestroyed");
+        FPVApplication.getEventLog().log(LogEvent.SURFACE_DESTROYED);
         if (mCodecManager != null) {
             mCodecManager.cleanSurface();
             mCodecManager = null;
@@ -469,141 +960,195 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      */
     @Override
     public void onClick(View v) {
-        FlightController flightController = ModuleVerificationUtil.getFlightController();
-        if (flightController == null) {
+        if (droneLink == null) {
+            return;
+        }
+        if (v.getTag() instanceof VoiceCommand) {
+            executeCommand(SpokenCommand.of((VoiceCommand) v.getTag()), System.nanoTime());
             return;
         }
-        if(compass.getCalibrationState() == CompassCalibrationState.FAILED)
-            heading.setText("Calibration Failed");
-        else if(compass.getCalibrationState() == CompassCalibrationState.NOT_CALIBRATING)
-            heading.setText("Calibrated");
-        else if(compass.getCalibrationState() == CompassCalibrationState.UNKNOWN)
-            heading.setText("Please Calibrate!");
-        else if(compass.getCalibrationState() == CompassCalibrationState.SUCCESSFUL)
-            heading.setText("Calibration Successful");
-        else
-            heading.setText("unknown");
-
         switch (v.getId()) {
             case R.id.btn_calibrate:{
-                compass.startCalibration(new CommonCallbacks.CompletionCallback() {
+                droneLink.startCompassCalibration(new DroneLink.CompletionCallback() {
                     @Override
-                    public void onResult(DJIError djiError) {
-                        if(null == djiError){
-                            showToast("calibration complete");
+                    public void onResult(String error) {
+                        if(null == error){
+                            showStatus(StatusChannel.Topic.FLIGHT, "calibration complete");
                         }
                         else {
-                            showToast("calibration error "+ djiError.getDescription());
+                            showStatus(StatusChannel.Topic.ERROR, "calibration error "+ error);
                         }
                     }});
                 break;
             }
             case R.id.btn_take_off:{
-                flightController.startTakeoff(new CommonCallbacks.CompletionCallback() {
+                droneLink.startTakeoff(new DroneLink.CompletionCallback() {
                     @Override
-                    public void onResult(DJIError djiError) {
-                        if (null == djiError) {
-                            showToast("Taking off...");
+                    public void onResult(String error) {
+                        if (null == error) {
+                            showStatus(StatusChannel.Topic.FLIGHT, "Taking off...");
                         } else {
-                            showToast("failure "+ djiError.getDescription());
+                            showStatus(StatusChannel.Topic.ERROR, "failure "+ error);
                         }
                     }
                 });
                 break;
             }
             case R.id.btn_land:{
-                flightController.startLanding(new CommonCallbacks.CompletionCallback() {
+                droneLink.startLanding(new DroneLink.CompletionCallback() {
                     @Override
-                    public void onResult(DJIError djiError) {
-                        if (null == djiError) {
-                            showToast("Landing...");
+                    public void onResult(String error) {
+                        if (null == error) {
+                            showStatus(StatusChannel.Topic.FLIGHT, "Landing...");
                         } else {
-                            showToast("failure "+ djiError.getDescription());
+                            showStatus(StatusChannel.Topic.ERROR, "failure "+ error);
                         }
                     }
                 });
                 break;
             }
-            case R.id.btn_left:{
-                rightJoystickInput(LEFT_ROTATION_AMOUNT, 0);
-                break;
-            }
-            case R.id.btn_right:{
-                rightJoystickInput(RIGHT_ROTATION_AMOUNT, 0);
-                break;
-            }
-            case R.id.btn_forward:{
-                leftJoystickInput(FORWARD_MOVE_DISTANCE,0);
-                break;
-            }
-            case R.id.btn_back: {
-                leftJoystickInput(BACK_MOVE_DISTANCE, 0);
-                break;
-            }
-            case R.id.btn_up: {
-                rightJoystickInput(0, UP_MOVE_DISTANCE);
-                break;
-            }
-            case R.id.btn_down: {
-                rightJoystickInput(0, DOWN_MOVE_DISTANCE);
-                break;
-            }
-            case R.id.spinButton: {
-                rightJoystickInput(REVERSE_MOVE_DISTANCE, 0);
-                rightJoystickInput(REVERSE_MOVE_DISTANCE, 0);
-                rightJoystickInput(REVERSE_MOVE_DISTANCE, 0);
-                break;
-            }
             default:
                 break;
         }
     }
 
     /**
-     * This starts the speech recognizer
+     * This starts the speech recognizer, in grammar mode while there are other aircraft
      */
     private void startVoiceControl() {
-        speechRecognizer.startListening(DIRECTIONS_COMMANDS);
+        //a restart can still be on its way from the recognizer after the activity is gone
+        if (commandMatcher == null || isDestroyed())
+            return;
+        if (listeningMode == ListeningMode.KEYWORDS && fleetActive()) {
+            listeningMode = ListeningMode.GRAMMAR;
+            commandMatcher = grammarMatcher;
+            showStatus(StatusChannel.Topic.VOICE, "listening mode: " + listeningMode);
+        }
+        commandMatcher.reset();
+        speechEngine.startListening(listeningMode.searchName);
+    }
+
+    /**
+     * This switches between grammar and keyword listening, restarting the recognizer
+     * if it is listening
+     */
+    private void toggleListeningMode() {
+        if (commandMatcher == null)
+            return;
+        if (listeningMode == ListeningMode.GRAMMAR && fleetActive()) {
+            showStatus(StatusChannel.Topic.VOICE, "keywords cannot address the fleet");
+            return;
+        }
+        if (verbose())
+            Log.v(TAG, listeningMode + " time to command: " + commandMatcher);
+        boolean listening = speechEngine.cancel();
+        listeningMode = listeningMode == ListeningMode.KEYWORDS ? ListeningMode.GRAMMAR : ListeningMode.KEYWORDS;
+        commandMatcher = listeningMode == ListeningMode.KEYWORDS ? keywordMatcher : grammarMatcher;
+        showStatus(StatusChannel.Topic.VOICE, "listening mode: " + listeningMode);
+        if (listening) {
+            startVoiceControl();
+        }
+    }
+
+    /**
+     * @return whether verbose messages are logged; they are only built when they are
+     */
+    private static boolean verbose() {
+        return Log.isLoggable(TAG, Log.VERBOSE);
+    }
+
+    /**
+     * This logs a report from a control thread on the UI thread, so the control thread does
+     * not format it.  Nothing is posted unless verbose messages are logged.
+     */
+    private void postVerbose(final Object report) {
+        if (verbose()) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Log.v(TAG, report.toString());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return whether there are other aircraft a command could be addressed to
+     */
+    private static boolean fleetActive() {
+        return FPVApplication.getFleet().size() > 0;
+    }
+
+    /**
+     * This shows or hides the per-stage latency table over the video
+     */
+    private void toggleLatencyOverlay() {
+        if (latencyOverlay.getVisibility() == View.VISIBLE) {
+            handler.removeCallbacks(latencyOverlayRefresh);
+            latencyOverlay.setVisibility(View.GONE);
+        } else {
+            latencyOverlay.setVisibility(View.VISIBLE);
+            latencyOverlayRefresh.run();
+        }
     }
 
     /**
      * This stops the speech recognizer
      */
     private void stopVoiceControl() {
-        speechRecognizer.cancel();
-        speechRecognizer.shutdown();
+        speechEngine.cancel();
+        if (speechEngine instanceof MicrophoneSpeechEngine && verbose()) {
+            Log.v(TAG, "speech gate: " + ((MicrophoneSpeechEngine) speechEngine).getGate());
+        }
+        speechEngine.shutdown();
     }
 
     /**
-     * This emulates the left joystick being moved and released
-     * @param pX x-axis amount
-     * @param pY y-axis amount
+     * This turns by an angle under closed-loop control
+     * @param degrees positive turns right
+     * @return false if there is no recent telemetry to steer by
      */
-    private void leftJoystickInput(double pX, double pY){//left joystick pX, pY
-        if (Math.abs(pX) < 0.02)
-            pX = 0;
-        if (Math.abs(pY) < 0.02)
-            pY = 0;
-        pitch = (float)pY;
-        roll = (float)pX;
-        yaw = 0;
-        throttle = 0;
-        FPVApplication.getAircraftInstance()
-                .getFlightController()
-                .sendVirtualStickFlightControlData(new FlightControlData(pitch,
-                                roll,
-                                yaw,
-                                throttle),
-                        new CommonCallbacks.CompletionCallback() {
-                            @Override
-                            public void onResult(DJIError djiError) {
-                                if (null == djiError) {
-                                    showToast("LeftStickCommandExecuted");
-                                } else {
-                                    showToast("failure "+ djiError.getDescription());
-                                }
-                            }
-                        });
+    private boolean turn(double degrees) {
+        if (motionController == null || !motionController.hasTelemetry())
+            return false;
+        stickLoop.release();
+        motionController.turn(degrees);
+        return true;
+    }
+
+    /**
+     * This moves relative to the current heading under closed-loop control
+     * @param forward metres forward
+     * @param right metres right
+     * @param climb metres up
+     * @return false if there is no recent telemetry or no position fix to steer by
+     */
+    private boolean move(double forward, double right, double climb) {
+        if (motionController == null || !motionController.hasPositionFix())
+            return false;
+        stickLoop.release();
+        return motionController.move(forward, right, climb);
+    }
+
+    /**
+     * This points a spoken amount the same way as the command's default, so "left ninety"
+     * turns left and "down two" descends
+     * @param amount the spoken amount, or the default if none was spoken
+     * @param byDefault the default amount and direction of the command
+     */
+    private static double directed(double amount, double byDefault) {
+        return Math.copySign(amount, byDefault);
+    }
+
+    /**
+     * This moves forward or back without feedback, for when there is no telemetry or no
+     * position fix
+     * @param forward metres per second forward, negative for back
+     */
+    private void openLoopMove(double forward) {
+        if (stickLoop == null)
+            return;
+        MotionController.openLoopMove(stickLoop, forward, 0, 0, VirtualStickLoop.DEFAULT_HOLD_MS);
     }
 
     /**
@@ -612,42 +1157,32 @@ public class MainActivity extends Activity implements SurfaceTextureListener,OnC
      * @param pY y-axis
      */
     public void rightJoystickInput(double pX, double pY) {//right joystick pX,pY
+        rightJoystickInput(pX, pY, VirtualStickLoop.DEFAULT_HOLD_MS);
+    }
+
+    /**
+     * This emulates the right joystick being moved, held and released
+     * @param pX x-axis
+     * @param pY y-axis
+     * @param holdMs how long the stick is held before it is released
+     */
+    public void rightJoystickInput(double pX, double pY, long holdMs) {
+        if (stickLoop == null)
+            return;
         if (Math.abs(pX) < 0.02)
             pX = 0;
         if (Math.abs(pY) < 0.02)
             pY = 0;
-        yaw = (float)pX;
-        throttle = (float)pY;
-        pitch = 0;
-        roll = 0;
-        FPVApplication.getAircraftInstance()
-                .getFlightController()
-                .sendVirtualStickFlightControlData(new FlightControlData(pitch,
-                                roll,
-                                yaw,
-                                throttle),
-                        new CommonCallbacks.CompletionCallback() { //1 is throttle
-                            @Override
-                            public void onResult(DJIError djiError) {
-                                if (null == djiError) {
-                                    showToast("RightStickCommandExecuted");
-                                } else {
-                                    showToast("failure "+ djiError.getDescription());
-                                }
-                            }
-                        });
-    }
-
-    /**
-     * This displays a toast notification
+        stickLoop.command(0, 0, (float)pX, (float)pY, holdMs);
+    }
+
+    /**
+     * This shows a message on the HUD, replacing the topic's previous message
+     * @param topic the HUD line to update
      * @param msg message to be displayed
      */
-    public void showToast(final String msg) {
-        runOnUiThread(new Runnable() {
-            public void run() {
-                Toast.makeText(MainActivity.this, msg, Toast.LENGTH_SHORT).show();
-            }
-        });
+    public void showStatus(StatusChannel.Topic topic, String msg) {
+        statusChannel.post(topic, msg);
     }
 }
 
@@ -0,0 +1,272 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This engine records the microphone itself and decodes it with a
+ * {@link DecoderSpeechEngine} behind a {@link SpeechGate}, so the decoder only runs while
+ * someone is speaking instead of through every second of rotor noise.  It records while a
+ * search is listening, the way the pocketsphinx Android recognizer does, and calls the
+ * listeners on the main thread.
+ */
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class MicrophoneSpeechEngine implements SpeechEngine {
+
+    //the decoder's own speech detection looks back 0.2 s (-vad_prespeech 20) when speech starts
+    private static final int PRE_ROLL_MS = 300;
+    //microphone reads are short so the gate opens promptly; the decoder still gets its usual buffers
+    private static final int READ_MS = 100;
+
+    private final DecoderSpeechEngine engine;
+    private final SpeechGate gate;
+    private final AudioRecord recorder;
+    private final short[] buffer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    //touched on the main thread only
+    private Thread recorderThread;
+
+    /**
+     * @param acousticModel directory of the acoustic model
+     * @param dictionary pronunciation dictionary
+     * @param grammarCache where compiled grammars are kept
+     * @throws IOException if the microphone cannot be opened
+     */
+    public MicrophoneSpeechEngine(File acousticModel, File dictionary, GrammarCache grammarCache) throws IOException {
+        engine = new DecoderSpeechEngine(acousticModel, dictionary, grammarCache);
+        gate = new SpeechGate(engine.getSampleRate(), PRE_ROLL_MS);
+        engine.setGate(gate);
+        engine.addListener(new Listener() {
+            @Override
+            public void onBeginningOfSpeech() {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : listeners) {
+                            listener.onBeginningOfSpeech();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onEndOfSpeech() {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : listeners) {
+                            listener.onEndOfSpeech();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onPartialResult(final String hypothesis) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : listeners) {
+                            listener.onPartialResult(hypothesis);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onResult(final String hypothesis) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : listeners) {
+                            listener.onResult(hypothesis);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final Exception error) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : listeners) {
+                            listener.onError(error);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onTimeout() {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : listeners) {
+                            listener.onTimeout();
+                        }
+                    }
+                });
+            }
+        });
+
+        buffer = new short[engine.getSampleRate() * READ_MS / 1000];
+        recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, engine.getSampleRate(),
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, engine.getBufferSize() * 2);
+        if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            recorder.release();
+            engine.shutdown();
+            throw new IOException("Failed to initialize recorder. Microphone might be already in use.");
+        }
+    }
+
+    /**
+     * @return the gate, for how much audio it kept from the decoder
+     */
+    public SpeechGate getGate() {
+        return gate;
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public GrammarCache.Source addGrammarSearch(String name, File grammar, File dictionary) throws IOException {
+        synchronized (engine) {
+            return engine.addGrammarSearch(name, grammar, dictionary);
+        }
+    }
+
+    @Override
+    public void addKeywordSearch(String name, File keywords) {
+        synchronized (engine) {
+            engine.addKeywordSearch(name, keywords);
+        }
+    }
+
+    @Override
+    public boolean startListening(String searchName) {
+        return startListening(searchName, NO_TIMEOUT);
+    }
+
+    @Override
+    public boolean startListening(String searchName, int timeoutMs) {
+        if (recorderThread != null) {
+            synchronized (engine) {
+                if (engine.isListening()) {
+                    return false;
+                }
+            }
+            //the search timed out or the microphone failed, so the thread has ended or is ending
+            stopRecorderThread();
+        }
+        synchronized (engine) {
+            if (!engine.startListening(searchName, timeoutMs)) {
+                return false;
+            }
+            gate.reset();
+        }
+        recorderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                record();
+            }
+        }, "speech-recorder");
+        recorderThread.start();
+        return true;
+    }
+
+    /**
+     * This reads the microphone until the thread is interrupted or the search ends.  A failed
+     * read ends the search, so the next {@link #startListening(String, int)} can start again.
+     */
+    private void record() {
+        recorder.startRecording();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int read = recorder.read(buffer, 0, buffer.length);
+                if (read < 0) {
+                    synchronized (engine) {
+                        engine.cancel();
+                    }
+                    final IOException error = new IOException("Error reading from the microphone: " + read);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (Listener listener : listeners) {
+                                listener.onError(error);
+                            }
+                        }
+                    });
+                    return;
+                }
+                synchronized (engine) {
+                    engine.process(buffer, read);
+                    if (!engine.isListening()) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            recorder.stop();
+        }
+    }
+
+    private boolean stopRecorderThread() {
+        if (recorderThread == null) {
+            return false;
+        }
+        recorderThread.interrupt();
+        try {
+            recorderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recorderThread = null;
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (!stopRecorderThread()) {
+            return false;
+        }
+        synchronized (engine) {
+            return engine.stop();
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        if (!stopRecorderThread()) {
+            return false;
+        }
+        synchronized (engine) {
+            return engine.cancel();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        cancel();
+        recorder.release();
+        synchronized (engine) {
+            engine.shutdown();
+        }
+    }
+}
@@ -6,98 +6,85 @@ import android.support.annotation.Nullable;
 
 import dji.sdk.flightcontroller.FlightController;
 import dji.sdk.flightcontroller.Simulator;
-import dji.sdk.products.Aircraft;
-import dji.sdk.products.HandHeld;
 
 /**
  * Created by dji on 16/1/6.
+ * Each check is a bit test on the capabilities computed with FPVApplication's component
+ * snapshot; subscribe to {@link ComponentEvent} on FPVApplication's bus to hear about changes.
  */
 public class ModuleVerificationUtil {
+    private static boolean has(Capability capability) {
+        return FPVApplication.getComponents().has(capability);
+    }
+
     public static boolean isProductModuleAvailable() {
-        return (null != FPVApplication.getProductInstance());
+        return has(Capability.PRODUCT);
     }
 
     public static boolean isAircraft() {
-        return FPVApplication.getProductInstance() instanceof Aircraft;
+        return has(Capability.AIRCRAFT);
     }
 
     public static boolean isHandHeld() {
-        return FPVApplication.getProductInstance() instanceof HandHeld;
+        return has(Capability.HANDHELD);
     }
 
     public static boolean isCameraModuleAvailable() {
-        return isProductModuleAvailable() && (null != FPVApplication.getProductInstance().getCamera());
+        return has(Capability.CAMERA);
     }
 
     public static boolean isPlaybackAvailable() {
-        return isCameraModuleAvailable() && (null != FPVApplication.getProductInstance()
-                .getCamera()
-                .getPlaybackManager());
+        return has(Capability.PLAYBACK);
     }
 
     public static boolean isMediaManagerAvailable() {
-        return isCameraModuleAvailable() && (null != FPVApplication.getProductInstance()
-                .getCamera()
-                .getMediaManager());
+        return has(Capability.MEDIA_MANAGER);
     }
 
     public static boolean isRemoteControllerAvailable() {
-        return isProductModuleAvailable() && isAircraft() && (null != FPVApplication.getAircraftInstance()
-                .getRemoteController());
+        return has(Capability.REMOTE_CONTROLLER);
     }
 
     public static boolean isFlightControllerAvailable() {
-        return isProductModuleAvailable() && isAircraft() && (null != FPVApplication.getAircraftInstance()
-                .getFlightController());
+        return has(Capability.FLIGHT_CONTROLLER);
     }
 
     public static boolean isCompassAvailable() {
-        return isFlightControllerAvailable() && isAircraft() && (null != FPVApplication.getAircraftInstance()
-                .getFlightController()
-                .getCompass());
+        return has(Capability.COMPASS);
     }
 
     public static boolean isFlightLimitationAvailable() {
-        return isFlightControllerAvailable() && isAircraft();
+        return has(Capability.FLIGHT_CONTROLLER);
     }
 
     public static boolean isGimbalModuleAvailable() {
-        return isProductModuleAvailable() && (null != FPVApplication.getProductInstance().getGimbal());
+        return has(Capability.GIMBAL);
     }
 
     public static boolean isAirlinkAvailable() {
-        return isProductModuleAvailable() && (null != FPVApplication.getProductInstance().getAirLink());
+        return has(Capability.AIRLINK);
     }
 
     public static boolean isWiFiLinkAvailable() {
-        return isAirlinkAvailable() && (null != FPVApplication.getProductInstance().getAirLink().getWiFiLink());
+        return has(Capability.WIFI_LINK);
     }
 
     public static boolean isLightbridgeLinkAvailable() {
-        return isAirlinkAvailable() && (null != FPVApplication.getProductInstance()
-                .getAirLink()
-                .getLightbridgeLink());
+        return has(Capability.LIGHTBRIDGE_LINK);
     }
 
     @Nullable
     public static Simulator getSimulator() {
-        Aircraft aircraft = FPVApplication.getAircraftInstance();
-        if (aircraft != null) {
-            FlightController flightController = aircraft.getFlightController();
-            if (flightController != null) {
-                return flightController.getSimulator();
-            }
+        FlightController flightController = FPVApplication.getComponents().flightController;
+        if (flightController != null) {
+            return flightController.getSimulator();
         }
         return null;
     }
 
     @Nullable
     public static FlightController getFlightController() {
-        Aircraft aircraft = FPVApplication.getAircraftInstance();
-        if (aircraft != null) {
-            return aircraft.getFlightController();
-        }
-        return null;
+        return FPVApplication.getComponents().flightController;
     }
 
 }
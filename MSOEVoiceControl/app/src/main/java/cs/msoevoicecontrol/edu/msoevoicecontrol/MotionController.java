@@ -0,0 +1,443 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class closes the loop on heading changes and moves.  It sits between the
+ * {@link VirtualStickLoop} and the link, so it runs once per tick on the loop's thread, and
+ * while a goal is active it replaces the loop's setpoint with one computed from the latest
+ * telemetry: a yaw rate proportional to the heading still to turn, or body velocities
+ * proportional to the distance still to go.  Telemetry arrives more slowly than the loop
+ * ticks, so each step extrapolates the last sample by its velocity and yaw rate.
+ *
+ * A goal completes once the error has stayed inside the tolerance for
+ * {@link #SETTLE_HOLD_NANOS}.  It is abandoned when telemetry stops, when it runs past
+ * {@link #TIMEOUT_NANOS} or when it is cancelled.  Steps only do arithmetic on fields, so
+ * they do not allocate; a {@link Result} is built once per goal.
+ *
+ * Moves steer by the GPS position, so they are only started with a fix from at least
+ * {@link #MIN_SATELLITES} satellites, and samples without one never move the position.  A
+ * fix can also freeze while the aircraft flies on, so a move is abandoned when the
+ * position and the distance its velocity adds up to drift more than
+ * {@link #MAX_POSITION_DRIFT} apart.  Any step that works out a stick value that is not a
+ * number is treated like stale telemetry: the goal is abandoned and the sticks are zeroed.
+ *
+ * Stick axes follow the velocity mode in body coordinates: roll moves forward, pitch moves
+ * right, yaw is a rate in degrees per second and throttle is a climb rate.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+public class MotionController implements VirtualStickLoop.Output, DroneLink.StateListener {
+
+    /** yaw rate commanded per degree of heading error */
+    public static final double TURN_GAIN = 2.5;
+    /** velocity commanded per metre of position error */
+    public static final double MOVE_GAIN = 0.8;
+    public static final float MAX_YAW_RATE = 90f;
+    public static final float MAX_SPEED = 3f;
+    public static final float MAX_CLIMB_RATE = 1f;
+    public static final double HEADING_TOLERANCE = 2;
+    public static final double DISTANCE_TOLERANCE = 0.2;
+    public static final long SETTLE_HOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    public static final long STALE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    public static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    /** the fewest satellites a position fix is steered by */
+    public static final int MIN_SATELLITES = 6;
+    /** how far apart the position and the velocity's dead reckoning may get during a move, in metres */
+    public static final double MAX_POSITION_DRIFT = 1.5;
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    public enum Goal {
+        NONE,
+        TURN,
+        MOVE
+    }
+
+    /**
+     * Told when a goal ends, on the loop's thread or the thread that cancelled it
+     */
+    public interface Listener {
+        void onGoalDone(Result result);
+    }
+
+    /**
+     * How one goal went
+     */
+    public static final class Result {
+        public final Goal goal;
+        /** degrees to turn or metres to move */
+        public final double target;
+        /** false if the goal was cancelled, timed out, or lost telemetry or its position fix */
+        public final boolean completed;
+        /** from the start until the error last entered the tolerance, or -1 if it never settled */
+        public final long settleNanos;
+        /** from the start until the goal ended */
+        public final long elapsedNanos;
+        /** the furthest the aircraft went past the target, in degrees or metres */
+        public final double overshoot;
+        /** the error when the goal ended, in degrees or metres */
+        public final double finalError;
+
+        Result(Goal goal, double target, boolean completed, long settleNanos, long elapsedNanos,
+               double overshoot, double finalError) {
+            this.goal = goal;
+            this.target = target;
+            this.completed = completed;
+            this.settleNanos = settleNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.overshoot = overshoot;
+            this.finalError = finalError;
+        }
+
+        @Override
+        public String toString() {
+            String unit = goal == Goal.TURN ? " deg" : " m";
+            return String.format("%s %.1f%s %s in %d ms, settled at %d ms, overshoot %.2f%s, error %.2f%s",
+                    goal, target, unit, completed ? "completed" : "abandoned",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    settleNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(settleNanos),
+                    overshoot, unit, finalError, unit);
+        }
+    }
+
+    private final VirtualStickLoop.Output output;
+    private final Clock clock;
+    private final Listener listener;
+
+    //everything below is guarded by lock
+    private final Object lock = new Object();
+
+    //the latest telemetry, positions in metres from the first fixed sample, north, east and up
+    private boolean hasState;
+    private long stateNanos;
+    private double yaw;
+    private double yawRate;
+    private double turned;
+    private double north;
+    private double east;
+    private double up;
+    private double velocityNorth;
+    private double velocityEast;
+    private double velocityUp;
+    private boolean hasFix;
+    private boolean hasReference;
+    private double referenceLatitude;
+    private double referenceLongitude;
+    private double eastScale;
+    //the velocity added up from the first sample, to check the fix against
+    private double reckonedNorth;
+    private double reckonedEast;
+
+    //the goal
+    private Goal goal = Goal.NONE;
+    private long startNanos;
+    private double target;
+    private double startTurned;
+    private double holdYaw;
+    private double startNorth;
+    private double startEast;
+    private double startUp;
+    private double startReckonedNorth;
+    private double startReckonedEast;
+    private double targetNorth;
+    private double targetEast;
+    private double targetUp;
+    private long inBandSinceNanos;
+    private double overshoot;
+    private double error;
+
+    /**
+     * Creates a controller
+     * @param output where the sticks are sent; the loop sends through the controller
+     * @param clock the loop's clock, which telemetry timestamps must also use
+     * @param listener told when each goal ends, may be null
+     */
+    public MotionController(VirtualStickLoop.Output output, Clock clock, Listener listener) {
+        this.output = output;
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /**
+     * This takes a telemetry sample.  One whose attitude, velocity or altitude is not a
+     * number is dropped, so telemetry goes stale if they all are.
+     */
+    @Override
+    public void onStateUpdate(DroneState state) {
+        if (!isFinite(state.yaw) || !isFinite(state.velocityX) || !isFinite(state.velocityY)
+                || !isFinite(state.velocityZ) || !isFinite(state.altitude)) {
+            return;
+        }
+        boolean fix = state.satelliteCount >= MIN_SATELLITES
+                && isFinite(state.latitude) && isFinite(state.longitude);
+        synchronized (lock) {
+            if (hasState && state.timestampNanos > stateNanos) {
+                double seconds = (state.timestampNanos - stateNanos) / 1e9;
+                double delta = wrapDegrees(state.yaw - yaw);
+                turned += delta;
+                yawRate = delta / seconds;
+                reckonedNorth += (velocityNorth + state.velocityX) / 2 * seconds;
+                reckonedEast += (velocityEast + state.velocityY) / 2 * seconds;
+            }
+            if (fix && !hasReference) {
+                hasReference = true;
+                referenceLatitude = state.latitude;
+                referenceLongitude = state.longitude;
+                eastScale = METERS_PER_DEGREE * Math.cos(Math.toRadians(referenceLatitude));
+            }
+            hasState = true;
+            hasFix = fix;
+            stateNanos = state.timestampNanos;
+            yaw = state.yaw;
+            if (fix) {
+                north = (state.latitude - referenceLatitude) * METERS_PER_DEGREE;
+                east = (state.longitude - referenceLongitude) * eastScale;
+            }
+            up = state.altitude;
+            velocityNorth = state.velocityX;
+            velocityEast = state.velocityY;
+            velocityUp = -state.velocityZ;
+        }
+    }
+
+    /**
+     * @return whether telemetry is recent enough to start a goal
+     */
+    public boolean hasTelemetry() {
+        synchronized (lock) {
+            return hasState && clock.nanoTime() - stateNanos <= STALE_NANOS;
+        }
+    }
+
+    /**
+     * @return whether telemetry is recent and has a position fix good enough to start a move
+     */
+    public boolean hasPositionFix() {
+        synchronized (lock) {
+            return hasFix && hasState && clock.nanoTime() - stateNanos <= STALE_NANOS;
+        }
+    }
+
+    /**
+     * This turns by an angle, replacing any goal in progress
+     * @param degrees positive turns right
+     */
+    public void turn(double degrees) {
+        if (!isFinite(degrees)) {
+            throw new IllegalArgumentException("not an angle: " + degrees);
+        }
+        Result replaced;
+        synchronized (lock) {
+            replaced = endLocked(false, clock.nanoTime());
+            startLocked(Goal.TURN, degrees);
+            startTurned = turned;
+        }
+        report(replaced);
+    }
+
+    /**
+     * This moves by a displacement relative to the current heading, which is held for the
+     * move, replacing any goal in progress
+     * @param forward metres forward
+     * @param right metres right
+     * @param climb metres up
+     * @return false, leaving any goal in progress alone, if there is no position fix to
+     *         steer by
+     */
+    public boolean move(double forward, double right, double climb) {
+        if (!isFinite(forward) || !isFinite(right) || !isFinite(climb)) {
+            throw new IllegalArgumentException("not a displacement: " + forward + ", " + right + ", " + climb);
+        }
+        Result replaced;
+        synchronized (lock) {
+            if (!hasFix) {
+                return false;
+            }
+            replaced = endLocked(false, clock.nanoTime());
+            startLocked(Goal.MOVE, Math.sqrt(forward * forward + right * right + climb * climb));
+            double heading = Math.toRadians(yaw);
+            double cos = Math.cos(heading);
+            double sin = Math.sin(heading);
+            holdYaw = yaw;
+            startNorth = north;
+            startEast = east;
+            startUp = up;
+            startReckonedNorth = reckonedNorth;
+            startReckonedEast = reckonedEast;
+            targetNorth = north + forward * cos - right * sin;
+            targetEast = east + forward * sin + right * cos;
+            targetUp = up + climb;
+        }
+        report(replaced);
+        return true;
+    }
+
+    /**
+     * This moves without feedback, for when there is no telemetry to close the loop: the loop
+     * holds body velocities for a while and then releases them.  The axes are the ones the
+     * closed-loop steps use, so a move goes the same way whichever path flies it.
+     * @param loop the loop the controller is the output of
+     * @param forward metres per second forward, negative for back
+     * @param right metres per second right
+     * @param climb metres per second up
+     * @param holdMs how long the velocities are held before they are released
+     */
+    public static void openLoopMove(VirtualStickLoop loop, double forward, double right, double climb, long holdMs) {
+        loop.command((float) right, (float) forward, 0, (float) climb, holdMs);
+    }
+
+    private void startLocked(Goal goal, double target) {
+        this.goal = goal;
+        this.target = target;
+        startNanos = clock.nanoTime();
+        inBandSinceNanos = -1;
+        overshoot = 0;
+        error = Math.abs(target);
+    }
+
+    /**
+     * This abandons the goal in progress.  The next tick passes the loop's setpoint through.
+     * @return whether a goal was active
+     */
+    public boolean cancel() {
+        Result cancelled;
+        synchronized (lock) {
+            cancelled = endLocked(false, clock.nanoTime());
+        }
+        report(cancelled);
+        return cancelled != null;
+    }
+
+    /**
+     * @return the goal in progress
+     */
+    public Goal getGoal() {
+        synchronized (lock) {
+            return goal;
+        }
+    }
+
+    /**
+     * This is one control step.  Without a goal the loop's setpoint is passed on as it is.
+     */
+    @Override
+    public void send(float pitch, float roll, float yaw, float throttle) {
+        Result done = null;
+        synchronized (lock) {
+            if (goal != Goal.NONE) {
+                long now = clock.nanoTime();
+                if (!hasState || now - stateNanos > STALE_NANOS || now - startNanos > TIMEOUT_NANOS
+                        || (goal == Goal.MOVE && !positionTrustedLocked())) {
+                    done = endLocked(false, now);
+                    pitch = 0;
+                    roll = 0;
+                    yaw = 0;
+                    throttle = 0;
+                } else {
+                    double age = (now - stateNanos) / 1e9;
+                    double yawNow = this.yaw + yawRate * age;
+                    if (goal == Goal.TURN) {
+                        double remaining = target - (turned + yawRate * age - startTurned);
+                        error = Math.abs(remaining);
+                        overshoot = Math.max(overshoot, -remaining * Math.signum(target));
+                        pitch = 0;
+                        roll = 0;
+                        yaw = clamp(TURN_GAIN * remaining, MAX_YAW_RATE);
+                        throttle = 0;
+                    } else {
+                        double errorNorth = targetNorth - (north + velocityNorth * age);
+                        double errorEast = targetEast - (east + velocityEast * age);
+                        double errorUp = targetUp - (up + velocityUp * age);
+                        error = Math.sqrt(errorNorth * errorNorth + errorEast * errorEast + errorUp * errorUp);
+                        if (target > 0) {
+                            //how far along the straight line to the target the aircraft has come
+                            double along = ((targetNorth - startNorth) * (targetNorth - errorNorth - startNorth)
+                                    + (targetEast - startEast) * (targetEast - errorEast - startEast)
+                                    + (targetUp - startUp) * (targetUp - errorUp - startUp)) / target;
+                            overshoot = Math.max(overshoot, along - target);
+                        }
+                        double heading = Math.toRadians(yawNow);
+                        double cos = Math.cos(heading);
+                        double sin = Math.sin(heading);
+                        double forward = MOVE_GAIN * (errorNorth * cos + errorEast * sin);
+                        double right = MOVE_GAIN * (-errorNorth * sin + errorEast * cos);
+                        double speed = Math.sqrt(forward * forward + right * right);
+                        if (speed > MAX_SPEED) {
+                            forward *= MAX_SPEED / speed;
+                            right *= MAX_SPEED / speed;
+                        }
+                        pitch = (float) right;
+                        roll = (float) forward;
+                        yaw = clamp(TURN_GAIN * wrapDegrees(holdYaw - yawNow), MAX_YAW_RATE);
+                        throttle = clamp(MOVE_GAIN * errorUp, MAX_CLIMB_RATE);
+                    }
+                    if (!isFinite(error) || !isFinite(pitch) || !isFinite(roll)
+                            || !isFinite(yaw) || !isFinite(throttle)) {
+                        done = endLocked(false, now);
+                        pitch = 0;
+                        roll = 0;
+                        yaw = 0;
+                        throttle = 0;
+                    } else if (error <= (goal == Goal.TURN ? HEADING_TOLERANCE : DISTANCE_TOLERANCE)) {
+                        if (inBandSinceNanos < 0) {
+                            inBandSinceNanos = now;
+                        } else if (now - inBandSinceNanos >= SETTLE_HOLD_NANOS) {
+                            done = endLocked(true, now);
+                            pitch = 0;
+                            roll = 0;
+                            yaw = 0;
+                            throttle = 0;
+                        }
+                    } else {
+                        inBandSinceNanos = -1;
+                    }
+                }
+            }
+        }
+        output.send(pitch, roll, yaw, throttle);
+        report(done);
+    }
+
+    /**
+     * @return whether the fix is still there and the position has moved about as far as the
+     *         velocity says it should have since the move started
+     */
+    private boolean positionTrustedLocked() {
+        double driftNorth = (north - startNorth) - (reckonedNorth - startReckonedNorth);
+        double driftEast = (east - startEast) - (reckonedEast - startReckonedEast);
+        return hasFix && driftNorth * driftNorth + driftEast * driftEast <= MAX_POSITION_DRIFT * MAX_POSITION_DRIFT;
+    }
+
+    private Result endLocked(boolean completed, long now) {
+        if (goal == Goal.NONE) {
+            return null;
+        }
+        Result result = new Result(goal, target, completed,
+                inBandSinceNanos < 0 ? -1 : inBandSinceNanos - startNanos, now - startNanos, overshoot, error);
+        goal = Goal.NONE;
+        return result;
+    }
+
+    private void report(Result result) {
+        if (result != null && listener != null) {
+            listener.onGoalDone(result);
+        }
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    private static float clamp(double value, float limit) {
+        return (float) Math.max(-limit, Math.min(limit, value));
+    }
+
+    private static double wrapDegrees(double degrees) {
+        degrees %= 360;
+        if (degrees >= 180) {
+            degrees -= 360;
+        } else if (degrees < -180) {
+            degrees += 360;
+        }
+        return degrees;
+    }
+}
@@ -0,0 +1,293 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class fires commands from partial recognizer hypotheses so the drone does not have
+ * to wait for the end-of-speech silence.  A command fires once it has been the same in
+ * enough consecutive partial hypotheses, with the same amount, and cannot grow into a longer
+ * phrase.  The commands that fired are remembered in spoken order, and each later hypothesis
+ * of the same utterance is lined up against them, so a command fires once even when the
+ * recognizer revises or inserts words before it.
+ * All methods are expected to be called from the recognizer's callback thread.
+ */
+
+import java.util.Arrays;
+
+public class PartialResultMatcher {
+
+    /**
+     * Receives each command once per utterance
+     */
+    public interface Listener {
+        /**
+         * @param command the command that was matched
+         * @param partial true if it came from a partial hypothesis
+         * @param latencyNanos time from the beginning of speech to the command
+         */
+        void onCommand(SpokenCommand command, boolean partial, long latencyNanos);
+    }
+
+    public static final int DEFAULT_STABLE_COUNT = 2;
+    public static final long DEFAULT_DEBOUNCE_NANOS = 50000000L;
+    private static final int MAX_COMMANDS = 16;
+
+    private final CommandTable table;
+    private final Listener listener;
+    private final int stableCount;
+    private final long debounceNanos;
+    private final boolean partialsComplete;
+
+    private final CommandTable.Parsed parsed = new CommandTable.Parsed();
+    private final SpokenCommand[] candidates = new SpokenCommand[MAX_COMMANDS];
+    private final int[] seenCount = new int[MAX_COMMANDS];
+    private final long[] firstSeenNanos = new long[MAX_COMMANDS];
+    private int candidateCount;
+    //the last partial hypothesis, and how much of it a pause settled
+    private String lastPartial;
+    private int settledCount;
+    private int settledFired;
+    //the commands that fired this utterance, in the order they were spoken
+    private final SpokenCommand[] fired = new SpokenCommand[MAX_COMMANDS];
+    private int firedCount;
+    private boolean finished;
+    private long speechStartNanos;
+
+    private final LatencyStats partialStats = new LatencyStats();
+    private final LatencyStats finalStats = new LatencyStats();
+
+    public PartialResultMatcher(CommandTable table, Listener listener) {
+        this(table, listener, DEFAULT_STABLE_COUNT, DEFAULT_DEBOUNCE_NANOS, false);
+    }
+
+    /**
+     * @param table the compiled grammar
+     * @param listener receives the commands
+     * @param stableCount how many consecutive partial hypotheses must agree on a command
+     * @param debounceNanos how long a command must have been seen before it fires
+     * @param partialsComplete true if each partial hypothesis ends on a whole phrase, as a
+     *                         spotted keyword does, so nothing is held back for the words after it
+     */
+    public PartialResultMatcher(CommandTable table, Listener listener, int stableCount, long debounceNanos,
+                                boolean partialsComplete) {
+        this.table = table;
+        this.listener = listener;
+        this.stableCount = stableCount;
+        this.debounceNanos = debounceNanos;
+        this.partialsComplete = partialsComplete;
+    }
+
+    /**
+     * This marks the beginning of a new utterance.  Anything left from an utterance that
+     * never got a final result, for example because the recognizer was cancelled, is dropped.
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void onSpeechStart(long nowNanos) {
+        reset();
+        speechStartNanos = nowNanos;
+    }
+
+    /**
+     * This marks the beginning of speech within an utterance that is still going on, as in
+     * continuous keyword spotting where one utterance spans many commands
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void markSpeechStart(long nowNanos) {
+        speechStartNanos = nowNanos;
+    }
+
+    /**
+     * This feeds a partial hypothesis and fires any command that became stable
+     * @param hypothesis the partial hypothesis text
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void onPartialResult(String hypothesis, long nowNanos) {
+        if (speechStartNanos == 0) {
+            speechStartNanos = nowNanos;
+        }
+        lastPartial = hypothesis;
+        int count = Math.min(table.parse(hypothesis, parsed, partialsComplete), MAX_COMMANDS);
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            if (!changed && i < candidateCount && parsed.matches(i, candidates[i])) {
+                seenCount[i]++;
+            } else {
+                changed = true;
+                //only allocates for a command with an amount, and only when it changes
+                candidates[i] = parsed.get(i);
+                seenCount[i] = 1;
+                firstSeenNanos[i] = nowNanos;
+            }
+        }
+        candidateCount = count;
+        int next = settledFired;
+        for (int i = settledCount; i < count; i++) {
+            int match = findFired(candidates[i], next);
+            if (match >= 0) {
+                next = match + 1;
+            } else if (seenCount[i] >= stableCount && nowNanos - firstSeenNanos[i] >= debounceNanos) {
+                fire(candidates[i], next++, true, nowNanos);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * This feeds the final hypothesis, fires the commands the partial results did not,
+     * and resets for the next utterance
+     * @param hypothesis the final hypothesis text
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void onFinalResult(String hypothesis, long nowNanos) {
+        if (speechStartNanos == 0) {
+            speechStartNanos = nowNanos;
+        }
+        fireUnfired(hypothesis, false, nowNanos);
+        reset();
+    }
+
+    /**
+     * This fires the commands the last partial hypothesis held back because more words could
+     * still have changed them, such as a move whose amount had not been heard.  It is for a
+     * pause in an utterance that goes on, as in continuous keyword spotting, where the final
+     * result only comes when the recognizer is restarted.  What was said before the pause is
+     * settled, so a number heard after it does not become the amount of a move that already
+     * fired.
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void onSpeechPause(long nowNanos) {
+        if (lastPartial != null) {
+            settledCount = fireUnfired(lastPartial, true, nowNanos);
+            settledFired = firedCount;
+        }
+    }
+
+    /**
+     * This fires every command of a complete hypothesis after the settled ones that does not
+     * line up with one that already fired
+     * @return how many commands the hypothesis has
+     */
+    private int fireUnfired(String hypothesis, boolean partial, long nowNanos) {
+        int count = table.parse(hypothesis, parsed, true);
+        int next = settledFired;
+        for (int i = settledCount; i < count; i++) {
+            int match = findFired(parsed, i, next);
+            if (match >= 0) {
+                next = match + 1;
+            } else {
+                fire(parsed.get(i), next++, partial, nowNanos);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This forgets the current utterance without firing anything
+     */
+    public void reset() {
+        candidateCount = 0;
+        lastPartial = null;
+        settledCount = 0;
+        settledFired = 0;
+        Arrays.fill(fired, 0, firedCount, null);
+        firedCount = 0;
+        finished = false;
+        speechStartNanos = 0;
+    }
+
+    /**
+     * @return the index of the first fired command from {@code from} on that is the given one, or -1
+     */
+    private int findFired(SpokenCommand command, int from) {
+        for (int i = from; i < firedCount; i++) {
+            if (fired[i].equals(command)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findFired(CommandTable.Parsed commands, int index, int from) {
+        for (int i = from; i < firedCount; i++) {
+            if (commands.matches(index, fired[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This fires a command and remembers it at {@code position} among the fired commands,
+     * the place it was spoken in
+     */
+    private void fire(SpokenCommand command, int position, boolean partial, long nowNanos) {
+        if (firedCount < MAX_COMMANDS) {
+            System.arraycopy(fired, position, fired, position + 1, firedCount - position);
+            fired[position] = command;
+            firedCount++;
+        }
+        if (finished) {
+            return;
+        }
+        //nothing after finish is acted on
+        finished = command.command == VoiceCommand.FINISH;
+        long latency = nowNanos - speechStartNanos;
+        (partial ? partialStats : finalStats).record(latency);
+        listener.onCommand(command, partial, latency);
+    }
+
+    /**
+     * @return how many commands of the current utterance have fired
+     */
+    public int getFiredCount() {
+        return firedCount;
+    }
+
+    public LatencyStats getPartialStats() {
+        return partialStats;
+    }
+
+    public LatencyStats getFinalStats() {
+        return finalStats;
+    }
+
+    /**
+     * This reports time-to-command for partial and final results
+     */
+    @Override
+    public String toString() {
+        return "partial " + partialStats + ", final " + finalStats;
+    }
+
+    /**
+     * Count, mean and max of the time from speech to command
+     */
+    public static class LatencyStats {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return count + " commands, mean " + getMeanNanos() / 1000000 + " ms, max " + maxNanos / 1000000 + " ms";
+        }
+    }
+}
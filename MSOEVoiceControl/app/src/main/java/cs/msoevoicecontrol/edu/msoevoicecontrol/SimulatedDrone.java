@@ -0,0 +1,471 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is a headless stand-in for the aircraft.  It models the drone as a point mass
+ * whose velocity and yaw rate follow the stick setpoint with a first-order lag, delivers
+ * every request after a configurable latency plus random jitter, and keeps time on a
+ * {@link VirtualClock} so a flight can be run much faster than real time.
+ *
+ * Like the real aircraft it treats the stick as released when no packet has arrived for
+ * {@link #STICK_TIMEOUT_NANOS}, so callers have to stream it the same way the app does.
+ * Nothing moves until {@link #advance(long)} or {@link #runUntil(long)} is called, and only
+ * one thread should drive it.  Requests may come from any thread.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class SimulatedDrone implements DroneLink {
+
+    public static final long DEFAULT_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    public static final long DEFAULT_TELEMETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    public static final long STICK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    public static final long COMPASS_CALIBRATION_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    //limits of the velocity control modes
+    public static final float MAX_HORIZONTAL_VELOCITY = 15f;
+    public static final float MAX_VERTICAL_VELOCITY = 4f;
+    public static final float MAX_YAW_RATE = 100f;
+
+    public static final float TAKEOFF_ALTITUDE = 1.2f;
+    private static final float TAKEOFF_VELOCITY = 1f;
+    private static final float LANDING_VELOCITY = 1f;
+    private static final double VELOCITY_TIME_CONSTANT = 0.4;
+    private static final double YAW_TIME_CONSTANT = 0.2;
+    private static final double GRAVITY = 9.81;
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    //the Milwaukee School of Engineering
+    public static final double HOME_LATITUDE = 43.0446;
+    public static final double HOME_LONGITUDE = -87.9087;
+    //the sky is always clear
+    public static final int SATELLITE_COUNT = 12;
+
+    private static final int STICK = 0;
+    private static final int TAKEOFF = 1;
+    private static final int LAND = 2;
+    private static final int CALIBRATE = 3;
+
+    private enum FlightMode {
+        GROUNDED,
+        TAKING_OFF,
+        FLYING,
+        LANDING
+    }
+
+    /**
+     * A request waiting out its latency.  These are pooled so streaming does not allocate.
+     */
+    private static final class Request {
+        int type;
+        long deliveryNanos;
+        float pitch;
+        float roll;
+        float yaw;
+        float throttle;
+        CompletionCallback callback;
+        String error;
+    }
+
+    private final VirtualClock clock;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final long stepNanos;
+    private final long telemetryNanos;
+    private final Random random;
+
+    //everything below is guarded by this
+    private final ArrayDeque<Request> pending = new ArrayDeque<>();
+    private final ArrayDeque<Request> delivered = new ArrayDeque<>();
+    private final ArrayDeque<Request> pool = new ArrayDeque<>();
+    private long lastDeliveryNanos;
+    private long deliveredRequests;
+
+    private FlightMode mode = FlightMode.GROUNDED;
+    private CompassState compassState = CompassState.NOT_CALIBRATING;
+    private long calibrationEndNanos;
+    private float stickPitch;
+    private float stickRoll;
+    private float stickYaw;
+    private float stickThrottle;
+    private long lastStickNanos = Long.MIN_VALUE;
+
+    //north, east, down in m and m/s; attitude in degrees
+    private double north;
+    private double east;
+    private double down;
+    private double velocityNorth;
+    private double velocityEast;
+    private double velocityDown;
+    private double yaw;
+    private double yawRate;
+    private double pitch;
+    private double roll;
+    private long nextTelemetryNanos;
+
+    private final DroneState state = new DroneState();
+    private volatile StateListener stateListener;
+
+    /**
+     * Creates a simulator with no latency
+     * @param clock the clock the simulation runs on
+     */
+    public SimulatedDrone(VirtualClock clock) {
+        this(clock, 0, 0, 0);
+    }
+
+    /**
+     * Creates a simulator with the default step and telemetry rate
+     * @param clock the clock the simulation runs on
+     * @param latencyNanos how long every request takes to reach the aircraft
+     * @param jitterNanos the most random delay added on top of the latency
+     * @param seed seed for the jitter so runs can be repeated
+     */
+    public SimulatedDrone(VirtualClock clock, long latencyNanos, long jitterNanos, long seed) {
+        this(clock, latencyNanos, jitterNanos, seed, DEFAULT_STEP_NANOS, DEFAULT_TELEMETRY_NANOS);
+    }
+
+    /**
+     * Creates a simulator
+     * @param clock the clock the simulation runs on
+     * @param latencyNanos how long every request takes to reach the aircraft
+     * @param jitterNanos the most random delay added on top of the latency
+     * @param seed seed for the jitter so runs can be repeated
+     * @param stepNanos the physics integration step
+     * @param telemetryNanos how often state updates are published
+     */
+    public SimulatedDrone(VirtualClock clock, long latencyNanos, long jitterNanos, long seed,
+                          long stepNanos, long telemetryNanos) {
+        if (latencyNanos < 0 || jitterNanos < 0) {
+            throw new IllegalArgumentException("latency and jitter cannot be negative");
+        }
+        if (stepNanos <= 0 || telemetryNanos <= 0) {
+            throw new IllegalArgumentException("step and telemetry period must be positive");
+        }
+        this.clock = clock;
+        this.latencyNanos = latencyNanos;
+        this.jitterNanos = jitterNanos;
+        this.stepNanos = stepNanos;
+        this.telemetryNanos = telemetryNanos;
+        this.random = new Random(seed);
+        this.nextTelemetryNanos = clock.nanoTime();
+    }
+
+    @Override
+    public void sendVirtualStick(float pitch, float roll, float yaw, float throttle, CompletionCallback callback) {
+        synchronized (this) {
+            Request request = enqueue(STICK, callback);
+            request.pitch = pitch;
+            request.roll = roll;
+            request.yaw = yaw;
+            request.throttle = throttle;
+        }
+    }
+
+    @Override
+    public synchronized void startTakeoff(CompletionCallback callback) {
+        enqueue(TAKEOFF, callback);
+    }
+
+    @Override
+    public synchronized void startLanding(CompletionCallback callback) {
+        enqueue(LAND, callback);
+    }
+
+    @Override
+    public synchronized void startCompassCalibration(CompletionCallback callback) {
+        enqueue(CALIBRATE, callback);
+    }
+
+    @Override
+    public synchronized CompassState getCompassState() {
+        return compassState;
+    }
+
+    @Override
+    public void setStateListener(StateListener listener) {
+        this.stateListener = listener;
+    }
+
+    @Override
+    public void close() {
+        //the simulation registers nothing outside itself
+        stateListener = null;
+    }
+
+    private Request enqueue(int type, CompletionCallback callback) {
+        Request request = pool.poll();
+        if (request == null) {
+            request = new Request();
+        }
+        long delay = latencyNanos;
+        if (jitterNanos > 0) {
+            delay += (long) (random.nextDouble() * jitterNanos);
+        }
+        //the link is ordered, so jitter can delay a request but never reorder it
+        long delivery = Math.max(clock.nanoTime() + delay, lastDeliveryNanos);
+        lastDeliveryNanos = delivery;
+        request.type = type;
+        request.deliveryNanos = delivery;
+        request.callback = callback;
+        request.error = null;
+        pending.add(request);
+        return request;
+    }
+
+    /**
+     * This runs the simulation forward
+     * @param nanos how much simulated time to run
+     */
+    public void advance(long nanos) {
+        runUntil(clock.nanoTime() + nanos);
+    }
+
+    /**
+     * This runs the simulation until the clock reaches the given time, in steps no longer
+     * than the physics step.  Request callbacks and state updates are made on the calling
+     * thread.
+     * @param targetNanos the clock time to stop at
+     */
+    public void runUntil(long targetNanos) {
+        long now = clock.nanoTime();
+        while (now < targetNanos) {
+            long next = Math.min(now + stepNanos, targetNanos);
+            clock.advanceTo(next);
+            boolean publish;
+            synchronized (this) {
+                deliver(next);
+                integrate(next, (next - now) / 1e9);
+                publish = next >= nextTelemetryNanos;
+                if (publish) {
+                    nextTelemetryNanos += telemetryNanos;
+                    if (nextTelemetryNanos <= next) {
+                        nextTelemetryNanos = next + telemetryNanos;
+                    }
+                    snapshot(state, next);
+                }
+            }
+            acknowledge();
+            if (publish) {
+                StateListener listener = stateListener;
+                if (listener != null) {
+                    listener.onStateUpdate(state);
+                }
+            }
+            now = next;
+        }
+    }
+
+    private void deliver(long now) {
+        Request request;
+        while ((request = pending.peek()) != null && request.deliveryNanos <= now) {
+            pending.poll();
+            apply(request, now);
+            deliveredRequests++;
+            delivered.add(request);
+        }
+    }
+
+    private void apply(Request request, long now) {
+        switch (request.type) {
+            case STICK:
+                stickPitch = request.pitch;
+                stickRoll = request.roll;
+                stickYaw = request.yaw;
+                stickThrottle = request.throttle;
+                lastStickNanos = now;
+                break;
+            case TAKEOFF:
+                if (mode != FlightMode.GROUNDED) {
+                    request.error = "the aircraft is already flying";
+                } else {
+                    mode = FlightMode.TAKING_OFF;
+                }
+                break;
+            case LAND:
+                if (mode == FlightMode.GROUNDED) {
+                    request.error = "the aircraft is not flying";
+                } else {
+                    mode = FlightMode.LANDING;
+                }
+                break;
+            case CALIBRATE:
+                if (mode != FlightMode.GROUNDED) {
+                    request.error = "the compass cannot be calibrated in flight";
+                } else {
+                    compassState = CompassState.CALIBRATING;
+                    calibrationEndNanos = now + COMPASS_CALIBRATION_NANOS;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void acknowledge() {
+        while (true) {
+            Request request;
+            synchronized (this) {
+                request = delivered.poll();
+            }
+            if (request == null) {
+                return;
+            }
+            CompletionCallback callback = request.callback;
+            String error = request.error;
+            synchronized (this) {
+                request.callback = null;
+                pool.add(request);
+            }
+            if (callback != null) {
+                callback.onResult(error);
+            }
+        }
+    }
+
+    private void integrate(long now, double dt) {
+        if (compassState == CompassState.CALIBRATING && now >= calibrationEndNanos) {
+            compassState = CompassState.SUCCESSFUL;
+        }
+
+        double forward = 0;
+        double right = 0;
+        double up = 0;
+        double turn = 0;
+        switch (mode) {
+            case GROUNDED:
+                break;
+            case TAKING_OFF:
+                up = TAKEOFF_VELOCITY;
+                if (-down >= TAKEOFF_ALTITUDE) {
+                    mode = FlightMode.FLYING;
+                }
+                break;
+            case LANDING:
+                up = -LANDING_VELOCITY;
+                break;
+            case FLYING:
+                if (now - lastStickNanos <= STICK_TIMEOUT_NANOS) {
+                    //velocity mode in body coordinates: roll moves forward, pitch moves right
+                    forward = clamp(stickRoll, MAX_HORIZONTAL_VELOCITY);
+                    right = clamp(stickPitch, MAX_HORIZONTAL_VELOCITY);
+                    turn = clamp(stickYaw, MAX_YAW_RATE);
+                    up = clamp(stickThrottle, MAX_VERTICAL_VELOCITY);
+                }
+                break;
+        }
+
+        double heading = Math.toRadians(yaw);
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        double targetNorth = forward * cos - right * sin;
+        double targetEast = forward * sin + right * cos;
+        double targetDown = -up;
+
+        double gain = 1 - Math.exp(-dt / VELOCITY_TIME_CONSTANT);
+        double accelNorth = (targetNorth - velocityNorth) * gain / dt;
+        double accelEast = (targetEast - velocityEast) * gain / dt;
+        velocityNorth += accelNorth * dt;
+        velocityEast += accelEast * dt;
+        velocityDown += (targetDown - velocityDown) * gain;
+        yawRate += (turn - yawRate) * (1 - Math.exp(-dt / YAW_TIME_CONSTANT));
+
+        north += velocityNorth * dt;
+        east += velocityEast * dt;
+        down += velocityDown * dt;
+        yaw = wrapDegrees(yaw + yawRate * dt);
+
+        //a multirotor tilts into its horizontal acceleration
+        double accelForward = accelNorth * cos + accelEast * sin;
+        double accelRight = -accelNorth * sin + accelEast * cos;
+        pitch = -Math.toDegrees(Math.atan2(accelForward, GRAVITY));
+        roll = Math.toDegrees(Math.atan2(accelRight, GRAVITY));
+
+        if (down >= 0 && mode != FlightMode.TAKING_OFF) {
+            down = 0;
+            if (mode == FlightMode.LANDING || mode == FlightMode.GROUNDED) {
+                mode = FlightMode.GROUNDED;
+                velocityNorth = 0;
+                velocityEast = 0;
+                velocityDown = 0;
+                yawRate = 0;
+                pitch = 0;
+                roll = 0;
+            } else if (velocityDown > 0) {
+                velocityDown = 0;
+            }
+        }
+    }
+
+    private void snapshot(DroneState out, long now) {
+        out.timestampNanos = now;
+        out.pitch = pitch;
+        out.roll = roll;
+        out.yaw = yaw;
+        out.velocityX = (float) velocityNorth;
+        out.velocityY = (float) velocityEast;
+        out.velocityZ = (float) velocityDown;
+        out.altitude = (float) -down;
+        out.latitude = HOME_LATITUDE + north / METERS_PER_DEGREE;
+        out.longitude = HOME_LONGITUDE + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(HOME_LATITUDE)));
+        out.satelliteCount = SATELLITE_COUNT;
+        out.flying = mode != FlightMode.GROUNDED;
+        out.orientationMode = 0;
+        out.compassState = compassState;
+        //the battery is not simulated
+        out.batteryPercent = 100;
+    }
+
+    private static double clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    private static double wrapDegrees(double degrees) {
+        degrees %= 360;
+        if (degrees >= 180) {
+            degrees -= 360;
+        } else if (degrees < -180) {
+            degrees += 360;
+        }
+        return degrees;
+    }
+
+    /**
+     * This copies the current state, whether or not it is due to be published
+     */
+    public synchronized void getState(DroneState out) {
+        snapshot(out, clock.nanoTime());
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    public synchronized double getNorth() {
+        return north;
+    }
+
+    public synchronized double getEast() {
+        return east;
+    }
+
+    public synchronized double getAltitude() {
+        return -down;
+    }
+
+    public synchronized double getYaw() {
+        return yaw;
+    }
+
+    public synchronized boolean isFlying() {
+        return mode != FlightMode.GROUNDED;
+    }
+
+    public synchronized int getPendingRequests() {
+        return pending.size();
+    }
+
+    public synchronized long getDeliveredRequests() {
+        return deliveredRequests;
+    }
+}
@@ -0,0 +1,89 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This is what the app needs from a speech recognizer.  {@link AndroidSpeechEngine} records
+ * from the microphone with the pocketsphinx Android recognizer; {@link DecoderSpeechEngine}
+ * drives the same decoder, model and grammar from audio it is handed, so recognition can be
+ * measured on a desktop JVM.
+ *
+ * Only one search is listened to at a time.  A search is started with
+ * {@link #startListening(String)} and ends with {@link #stop()}, which reports the final
+ * hypothesis, with {@link #cancel()}, which does not, or when its timeout runs out.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+public interface SpeechEngine {
+
+    int NO_TIMEOUT = -1;
+
+    /**
+     * The recognizer's events.  Hypotheses are the decoded words, or null if nothing was
+     * decoded.  The engine says which thread they arrive on.
+     */
+    interface Listener {
+        void onBeginningOfSpeech();
+
+        void onEndOfSpeech();
+
+        void onPartialResult(String hypothesis);
+
+        void onResult(String hypothesis);
+
+        void onError(Exception error);
+
+        void onTimeout();
+    }
+
+    void addListener(Listener listener);
+
+    void removeListener(Listener listener);
+
+    /**
+     * This adds a JSGF grammar search, compiled through the {@link GrammarCache}
+     * @param name name of the search
+     * @param grammar JSGF grammar file
+     * @param dictionary dictionary the engine was set up with
+     * @return where the search came from
+     * @throws IOException if the grammar or dictionary cannot be read
+     */
+    GrammarCache.Source addGrammarSearch(String name, File grammar, File dictionary) throws IOException;
+
+    /**
+     * This adds a keyword spotting search
+     * @param name name of the search
+     * @param keywords file with one phrase and threshold per line
+     */
+    void addKeywordSearch(String name, File keywords);
+
+    /**
+     * This starts listening without a timeout, as with {@link #NO_TIMEOUT}
+     * @return false if the engine was already listening
+     */
+    boolean startListening(String searchName);
+
+    /**
+     * This starts listening, giving up if no speech is heard for the timeout
+     * @param timeoutMs milliseconds without speech before {@link Listener#onTimeout()}, or
+     *                  {@link #NO_TIMEOUT}
+     * @return false if the engine was already listening
+     */
+    boolean startListening(String searchName, int timeoutMs);
+
+    /**
+     * This stops listening and reports the final hypothesis
+     * @return false if the engine was not listening
+     */
+    boolean stop();
+
+    /**
+     * This stops listening without a result
+     * @return false if the engine was not listening
+     */
+    boolean cancel();
+
+    /**
+     * This releases the decoder; the engine cannot be used afterwards
+     */
+    void shutdown();
+}
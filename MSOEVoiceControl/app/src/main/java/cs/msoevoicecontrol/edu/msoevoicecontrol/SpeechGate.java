@@ -0,0 +1,156 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class sits between the microphone and the decoder and passes on only the audio a
+ * {@link VoiceActivityDetector} hears speech in.  Audio of any length is cut into frames
+ * from a small pool; while the gate is closed the latest frames are held back, so when
+ * speech starts the decoder also gets the quiet lead-in it needs before the first word.
+ * Frames held back for longer than that are dropped.  Nothing is allocated after
+ * construction.
+ *
+ * A gate is not thread-safe; feed it from one thread.
+ */
+
+import java.util.ArrayDeque;
+
+public class SpeechGate {
+
+    /**
+     * Receives the audio that gets through, on the thread feeding the gate.  The frames
+     * are reused once the call returns.
+     */
+    public interface Sink {
+        void onSpeech(short[] frame, int count);
+
+        /**
+         * The speech has ended
+         */
+        void onGateClosed();
+
+        /**
+         * This many samples were dropped without being decoded
+         */
+        void onDropped(int count);
+    }
+
+    private final VoiceActivityDetector detector;
+    private final int frameSize;
+    private final int preRollFrames;
+    private final ArrayDeque<short[]> preRoll;
+    private final ArrayDeque<short[]> pool;
+    private short[] frame;
+    private int filled;
+
+    private long framesIn;
+    private long framesPassed;
+    private long openings;
+
+    /**
+     * @param sampleRate samples per second of the audio
+     * @param preRollMillis how much audio before the start of speech is passed on with it
+     */
+    public SpeechGate(int sampleRate, int preRollMillis) {
+        detector = new VoiceActivityDetector(sampleRate);
+        frameSize = detector.getFrameSize();
+        preRollFrames = preRollMillis * VoiceActivityDetector.FRAMES_PER_SECOND / 1000;
+        preRoll = new ArrayDeque<short[]>(preRollFrames + 1);
+        pool = new ArrayDeque<short[]>(preRollFrames + 1);
+        for (int i = 0; i < preRollFrames; i++) {
+            pool.push(new short[frameSize]);
+        }
+        frame = new short[frameSize];
+    }
+
+    /**
+     * This adds audio to the gate
+     * @param samples the audio
+     * @param count samples to add
+     * @param sink where speech goes
+     */
+    public void process(short[] samples, int count, Sink sink) {
+        int offset = 0;
+        while (offset < count) {
+            int copied = Math.min(frameSize - filled, count - offset);
+            System.arraycopy(samples, offset, frame, filled, copied);
+            filled += copied;
+            offset += copied;
+            if (filled == frameSize) {
+                filled = 0;
+                endFrame(sink);
+            }
+        }
+    }
+
+    private void endFrame(Sink sink) {
+        framesIn++;
+        boolean wasOpen = detector.isOpen();
+        if (detector.process(frame, frameSize)) {
+            if (!wasOpen) {
+                openings++;
+                short[] held;
+                while ((held = preRoll.poll()) != null) {
+                    framesPassed++;
+                    sink.onSpeech(held, frameSize);
+                    pool.push(held);
+                }
+            }
+            framesPassed++;
+            sink.onSpeech(frame, frameSize);
+            return;
+        }
+        if (wasOpen) {
+            sink.onGateClosed();
+        }
+        if (preRollFrames == 0) {
+            sink.onDropped(frameSize);
+            return;
+        }
+        if (preRoll.size() == preRollFrames) {
+            pool.push(preRoll.poll());
+            sink.onDropped(frameSize);
+        }
+        preRoll.add(frame);
+        frame = pool.pop();
+    }
+
+    /**
+     * This drops the held-back audio and any part frame and closes the gate.  The noise
+     * floor is kept.
+     */
+    public void reset() {
+        short[] held;
+        while ((held = preRoll.poll()) != null) {
+            pool.push(held);
+        }
+        filled = 0;
+        detector.reset();
+    }
+
+    public boolean isOpen() {
+        return detector.isOpen();
+    }
+
+    public VoiceActivityDetector getDetector() {
+        return detector;
+    }
+
+    public long getFramesIn() {
+        return framesIn;
+    }
+
+    public long getFramesPassed() {
+        return framesPassed;
+    }
+
+    /**
+     * @return how many times speech started
+     */
+    public long getOpenings() {
+        return openings;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("passed %d of %d frames (%.1f%%) in %d openings, %s", framesPassed, framesIn,
+                framesIn == 0 ? 0.0 : 100.0 * framesPassed / framesIn, openings, detector);
+    }
+}
@@ -0,0 +1,169 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is one recognised command with the amount spoken after it, as in "forward
+ * three meters" or "turn right ninety", and the aircraft it was addressed to, as in
+ * "two left" or "all up".  Commands without an amount or address, including every button
+ * press, use the shared instance from {@link #of(VoiceCommand)}.
+ */
+
+public final class SpokenCommand {
+
+    /**
+     * The unit spoken after an amount
+     */
+    public enum Unit {
+        NONE,
+        METERS,
+        FEET,
+        DEGREES
+    }
+
+    /** the command was not addressed, so it goes to the aircraft being flown */
+    public static final int NO_TARGET = 0;
+    /** the command was addressed to every aircraft */
+    public static final int ALL = -1;
+
+    //the most a spoken amount may ask for; the grammar hears up to 999.9
+    public static final double MAX_MOVE_METERS = 5;
+    public static final double MAX_CLIMB_METERS = 3;
+    public static final double MAX_TURN_DEGREES = 360;
+
+    private static final double METERS_PER_FOOT = 0.3048;
+    private static final SpokenCommand[] BARE = new SpokenCommand[VoiceCommand.values().length];
+
+    static {
+        for (VoiceCommand command : VoiceCommand.values()) {
+            BARE[command.ordinal()] = new SpokenCommand(command, Double.NaN, Unit.NONE, NO_TARGET);
+        }
+    }
+
+    public final VoiceCommand command;
+    /** the amount, or NaN if none was spoken */
+    public final double amount;
+    public final Unit unit;
+    /** the aircraft's number, {@link #ALL} or {@link #NO_TARGET} */
+    public final int target;
+
+    public SpokenCommand(VoiceCommand command, double amount, Unit unit) {
+        this(command, amount, unit, NO_TARGET);
+    }
+
+    public SpokenCommand(VoiceCommand command, double amount, Unit unit, int target) {
+        this.command = command;
+        this.amount = amount;
+        this.unit = unit;
+        this.target = target;
+    }
+
+    /**
+     * @return the command with no amount
+     */
+    public static SpokenCommand of(VoiceCommand command) {
+        return BARE[command.ordinal()];
+    }
+
+    public boolean hasAmount() {
+        return !Double.isNaN(amount);
+    }
+
+    /**
+     * @return false if the amount is in a unit the command cannot use, as in "left ten feet"
+     *         or "forward ninety degrees"
+     */
+    public boolean unitFits() {
+        boolean turn = command == VoiceCommand.LEFT || command == VoiceCommand.RIGHT;
+        switch (unit) {
+            case NONE:
+                return true;
+            case DEGREES:
+                return turn;
+            default:
+                return !turn;
+        }
+    }
+
+    /**
+     * @return false if the amount is more than the command may ask for, as in a misheard
+     *         "forward nine hundred feet"; check {@link #unitFits()} first
+     */
+    public boolean amountFits() {
+        if (!hasAmount()) {
+            return true;
+        }
+        switch (command) {
+            case LEFT:
+            case RIGHT:
+                return degrees(0) <= MAX_TURN_DEGREES;
+            case UP:
+            case DOWN:
+                return meters(0) <= MAX_CLIMB_METERS;
+            case FORWARD:
+            case BACK:
+                return meters(0) <= MAX_MOVE_METERS;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param otherwise used when no amount, or an amount in another unit, was spoken;
+     *                  check {@link #unitFits()} first
+     * @return the amount as a distance in meters
+     */
+    public double meters(double otherwise) {
+        if (!hasAmount()) {
+            return otherwise;
+        }
+        switch (unit) {
+            case NONE:
+            case METERS:
+                return amount;
+            case FEET:
+                return amount * METERS_PER_FOOT;
+            default:
+                return otherwise;
+        }
+    }
+
+    /**
+     * @param otherwise used when no amount, or an amount in another unit, was spoken;
+     *                  check {@link #unitFits()} first
+     * @return the amount as an angle in degrees
+     */
+    public double degrees(double otherwise) {
+        if (!hasAmount() || (unit != Unit.NONE && unit != Unit.DEGREES)) {
+            return otherwise;
+        }
+        return amount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SpokenCommand)) {
+            return false;
+        }
+        SpokenCommand other = (SpokenCommand) o;
+        return command == other.command && Double.compare(amount, other.amount) == 0 && unit == other.unit
+                && target == other.target;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(amount);
+        return ((command.hashCode() * 31 + (int) (bits ^ (bits >>> 32))) * 31 + unit.hashCode()) * 31 + target;
+    }
+
+    @Override
+    public String toString() {
+        String text = command.toString();
+        if (target == ALL) {
+            text = "all " + text;
+        } else if (target != NO_TARGET) {
+            text = target + " " + text;
+        }
+        if (!hasAmount()) {
+            return text;
+        }
+        return text + " " + amount + (unit == Unit.NONE ? "" : " " + unit.name().toLowerCase());
+    }
+}
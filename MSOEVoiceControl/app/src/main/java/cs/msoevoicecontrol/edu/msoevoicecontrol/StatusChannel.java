@@ -0,0 +1,155 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class carries status messages to the HUD.  Each {@link Topic} has a single
+ * latest-value slot, so a burst of updates on one topic collapses into the last one, and
+ * the slots are drawn at most once per display frame.  Posting from any thread is a swap
+ * and, for the first update since the last frame, one frame request; it does not allocate.
+ */
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class StatusChannel {
+
+    /**
+     * The lines of the HUD, in the order they are shown
+     */
+    public enum Topic {
+        VOICE,
+        FLIGHT,
+        STICK,
+        ERROR
+    }
+
+    /**
+     * Shows the HUD text; called from {@link #onFrame()}
+     */
+    public interface Display {
+        void show(String text);
+    }
+
+    /**
+     * Arranges for {@link #onFrame()} to be called at the next display frame.  It is called
+     * from any thread.
+     */
+    public interface FrameScheduler {
+        void requestFrame();
+    }
+
+    private static final Topic[] TOPICS = Topic.values();
+
+    private final FrameScheduler scheduler;
+    private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(TOPICS.length);
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    private volatile Display display;
+
+    //only touched in onFrame
+    private final String[] shown = new String[TOPICS.length];
+    private final StringBuilder text = new StringBuilder();
+
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    public StatusChannel(FrameScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param display where the HUD is drawn, or null to drop updates until one is set
+     */
+    public void setDisplay(Display display) {
+        this.display = display;
+        if (display != null && frameRequested.compareAndSet(false, true)) {
+            scheduler.requestFrame();
+        }
+    }
+
+    /**
+     * This replaces the status of a topic
+     * @param topic the HUD line to update
+     * @param message the new text
+     */
+    public void post(Topic topic, String message) {
+        posted.incrementAndGet();
+        if (display == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (slots.getAndSet(topic.ordinal(), message) != null) {
+            //the frame that will draw the old value has not run yet, so it draws this one
+            merged.incrementAndGet();
+            return;
+        }
+        if (frameRequested.compareAndSet(false, true)) {
+            scheduler.requestFrame();
+        }
+    }
+
+    /**
+     * This draws the latest value of every topic.  It must be called on the thread that
+     * owns the display.
+     */
+    public void onFrame() {
+        frameRequested.set(false);
+        Display target = display;
+        if (target == null) {
+            return;
+        }
+        boolean changed = false;
+        for (int i = 0; i < TOPICS.length; i++) {
+            String message = slots.getAndSet(i, null);
+            if (message != null && !message.equals(shown[i])) {
+                shown[i] = message;
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        text.setLength(0);
+        for (int i = 0; i < TOPICS.length; i++) {
+            if (shown[i] != null) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(shown[i]);
+            }
+        }
+        target.show(text.toString());
+        frames.incrementAndGet();
+    }
+
+    public long getPosted() {
+        return posted.get();
+    }
+
+    /**
+     * @return updates replaced by a newer one before they were drawn
+     */
+    public long getMerged() {
+        return merged.get();
+    }
+
+    /**
+     * @return updates posted while there was no display
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return how many times the HUD was redrawn
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    @Override
+    public String toString() {
+        return "posted " + getPosted() + ", merged " + getMerged() + ", dropped " + getDropped()
+                + ", drawn in " + getFrames() + " frames";
+    }
+}
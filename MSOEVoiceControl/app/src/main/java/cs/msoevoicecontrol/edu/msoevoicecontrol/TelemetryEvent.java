@@ -0,0 +1,37 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This event is published on the {@link EventBus} for each state update from the
+ * {@link DroneLink}.  It holds its own copy of the state, so subscribers can keep it.
+ */
+
+public final class TelemetryEvent {
+
+    private final DroneState state = new DroneState();
+
+    public TelemetryEvent(DroneState state) {
+        this.state.set(state);
+    }
+
+    /**
+     * @param out receives a copy of the state
+     */
+    public void getState(DroneState out) {
+        out.set(state);
+    }
+
+    public long getTimestampNanos() {
+        return state.timestampNanos;
+    }
+
+    public double getYaw() {
+        return state.yaw;
+    }
+
+    public float getAltitude() {
+        return state.altitude;
+    }
+
+    public boolean isFlying() {
+        return state.flying;
+    }
+}
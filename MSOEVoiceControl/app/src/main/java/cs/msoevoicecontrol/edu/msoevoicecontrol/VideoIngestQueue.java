@@ -0,0 +1,271 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class moves raw H.264 data from the SDK's video callback to a dedicated decode
+ * thread through a bounded single-producer/single-consumer ring of pooled buffers, so a
+ * slow decoder never stalls the SDK.  When the ring is full the incoming data is dropped
+ * together with the rest of its group of pictures; the stream resumes at the next SPS or
+ * IDR NAL unit so the decoder never sees a half-dropped GOP.  The SDK does not cut its
+ * buffers at NAL units, so the last bytes of dropped data are kept in case the keyframe's
+ * start code began there.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class VideoIngestQueue {
+
+    /**
+     * Receives the data on the decode thread.  The buffer is reused once decode returns.
+     */
+    public interface Sink {
+        void decode(byte[] data, int size);
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int NAL_SPS = 7;
+    private static final int NAL_IDR = 5;
+    //a four byte start code can be cut anywhere up to the NAL header after it
+    private static final int CARRY_SIZE = 4;
+
+    private final Sink sink;
+    private final byte[][] buffers;
+    private final int[] sizes;
+    private final int mask;
+
+    //consumer position, written by the decode thread
+    private final AtomicLong head = new AtomicLong();
+    //producer position, written by the SDK thread
+    private final AtomicLong tail = new AtomicLong();
+
+    //only touched by the producer
+    private boolean waitingForKeyframe = true;
+    //the end of the last dropped data, followed by the start of the next while looking for a keyframe
+    private final byte[] carry = new byte[CARRY_SIZE * 2];
+    private int carryCount;
+
+    private volatile boolean running;
+    private volatile boolean consumerParked;
+    private volatile Thread consumer;
+
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong decodedFrames = new AtomicLong();
+
+    /**
+     * @param capacity number of buffers in the ring, rounded up to a power of two
+     * @param sink where the data is sent on the decode thread
+     */
+    public VideoIngestQueue(int capacity, Sink sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.sink = sink;
+        this.buffers = new byte[size][];
+        this.sizes = new int[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * This starts the decode thread
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "video-decode");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    /**
+     * This stops the decode thread; data still in the ring is discarded
+     */
+    public synchronized void stop() {
+        running = false;
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        consumer = null;
+    }
+
+    /**
+     * This copies the data into the ring.  It never blocks.  Must only be called from
+     * the producer thread.
+     * @param data raw H.264 elementary stream bytes
+     * @param size number of valid bytes in data
+     * @return true if the data was queued
+     */
+    public boolean offer(byte[] data, int size) {
+        receivedFrames.incrementAndGet();
+        int offset = 0;
+        int carried = 0;
+        if (waitingForKeyframe) {
+            carried = findCarriedKeyframe(data, size);
+            if (carried == 0) {
+                offset = findKeyframe(data, size);
+                if (offset < 0) {
+                    dropAndCarry(data, size);
+                    return false;
+                }
+            }
+        }
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            //full: drop up to the next keyframe rather than corrupt the GOP
+            waitingForKeyframe = true;
+            dropAndCarry(data, size);
+            return false;
+        }
+        waitingForKeyframe = false;
+
+        int slot = (int) (t & mask);
+        int length = carried + size - offset;
+        byte[] buffer = buffers[slot];
+        if (buffer == null || buffer.length < length) {
+            buffer = new byte[Math.max(INITIAL_BUFFER_SIZE, Integer.highestOneBit(length) << 1)];
+            buffers[slot] = buffer;
+        }
+        System.arraycopy(carry, carryCount - carried, buffer, 0, carried);
+        System.arraycopy(data, offset, buffer, carried, size - offset);
+        carryCount = 0;
+        sizes[slot] = length;
+        copiedBytes.addAndGet(length);
+        //the carried bytes were counted as dropped with the data before
+        droppedBytes.addAndGet(offset - carried);
+        //a full store so the parked flag below is read after the new tail is visible
+        tail.set(t + 1);
+
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * This drops the data and everything up to the next keyframe, for example while there
+     * is no decoder.  Must only be called from the producer thread.
+     * @param size number of bytes dropped
+     */
+    public void dropUntilKeyframe(int size) {
+        receivedFrames.incrementAndGet();
+        waitingForKeyframe = true;
+        carryCount = 0;
+        drop(size);
+    }
+
+    private void dropAndCarry(byte[] data, int size) {
+        drop(size);
+        int keep = Math.min(size, CARRY_SIZE);
+        int kept = Math.min(carryCount, CARRY_SIZE - keep);
+        System.arraycopy(carry, carryCount - kept, carry, 0, kept);
+        System.arraycopy(data, size - keep, carry, kept, keep);
+        carryCount = kept + keep;
+    }
+
+    /**
+     * This looks for an SPS or IDR NAL unit whose start code began in the carried bytes of
+     * the data dropped before
+     * @return how many of the carried bytes belong to it, or 0 if there is none
+     */
+    private int findCarriedKeyframe(byte[] data, int size) {
+        int carried = carryCount;
+        int length = carried + Math.min(size, CARRY_SIZE);
+        System.arraycopy(data, 0, carry, carried, length - carried);
+        //up to a start code at the very beginning of the data, which may have its first zero carried
+        for (int i = 0; i <= carried && i + 3 < length; i++) {
+            if (carry[i] == 0 && carry[i + 1] == 0 && carry[i + 2] == 1) {
+                int type = carry[i + 3] & 0x1f;
+                if (type == NAL_SPS || type == NAL_IDR) {
+                    return Math.max(0, carried - (i > 0 && carry[i - 1] == 0 ? i - 1 : i));
+                }
+            }
+        }
+        return 0;
+    }
+
+    private void drop(int size) {
+        if (size > 0) {
+            droppedFrames.incrementAndGet();
+            droppedBytes.addAndGet(size);
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            long h = head.get();
+            if (h == tail.get()) {
+                consumerParked = true;
+                if (h == tail.get()) {
+                    LockSupport.parkNanos(this, 10000000L);
+                }
+                consumerParked = false;
+                continue;
+            }
+            int slot = (int) (h & mask);
+            sink.decode(buffers[slot], sizes[slot]);
+            decodedFrames.incrementAndGet();
+            head.lazySet(h + 1);
+        }
+    }
+
+    /**
+     * This finds the first SPS or IDR NAL unit in Annex B data
+     * @return offset of its start code or -1 if there is none
+     */
+    static int findKeyframe(byte[] data, int size) {
+        for (int i = 0; i + 3 < size; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                int type = data[i + 3] & 0x1f;
+                if (type == NAL_SPS || type == NAL_IDR) {
+                    return i > 0 && data[i - 1] == 0 ? i - 1 : i;
+                }
+                i += 2;
+            }
+        }
+        return -1;
+    }
+
+    public int getDepth() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    public long getDecodedFrames() {
+        return decodedFrames.get();
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + getDepth() + ", received " + getReceivedFrames() + ", decoded " + getDecodedFrames()
+                + ", dropped " + getDroppedFrames() + " (" + getDroppedBytes() + " bytes), copied "
+                + getCopiedBytes() + " bytes";
+    }
+}
@@ -0,0 +1,343 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class records the raw H.264 elementary stream of the live view to disk.  The video
+ * callback copies each chunk into a pooled direct buffer and hands it to a background
+ * writer, so recording never blocks the live view; when no buffer is free the chunk is
+ * dropped and recording resumes at the next keyframe.  The writer appends the chunks to
+ * a .h264 file through a FileChannel and writes a side index of keyframe offsets to a
+ * .idx file so a player can seek without scanning the stream.  The SDK does not cut its
+ * buffers at NAL units, so the last bytes of each buffer are kept to find a start code
+ * that began there, and when recording resumes after dropped data those bytes are written
+ * in front of the keyframe.
+ *
+ * The index starts with the 8 byte magic "H264IDX1" followed by one big-endian
+ * (long file offset, long timestamp in nanoseconds) pair per SPS or IDR NAL unit.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class VideoRecorder {
+
+    public static final String VIDEO_EXTENSION = ".h264";
+    public static final String INDEX_EXTENSION = ".idx";
+    private static final byte[] INDEX_MAGIC = {'H', '2', '6', '4', 'I', 'D', 'X', '1'};
+    private static final int DEFAULT_BUFFER_COUNT = 16;
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final int NAL_SPS = 7;
+    private static final int NAL_IDR = 5;
+    //a four byte start code can be cut anywhere up to the NAL header after it
+    private static final int CARRY_SIZE = 4;
+
+    /**
+     * A pooled buffer and what is known about the chunk in it
+     */
+    private static class Chunk {
+        final ByteBuffer buffer;
+        long timestampNanos;
+        //where each keyframe starts, from the start of the chunk; before it if the start code began in the last chunk
+        int[] keyframeOffsets = new int[4];
+        int keyframeCount;
+
+        Chunk(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> filled;
+    private final ByteBuffer indexEntry = ByteBuffer.allocateDirect(16);
+
+    //only touched by the producer
+    private boolean waitingForKeyframe = true;
+    //the end of the data before, recorded or not, followed by the start of the next while looking for start codes
+    private final byte[] carry = new byte[CARRY_SIZE * 2];
+    private int carryCount;
+    private int[] found = new int[4];
+
+    private volatile boolean running;
+    private Thread writer;
+    private FileOutputStream videoOut;
+    private FileOutputStream indexOut;
+
+    private final AtomicLong recordedChunks = new AtomicLong();
+    private final AtomicLong droppedWrites = new AtomicLong();
+    private volatile long bytesWritten;
+    private volatile long writeNanos;
+    private volatile long keyframes;
+    private volatile IOException writeError;
+
+    public VideoRecorder() {
+        this(DEFAULT_BUFFER_COUNT, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferCount number of pooled buffers
+     * @param bufferSize size of each buffer; larger chunks are dropped
+     */
+    public VideoRecorder(int bufferCount, int bufferSize) {
+        free = new ArrayBlockingQueue<>(bufferCount);
+        filled = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+    }
+
+    /**
+     * This opens the files and starts the writer thread
+     * @param baseFile the recording is written to baseFile.h264 and baseFile.idx
+     * @throws IOException if the files cannot be created
+     */
+    public synchronized void start(File baseFile) throws IOException {
+        if (writer != null) {
+            return;
+        }
+        //chunks queued after the last recording stopped are not part of this one
+        free.addAll(filled);
+        filled.clear();
+        videoOut = new FileOutputStream(baseFile.getPath() + VIDEO_EXTENSION);
+        indexOut = new FileOutputStream(baseFile.getPath() + INDEX_EXTENSION);
+        final FileChannel video = videoOut.getChannel();
+        final FileChannel index = indexOut.getChannel();
+        writeFully(index, ByteBuffer.wrap(INDEX_MAGIC));
+        waitingForKeyframe = true;
+        carryCount = 0;
+        writeError = null;
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write(video, index);
+            }
+        }, "video-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This writes out what is queued, stops the writer thread and closes the files
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        close(videoOut);
+        close(indexOut);
+    }
+
+    /**
+     * This queues a chunk of the stream for writing.  It never blocks.  Must only be called
+     * from the video callback thread.
+     * @param data raw H.264 elementary stream bytes
+     * @param size number of valid bytes in data
+     * @param timestampNanos when the chunk was received
+     * @return true if the chunk was queued
+     */
+    public boolean record(byte[] data, int size, long timestampNanos) {
+        if (!running) {
+            return false;
+        }
+        int keyframes = findKeyframes(data, size);
+        //where the chunk starts, before the data if the keyframe's start code began in the carried bytes
+        int start = 0;
+        if (waitingForKeyframe) {
+            if (keyframes == 0) {
+                droppedWrites.incrementAndGet();
+                carry(data, size);
+                return false;
+            }
+            start = found[0];
+        }
+        int carried = Math.max(0, -start);
+        int offset = Math.max(0, start);
+        Chunk chunk = free.poll();
+        if (chunk == null || chunk.buffer.capacity() < carried + size - offset) {
+            if (chunk != null) {
+                free.offer(chunk);
+            }
+            waitingForKeyframe = true;
+            droppedWrites.incrementAndGet();
+            carry(data, size);
+            return false;
+        }
+        waitingForKeyframe = false;
+        chunk.buffer.clear();
+        for (int i = carryCount - carried; i < carryCount; i++) {
+            chunk.buffer.put(carry[i]);
+        }
+        chunk.buffer.put(data, offset, size - offset);
+        chunk.buffer.flip();
+        chunk.timestampNanos = timestampNanos;
+        if (chunk.keyframeOffsets.length < keyframes) {
+            chunk.keyframeOffsets = new int[found.length];
+        }
+        for (int i = 0; i < keyframes; i++) {
+            chunk.keyframeOffsets[i] = found[i] - start;
+        }
+        chunk.keyframeCount = keyframes;
+        carry(data, size);
+        filled.offer(chunk);
+        recordedChunks.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * This finds every SPS or IDR NAL unit in the data, including one whose start code began
+     * in the carried bytes of the data before, and puts their offsets in found
+     * @return how many there are
+     */
+    private int findKeyframes(byte[] data, int size) {
+        int count = 0;
+        int carried = carryCount;
+        int length = carried + Math.min(size, CARRY_SIZE);
+        System.arraycopy(data, 0, carry, carried, length - carried);
+        //a start code whose NAL header is in the carried bytes was found with the data before
+        for (int i = Math.max(0, carried - 3); i < carried && i + 3 < length; i++) {
+            if (carry[i] == 0 && carry[i + 1] == 0 && carry[i + 2] == 1) {
+                if (isKeyframe(carry[i + 3])) {
+                    count = add(count, (i > 0 && carry[i - 1] == 0 ? i - 1 : i) - carried);
+                }
+                i += 2;
+            }
+        }
+        for (int i = 0; i + 3 < size; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                if (isKeyframe(data[i + 3])) {
+                    boolean zeroBefore = i > 0 ? data[i - 1] == 0 : carried > 0 && carry[carried - 1] == 0;
+                    count = add(count, zeroBefore ? i - 1 : i);
+                }
+                i += 2;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isKeyframe(byte header) {
+        int type = header & 0x1f;
+        return type == NAL_SPS || type == NAL_IDR;
+    }
+
+    private int add(int count, int offset) {
+        if (count == found.length) {
+            int[] grown = new int[count * 2];
+            System.arraycopy(found, 0, grown, 0, count);
+            found = grown;
+        }
+        found[count] = offset;
+        return count + 1;
+    }
+
+    /**
+     * This keeps the last bytes of the stream so far
+     */
+    private void carry(byte[] data, int size) {
+        int keep = Math.min(size, CARRY_SIZE);
+        int kept = Math.min(carryCount, CARRY_SIZE - keep);
+        System.arraycopy(carry, carryCount - kept, carry, 0, kept);
+        System.arraycopy(data, size - keep, carry, kept, keep);
+        carryCount = kept + keep;
+    }
+
+    private void write(FileChannel video, FileChannel index) {
+        try {
+            while (running || !filled.isEmpty()) {
+                Chunk chunk = filled.poll(100, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    long position = video.position();
+                    for (int i = 0; i < chunk.keyframeCount; i++) {
+                        indexEntry.clear();
+                        indexEntry.putLong(position + chunk.keyframeOffsets[i]).putLong(chunk.timestampNanos);
+                        indexEntry.flip();
+                        writeFully(index, indexEntry);
+                        keyframes++;
+                    }
+                    int length = chunk.buffer.remaining();
+                    writeFully(video, chunk.buffer);
+                    bytesWritten += length;
+                    writeNanos += System.nanoTime() - start;
+                } finally {
+                    free.offer(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            writeError = e;
+            running = false;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void close(FileOutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            //nothing more can be done with a recording that fails to close
+        }
+    }
+
+    public boolean isRecording() {
+        return running;
+    }
+
+    public long getRecordedChunks() {
+        return recordedChunks.get();
+    }
+
+    public long getDroppedWrites() {
+        return droppedWrites.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    /**
+     * @return the write rate while the writer was busy, in bytes per second
+     */
+    public long getDiskThroughput() {
+        long nanos = writeNanos;
+        return nanos == 0 ? 0 : bytesWritten * 1000000000L / nanos;
+    }
+
+    /**
+     * @return the error that stopped the writer, or null
+     */
+    public IOException getWriteError() {
+        return writeError;
+    }
+
+    @Override
+    public String toString() {
+        return "recorded " + getRecordedChunks() + " chunks, " + getBytesWritten() + " bytes, "
+                + getKeyframes() + " keyframes, dropped " + getDroppedWrites() + ", "
+                + getDiskThroughput() / 1024 + " KiB/s";
+    }
+}
@@ -0,0 +1,43 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class is a clock that only moves when it is told to, so simulated flights run as
+ * fast as the CPU allows and give the same result every time.
+ */
+
+public class VirtualClock implements Clock {
+
+    private volatile long now;
+
+    public VirtualClock() {
+        this(0);
+    }
+
+    public VirtualClock(long startNanos) {
+        this.now = startNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * This moves the clock forward
+     * @param nanos how far to move it
+     */
+    public synchronized void advance(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("time cannot go backwards: " + nanos);
+        }
+        now += nanos;
+    }
+
+    /**
+     * This moves the clock to the given time if it is in the future
+     */
+    public synchronized void advanceTo(long nanos) {
+        if (nanos > now) {
+            now = nanos;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class streams the current virtual stick setpoint to the flight controller at a
+ * fixed rate.  Commands only update the setpoint; the loop holds it for the requested
+ * time and then decays it linearly back to zero so the aircraft settles into a hover.
+ * The loop reuses the same setpoint fields on every tick, so it does not allocate.
+ */
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualStickLoop {
+
+    /**
+     * Receives the stick values computed on each tick of the loop
+     */
+    public interface Output {
+        void send(float pitch, float roll, float yaw, float throttle);
+    }
+
+    public static final int DEFAULT_RATE_HZ = 20;
+    public static final long DEFAULT_HOLD_MS = 1000;
+    public static final long DEFAULT_DECAY_MS = 500;
+
+    private final Output output;
+    private final Clock clock;
+    private final long periodNanos;
+    private final long defaultHoldNanos;
+    private final long decayNanos;
+
+    //the setpoint, guarded by lock
+    private final Object lock = new Object();
+    private float pitch;
+    private float roll;
+    private float yaw;
+    private float throttle;
+    private long commandNanos;
+    private long holdNanos;
+    private boolean active;
+
+    //tick statistics, only written by the loop thread
+    private volatile long tickCount;
+    private volatile long maxJitterNanos;
+    private volatile long totalJitterNanos;
+    private long lastTickNanos;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> future;
+
+    private final Runnable tickTask = new Runnable() {
+        @Override
+        public void run() {
+            tick(clock.nanoTime());
+        }
+    };
+
+    //queued behind the last tick so the zero setpoint is written by the loop thread
+    private final Runnable stopTask = new Runnable() {
+        @Override
+        public void run() {
+            release();
+            output.send(0, 0, 0, 0);
+        }
+    };
+
+    /**
+     * Creates a loop with the default rate, hold and decay times
+     * @param output where each tick's stick values are sent
+     */
+    public VirtualStickLoop(Output output) {
+        this(output, DEFAULT_RATE_HZ, DEFAULT_HOLD_MS, DEFAULT_DECAY_MS);
+    }
+
+    /**
+     * Creates a loop
+     * @param output where each tick's stick values are sent
+     * @param rateHz how many times per second the setpoint is sent
+     * @param holdMs how long a command is held at full value by default
+     * @param decayMs how long it takes a command to fade to zero after the hold
+     */
+    public VirtualStickLoop(Output output, int rateHz, long holdMs, long decayMs) {
+        this(output, Clock.SYSTEM, rateHz, holdMs, decayMs);
+    }
+
+    /**
+     * Creates a loop on the given clock.  A loop on a {@link VirtualClock} is stepped with
+     * {@link #tick(long)} instead of being started.
+     * @param output where each tick's stick values are sent
+     * @param clock time source for hold and decay
+     * @param rateHz how many times per second the setpoint is sent
+     * @param holdMs how long a command is held at full value by default
+     * @param decayMs how long it takes a command to fade to zero after the hold
+     */
+    public VirtualStickLoop(Output output, Clock clock, int rateHz, long holdMs, long decayMs) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + rateHz);
+        }
+        this.output = output;
+        this.clock = clock;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rateHz;
+        this.defaultHoldNanos = TimeUnit.MILLISECONDS.toNanos(holdMs);
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMs);
+    }
+
+    /**
+     * This starts streaming the setpoint on a dedicated thread
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "virtual-stick-loop");
+                thread.setPriority(Thread.MAX_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        lastTickNanos = 0;
+        future = executor.scheduleAtFixedRate(tickTask, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * This stops streaming and sends one final zero setpoint.  The zero is sent by the loop
+     * thread after any tick that is still running, so the output is never written by two
+     * threads at once.  It waits a few periods for that to happen.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        future.cancel(false);
+        executor.execute(stopTask);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(periodNanos * 4, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        future = null;
+    }
+
+    /**
+     * This replaces the setpoint and holds it for the default hold time
+     */
+    public void command(float pitch, float roll, float yaw, float throttle) {
+        command(pitch, roll, yaw, throttle, TimeUnit.NANOSECONDS.toMillis(defaultHoldNanos));
+    }
+
+    /**
+     * This replaces the setpoint
+     * @param holdMs how long to hold the setpoint at full value before it decays
+     */
+    public void command(float pitch, float roll, float yaw, float throttle, long holdMs) {
+        synchronized (lock) {
+            this.pitch = pitch;
+            this.roll = roll;
+            this.yaw = yaw;
+            this.throttle = throttle;
+            this.holdNanos = TimeUnit.MILLISECONDS.toNanos(holdMs);
+            this.commandNanos = clock.nanoTime();
+            this.active = true;
+        }
+    }
+
+    /**
+     * This drops the current setpoint so the next tick sends zero
+     */
+    public void release() {
+        synchronized (lock) {
+            active = false;
+        }
+    }
+
+    /**
+     * This computes and sends the setpoint for the given time.  It is package visible so the
+     * loop can be stepped by hand.
+     * @param nowNanos the current time of the loop's clock
+     */
+    void tick(long nowNanos) {
+        float p = 0;
+        float r = 0;
+        float y = 0;
+        float t = 0;
+        synchronized (lock) {
+            if (active) {
+                float scale = scaleAt(nowNanos - commandNanos);
+                if (scale <= 0) {
+                    active = false;
+                } else {
+                    p = pitch * scale;
+                    r = roll * scale;
+                    y = yaw * scale;
+                    t = throttle * scale;
+                }
+            }
+        }
+        output.send(p, r, y, t);
+        recordTick(nowNanos);
+    }
+
+    private float scaleAt(long elapsedNanos) {
+        if (elapsedNanos < holdNanos) {
+            return 1f;
+        }
+        if (decayNanos <= 0) {
+            return 0f;
+        }
+        long decayed = elapsedNanos - holdNanos;
+        if (decayed >= decayNanos) {
+            return 0f;
+        }
+        return 1f - (float) decayed / decayNanos;
+    }
+
+    private void recordTick(long nowNanos) {
+        if (lastTickNanos != 0) {
+            long jitter = Math.abs((nowNanos - lastTickNanos) - periodNanos);
+            totalJitterNanos += jitter;
+            if (jitter > maxJitterNanos) {
+                maxJitterNanos = jitter;
+            }
+        }
+        lastTickNanos = nowNanos;
+        tickCount++;
+    }
+
+    public boolean isActive() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getMaxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    public long getMeanJitterNanos() {
+        long ticks = tickCount;
+        return ticks > 1 ? totalJitterNanos / (ticks - 1) : 0;
+    }
+}
@@ -0,0 +1,158 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class decides, one 20 ms frame at a time, whether the microphone is hearing speech.
+ * Each frame's energy is compared with a noise floor that follows the background, so the
+ * steady hum of the rotors is learned and only what rises above it counts.  The zero
+ * crossing rate tells voiced sound (vowels, which every command has) from hiss: speech
+ * starts after a run of loud frames with few crossings, and once started it is kept going
+ * by fricatives as well.  It ends after a hangover long
+ * enough for the decoder to see the silence it needs to end the utterance itself.
+ *
+ * A detector is not thread-safe; feed it from one thread.
+ */
+
+public class VoiceActivityDetector {
+
+    public static final int FRAMES_PER_SECOND = 50;
+
+    //how far over the floor a voiced frame, and a fricative with many crossings, must be
+    private static final double VOICED_DB = 6.0;
+    private static final double UNVOICED_DB = 6.0;
+    //quieter frames than this are never speech, however still the room is (about -60 dBFS)
+    private static final double MIN_SPEECH_DB = 30.0;
+    //voiced speech has most of its energy below this, so it crosses zero less often than a tone of it would
+    private static final int VOICED_MAX_HZ = 1500;
+    //how much of the gap the floor closes each frame: quickly down, slower up, and very slowly under speech
+    private static final double FLOOR_FALL = 0.3;
+    private static final double FLOOR_RISE = 0.05;
+    private static final double FLOOR_CREEP = 0.004;
+    private static final int ONSET_FRAMES = 3;
+    //pocketsphinx ends an utterance after 0.5 s of silence (-vad_postspeech 50), so hold on longer
+    private static final int HANGOVER_FRAMES = 35;
+
+    private final int frameSize;
+    private final double voicedMaxCrossings;
+
+    private double noiseFloorDb = Double.NaN;
+    private double energyDb;
+    private double crossingRate;
+    private boolean open;
+    private int onsetFrames;
+    private int hangoverFrames;
+
+    private long frames;
+    private long speechFrames;
+
+    /**
+     * @param sampleRate samples per second of the audio
+     */
+    public VoiceActivityDetector(int sampleRate) {
+        frameSize = sampleRate / FRAMES_PER_SECOND;
+        voicedMaxCrossings = 2.0 * VOICED_MAX_HZ / sampleRate;
+    }
+
+    /**
+     * @return samples in a frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * This classifies the next frame
+     * @param frame the samples
+     * @param count samples in the frame, normally {@link #getFrameSize()}
+     * @return true if the frame is part of speech
+     */
+    public boolean process(short[] frame, int count) {
+        long sumOfSquares = 0;
+        int crossings = 0;
+        int previous = frame[0];
+        for (int i = 0; i < count; i++) {
+            int sample = frame[i];
+            sumOfSquares += sample * sample;
+            if ((sample ^ previous) < 0) {
+                crossings++;
+            }
+            previous = sample;
+        }
+        energyDb = 10 * Math.log10(1 + (double) sumOfSquares / count);
+        crossingRate = (double) crossings / count;
+        if (Double.isNaN(noiseFloorDb)) {
+            noiseFloorDb = energyDb;
+        }
+
+        double level = Math.max(noiseFloorDb, MIN_SPEECH_DB);
+        boolean voiced = energyDb > level + VOICED_DB && crossingRate < voicedMaxCrossings;
+        boolean unvoiced = energyDb > level + UNVOICED_DB && crossingRate >= voicedMaxCrossings;
+
+        if (voiced || unvoiced) {
+            noiseFloorDb += (energyDb - noiseFloorDb) * FLOOR_CREEP;
+        } else {
+            noiseFloorDb += (energyDb - noiseFloorDb) * (energyDb < noiseFloorDb ? FLOOR_FALL : FLOOR_RISE);
+        }
+
+        onsetFrames = voiced ? onsetFrames + 1 : 0;
+        if (!open && onsetFrames >= ONSET_FRAMES) {
+            open = true;
+        }
+        if (open) {
+            if (voiced || unvoiced) {
+                hangoverFrames = HANGOVER_FRAMES;
+            } else if (--hangoverFrames <= 0) {
+                open = false;
+            }
+        }
+
+        frames++;
+        if (open) {
+            speechFrames++;
+        }
+        return open;
+    }
+
+    /**
+     * @return true if the last frame was part of speech
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * This forgets the current utterance but keeps the noise floor, which still describes
+     * the room
+     */
+    public void reset() {
+        open = false;
+        onsetFrames = 0;
+        hangoverFrames = 0;
+    }
+
+    public double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    public double getEnergyDb() {
+        return energyDb;
+    }
+
+    /**
+     * @return sign changes per sample in the last frame
+     */
+    public double getCrossingRate() {
+        return crossingRate;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getSpeechFrames() {
+        return speechFrames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("floor=%.1fdB speech=%d/%d frames", noiseFloorDb, speechFrames, frames);
+    }
+}
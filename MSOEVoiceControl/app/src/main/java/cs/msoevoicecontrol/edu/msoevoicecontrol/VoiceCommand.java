@@ -0,0 +1,48 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This enum lists the commands the drone understands.  Each command is identified in the
+ * grammar by the last word of its phrases, so "turn left" and "left" both map to LEFT.
+ * Moves and turns may be followed by an amount, as in "forward three meters".
+ */
+
+public enum VoiceCommand {
+    FORWARD(true, "forward"),
+    BACK(true, "backward", "back"),
+    UP(true, "up"),
+    DOWN(true, "down"),
+    LEFT(true, "left"),
+    RIGHT(true, "right"),
+    REVERSE(false, "reverse", "around"),
+    FINISH(false, "finish", "land");
+
+    private final boolean takesAmount;
+    private final String[] keywords;
+
+    VoiceCommand(boolean takesAmount, String... keywords) {
+        this.takesAmount = takesAmount;
+        this.keywords = keywords;
+    }
+
+    /**
+     * @return whether an amount may be spoken after the command
+     */
+    public boolean takesAmount() {
+        return takesAmount;
+    }
+
+    /**
+     * This finds the command a phrase ends with
+     * @param keyword last word of a phrase
+     * @return the command or null if no command uses that word
+     */
+    public static VoiceCommand forKeyword(String keyword) {
+        for (VoiceCommand command : values()) {
+            for (String k : command.keywords) {
+                if (k.equals(keyword)) {
+                    return command;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This records a flight with {@link FlightRecorder}, over more than one block of each kind,
+ * and checks that {@link FlightLogReader} gives back every sample in time order, that a log
+ * cut off in the middle of a block reads up to its last whole block, and that a block with
+ * impossible counts is reported instead of being allocated.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlightLogReaderTest {
+
+    private static final int TELEMETRY_SAMPLES = 1200;
+    private static final int COMMAND_SAMPLES = 700;
+
+    private File log;
+
+    @Before
+    public void setUp() throws IOException {
+        log = File.createTempFile("flight", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        log.delete();
+    }
+
+    /**
+     * This records samples whose values follow from their index, so the ones read back can
+     * be checked without keeping them
+     */
+    private void record() {
+        FlightRecorder recorder = new FlightRecorder();
+        try {
+            recorder.start(log);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        for (int i = 0; i < TELEMETRY_SAMPLES; i++) {
+            recorder.recordTelemetry(i % 7 - 3, -2.5, i % 3600 / 10.0 - 180, 1.5f, -0.25f, i % 2,
+                    i / 100f, 43.0446 + i * 1e-7, -87.9087);
+            if (i < COMMAND_SAMPLES) {
+                recorder.recordCommand(0.5f, -1, i % 50, 0);
+            }
+        }
+        recorder.stop();
+        assertEquals(0, recorder.getDroppedSamples());
+        assertEquals(null, recorder.getWriteError());
+        assertEquals(log.length(), recorder.getBytesWritten());
+    }
+
+    private static int[] telemetryRow(int i) {
+        return new int[] {0, (i % 7 - 3) * 10, -25, i % 3600 - 1800, 150, -25, i % 2 * 100,
+                i, 430446000 + i, -879087000};
+    }
+
+    @Test
+    public void readsBackWhatWasRecorded() throws IOException, InterruptedException {
+        record();
+        FlightLogReader reader = FlightLogReader.read(log);
+        assertEquals(TELEMETRY_SAMPLES, reader.getTelemetryCount());
+        assertEquals(COMMAND_SAMPLES, reader.getCommandCount());
+        assertTrue(Math.abs(reader.getStartEpochMillis() - System.currentTimeMillis()) < 60000);
+
+        final List<int[]> telemetry = new ArrayList<int[]>();
+        final List<int[]> commands = new ArrayList<int[]>();
+        final int[] lastTime = {0};
+        reader.replay(new FlightLogReader.Listener() {
+            @Override
+            public void onTelemetry(int[] row) {
+                assertTrue(row[0] >= lastTime[0]);
+                lastTime[0] = row[0];
+                telemetry.add(row.clone());
+            }
+
+            @Override
+            public void onCommand(int[] row) {
+                assertTrue(row[0] >= lastTime[0]);
+                lastTime[0] = row[0];
+                commands.add(row.clone());
+            }
+        }, 0);
+        assertEquals(reader.getDurationMillis(), lastTime[0]);
+        for (int i = 0; i < TELEMETRY_SAMPLES; i++) {
+            int[] row = telemetry.get(i);
+            row[0] = 0;
+            assertArrayEquals("telemetry " + i, telemetryRow(i), row);
+        }
+        for (int i = 0; i < COMMAND_SAMPLES; i++) {
+            int[] row = commands.get(i);
+            row[0] = 0;
+            assertArrayEquals("command " + i, new int[] {0, 500, -1000, i % 50 * 1000, 0}, row);
+        }
+    }
+
+    @Test
+    public void truncatedLogReadsUpToItsLastWholeBlock() throws IOException {
+        record();
+        //the last block written is the partly filled command block flushed by stop()
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        try {
+            file.setLength(file.length() - 10);
+        } finally {
+            file.close();
+        }
+        FlightLogReader reader = FlightLogReader.read(log);
+        assertEquals(TELEMETRY_SAMPLES, reader.getTelemetryCount());
+        assertEquals(FlightRecorder.BLOCK_SAMPLES, reader.getCommandCount());
+    }
+
+    @Test
+    public void impossibleCountsAreReported() throws IOException {
+        //a block claiming 2^31 - 1 samples, and one claiming more columns than there are bytes
+        assertCorrupt(new byte[] {FlightRecorder.TELEMETRY, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 10, 0});
+        assertCorrupt(new byte[] {FlightRecorder.TELEMETRY, 1, (byte) 0xff, (byte) 0xff, 0x7f, 0});
+        //the right counts for another kind of block
+        assertCorrupt(new byte[] {FlightRecorder.COMMAND, 1, 10, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+    }
+
+    private void assertCorrupt(byte[] block) throws IOException {
+        FileOutputStream out = new FileOutputStream(log);
+        try {
+            out.write(FlightRecorder.MAGIC);
+            out.write(new byte[8]);
+            out.write(block);
+        } finally {
+            out.close();
+        }
+        try {
+            FlightLogReader.read(log);
+            fail("read a corrupt block");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("corrupt block"));
+        }
+    }
+}
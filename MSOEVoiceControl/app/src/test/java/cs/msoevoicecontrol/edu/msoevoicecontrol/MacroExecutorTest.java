@@ -0,0 +1,180 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This plays macros into a {@link SimulatedDrone} through a {@link VirtualStickLoop}, all on
+ * one {@link VirtualClock}, with the link's latency and jitter switched on, and checks the
+ * timing of each step and where the aircraft ends up.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MacroExecutorTest {
+
+    //the macro MainActivity runs for "reverse"
+    private static final Macro TURN_AROUND = new Macro("turn around",
+            new Macro.Step(0, 0, 100, 0, 1800),
+            new Macro.Step(0, 0, 0, 0, 300));
+
+    private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final double TOLERANCE_DEGREES = 10;
+    //how often the executor is polled, standing in for its scheduler thread waking up
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    //how long the rotation is left to stop after the macro before the angle is read
+    private static final long SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private VirtualClock clock;
+    private SimulatedDrone drone;
+    private VirtualStickLoop loop;
+    private MacroExecutor executor;
+    private final List<MacroExecutor.Report> reports = new ArrayList<MacroExecutor.Report>();
+    private long nextTick;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        drone = new SimulatedDrone(clock, TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(10), 1);
+        loop = new VirtualStickLoop(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                drone.sendVirtualStick(pitch, roll, yaw, throttle, null);
+            }
+        }, clock, VirtualStickLoop.DEFAULT_RATE_HZ, VirtualStickLoop.DEFAULT_HOLD_MS, VirtualStickLoop.DEFAULT_DECAY_MS);
+        executor = new MacroExecutor(loop, clock, new MacroExecutor.Listener() {
+            @Override
+            public void onMacroDone(MacroExecutor.Report report) {
+                reports.add(report);
+            }
+        });
+        drone.startTakeoff(null);
+        drone.advance(TimeUnit.SECONDS.toNanos(5));
+        nextTick = clock.nanoTime();
+    }
+
+    /**
+     * This runs the executor, the loop and the aircraft until the given time
+     * @param pollNanos how often the executor is polled
+     */
+    private void fly(long untilNanos, long pollNanos) {
+        long nextPoll = clock.nanoTime();
+        while (clock.nanoTime() < untilNanos) {
+            long now = clock.nanoTime();
+            if (now >= nextPoll) {
+                executor.poll(now);
+                nextPoll += pollNanos;
+            }
+            if (now >= nextTick) {
+                loop.tick(now);
+                nextTick += loop.getPeriodNanos();
+            }
+            drone.advance(POLL_NANOS);
+        }
+    }
+
+    private static double turned(double before, double after) {
+        double turned = after - before;
+        return turned < 0 ? turned + 360 : turned;
+    }
+
+    @Test
+    public void turnAroundFinishesOnTimeAndTurnsHalfATurn() {
+        for (int run = 0; run < 3; run++) {
+            double before = drone.getYaw();
+            long start = clock.nanoTime();
+            executor.run(TURN_AROUND);
+            fly(start + TURN_AROUND.getDurationNanos() + SETTLE_NANOS, POLL_NANOS);
+
+            MacroExecutor.Report report = reports.get(run);
+            assertTrue(report.toString(), report.completed);
+            assertEquals(2, report.getStepsStarted());
+            assertTrue(report.toString(), report.getFinishLatenessNanos() <= BUDGET_NANOS);
+            assertTrue(report.toString(), report.getMaxStartLatenessNanos() <= BUDGET_NANOS);
+            assertEquals(report.toString(), 180, turned(before, drone.getYaw()), TOLERANCE_DEGREES);
+        }
+        assertFalse(executor.isRunning());
+        assertEquals(6, executor.getStepLateness().getCount());
+    }
+
+    @Test
+    public void lateStepIsShortenedToKeepTheSchedule() {
+        long start = clock.nanoTime();
+        executor.run(TURN_AROUND);
+        executor.poll(start);
+        //the first boundary is reached 200 ms late, the end on time
+        long late = TimeUnit.MILLISECONDS.toNanos(200);
+        fly(start + TURN_AROUND.getOffsetNanos(1) + late, TURN_AROUND.getOffsetNanos(1) + late);
+        executor.poll(clock.nanoTime());
+        fly(start + TURN_AROUND.getDurationNanos() + SETTLE_NANOS, POLL_NANOS);
+
+        MacroExecutor.Report report = reports.get(0);
+        assertTrue(report.completed);
+        assertEquals(late, report.getStartLatenessNanos(1));
+        assertEquals(late, report.getOverrunNanos(0));
+        assertEquals(-late, report.getOverrunNanos(1), POLL_NANOS);
+        assertTrue(report.toString(), report.getFinishLatenessNanos() <= BUDGET_NANOS);
+    }
+
+    @Test
+    public void boundariesPassedTogetherAreAllRecorded() {
+        Macro steps = new Macro("steps",
+                new Macro.Step(0, 0, 10, 0, 100),
+                new Macro.Step(0, 0, 20, 0, 100),
+                new Macro.Step(0, 0, 30, 0, 100));
+        long start = clock.nanoTime();
+        executor.run(steps);
+        executor.poll(start);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(250));
+        long wakeAt = executor.poll(clock.nanoTime());
+        assertEquals(start + steps.getDurationNanos(), wakeAt);
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(MacroExecutor.IDLE, executor.poll(clock.nanoTime()));
+
+        MacroExecutor.Report report = reports.get(0);
+        assertTrue(report.completed);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(150), report.getStartLatenessNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), report.getStartLatenessNanos(2));
+        assertEquals(0, report.getFinishLatenessNanos());
+    }
+
+    @Test
+    public void newMacroPreemptsTheRunningOne() {
+        long start = clock.nanoTime();
+        executor.run(TURN_AROUND);
+        fly(start + TimeUnit.MILLISECONDS.toNanos(500), POLL_NANOS);
+        Macro climb = new Macro("climb", new Macro.Step(0, 0, 0, 1, 500));
+        executor.run(climb);
+
+        assertEquals(1, reports.size());
+        MacroExecutor.Report preempted = reports.get(0);
+        assertFalse(preempted.completed);
+        assertEquals(1, preempted.getStepsStarted());
+        assertEquals(-1, preempted.getFinishLatenessNanos());
+
+        double altitude = drone.getAltitude();
+        fly(clock.nanoTime() + TimeUnit.SECONDS.toNanos(2), POLL_NANOS);
+        assertEquals(2, reports.size());
+        assertTrue(reports.get(1).completed);
+        assertTrue(drone.getAltitude() > altitude + 0.2);
+    }
+
+    @Test
+    public void cancelStopsAtTheCurrentStep() {
+        assertFalse(executor.cancel());
+        long start = clock.nanoTime();
+        executor.run(TURN_AROUND);
+        fly(start + TimeUnit.MILLISECONDS.toNanos(300), POLL_NANOS);
+        assertTrue(executor.cancel());
+        assertFalse(executor.isRunning());
+        assertEquals(MacroExecutor.IDLE, executor.poll(clock.nanoTime()));
+        assertNotNull(reports.get(0));
+        assertFalse(reports.get(0).completed);
+    }
+}
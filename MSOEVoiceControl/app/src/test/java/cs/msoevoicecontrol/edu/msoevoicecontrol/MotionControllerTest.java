@@ -0,0 +1,223 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This flies the {@link MotionController} against a {@link SimulatedDrone} with the link's
+ * latency and jitter switched on and telemetry at the aircraft's 10 Hz, and checks that
+ * goals settle within their budgets, that closed-loop moves and the open-loop fallback
+ * go the same way, and that a move is not steered by a position fix that is lost, frozen
+ * or not a number.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MotionControllerTest {
+
+    private static final long TURN_SETTLE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4000);
+    private static final double TURN_OVERSHOOT_LIMIT = 10;
+    private static final long MOVE_SETTLE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(3500);
+    private static final double MOVE_OVERSHOOT_LIMIT = 0.3;
+    private static final long STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    //how long an open-loop move is left to coast to a stop before it is measured
+    private static final long COAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1500);
+    //how long a move may fly on a position it cannot trust
+    private static final long LOST_FIX_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2500);
+
+    private VirtualClock clock;
+    private SimulatedDrone drone;
+    private MotionController controller;
+    private VirtualStickLoop loop;
+    private MotionController.Result result;
+    private long nextTick;
+    private boolean nonFiniteSticks;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        drone = new SimulatedDrone(clock, TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(10), 1);
+        controller = new MotionController(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                if (Float.isNaN(pitch + roll + yaw + throttle) || Float.isInfinite(pitch + roll + yaw + throttle)) {
+                    nonFiniteSticks = true;
+                }
+                drone.sendVirtualStick(pitch, roll, yaw, throttle, null);
+            }
+        }, clock, new MotionController.Listener() {
+            @Override
+            public void onGoalDone(MotionController.Result done) {
+                result = done;
+            }
+        });
+        drone.setStateListener(controller);
+        loop = new VirtualStickLoop(controller, clock, VirtualStickLoop.DEFAULT_RATE_HZ,
+                VirtualStickLoop.DEFAULT_HOLD_MS, VirtualStickLoop.DEFAULT_DECAY_MS);
+        drone.startTakeoff(null);
+        nextTick = clock.nanoTime();
+        fly(clock.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+        //an eighth of a turn off north, so forward is not along either axis
+        controller.turn(45);
+        runGoal();
+    }
+
+    /**
+     * This runs the loop and the aircraft until the given time
+     */
+    private void fly(long untilNanos) {
+        while (clock.nanoTime() < untilNanos) {
+            long now = clock.nanoTime();
+            if (now >= nextTick) {
+                loop.tick(now);
+                nextTick += loop.getPeriodNanos();
+            }
+            drone.advance(STEP_NANOS);
+        }
+    }
+
+    private MotionController.Result runGoal() {
+        MotionController.Result done = endGoal();
+        assertTrue(done.toString(), done.completed);
+        return done;
+    }
+
+    /**
+     * This flies until the goal ends, however it ends
+     */
+    private MotionController.Result endGoal() {
+        long deadline = clock.nanoTime() + MotionController.TIMEOUT_NANOS + TimeUnit.SECONDS.toNanos(1);
+        while (result == null && clock.nanoTime() < deadline) {
+            fly(clock.nanoTime() + STEP_NANOS);
+        }
+        MotionController.Result done = result;
+        result = null;
+        assertNotNull("the goal never ended", done);
+        return done;
+    }
+
+    /**
+     * This passes telemetry on to the controller with the position replaced, as a lost or
+     * broken fix reports it
+     */
+    private void reportPosition(final double latitude, final double longitude, final int satellites) {
+        drone.setStateListener(new DroneLink.StateListener() {
+            @Override
+            public void onStateUpdate(DroneState state) {
+                state.latitude = latitude;
+                state.longitude = longitude;
+                state.satelliteCount = satellites;
+                controller.onStateUpdate(state);
+            }
+        });
+    }
+
+    /**
+     * @return how far the aircraft is along its current heading from the origin, in metres
+     */
+    private double alongHeading() {
+        double heading = Math.toRadians(drone.getYaw());
+        return drone.getNorth() * Math.cos(heading) + drone.getEast() * Math.sin(heading);
+    }
+
+    @Test
+    public void turnAroundSettlesWithinBudget() {
+        for (int run = 0; run < 3; run++) {
+            controller.turn(180);
+            MotionController.Result done = runGoal();
+            assertTrue(done.toString(), done.settleNanos >= 0 && done.settleNanos <= TURN_SETTLE_BUDGET_NANOS);
+            assertTrue(done.toString(), done.overshoot <= TURN_OVERSHOOT_LIMIT);
+        }
+    }
+
+    @Test
+    public void moveForwardSettlesWithinBudget() {
+        for (int run = 0; run < 3; run++) {
+            double before = alongHeading();
+            controller.move(3, 0, 0);
+            MotionController.Result done = runGoal();
+            assertTrue(done.toString(), done.settleNanos >= 0 && done.settleNanos <= MOVE_SETTLE_BUDGET_NANOS);
+            assertTrue(done.toString(), done.overshoot <= MOVE_OVERSHOOT_LIMIT);
+            assertEquals(3, alongHeading() - before, 2 * MotionController.DISTANCE_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void openAndClosedLoopMovesGoTheSameWay() {
+        double[] directions = {1, -1};
+        for (double direction : directions) {
+            double before = alongHeading();
+            controller.move(3 * direction, 0, 0);
+            runGoal();
+            double closed = alongHeading() - before;
+
+            before = alongHeading();
+            MotionController.openLoopMove(loop, 4 * direction, 0, 0, VirtualStickLoop.DEFAULT_HOLD_MS);
+            fly(clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(VirtualStickLoop.DEFAULT_HOLD_MS) + COAST_NANOS);
+            double open = alongHeading() - before;
+
+            assertTrue("closed loop moved " + closed + " m", closed * direction > 1);
+            assertTrue("open loop moved " + open + " m", open * direction > 1);
+        }
+        assertFalse(loop.isActive());
+    }
+
+    @Test
+    public void moveWaitsForEnoughSatellites() {
+        DroneState state = new DroneState();
+        drone.getState(state);
+        reportPosition(state.latitude, state.longitude, MotionController.MIN_SATELLITES - 1);
+        fly(clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(controller.hasTelemetry());
+        assertFalse(controller.hasPositionFix());
+        assertFalse(controller.move(3, 0, 0));
+        assertEquals(MotionController.Goal.NONE, controller.getGoal());
+
+        drone.setStateListener(controller);
+        fly(clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(controller.hasPositionFix());
+        assertTrue(controller.move(3, 0, 0));
+        runGoal();
+    }
+
+    @Test
+    public void moveIsAbandonedWhenThePositionFreezes() {
+        DroneState frozen = new DroneState();
+        drone.getState(frozen);
+        reportPosition(frozen.latitude, frozen.longitude, SimulatedDrone.SATELLITE_COUNT);
+        double before = alongHeading();
+        assertTrue(controller.move(3, 0, 0));
+        MotionController.Result done = endGoal();
+        fly(clock.nanoTime() + COAST_NANOS);
+
+        assertFalse(done.toString(), done.completed);
+        assertTrue(done.toString(), done.elapsedNanos <= LOST_FIX_BUDGET_NANOS);
+        assertFalse(done.toString(), Double.isNaN(done.finalError));
+        double flown = alongHeading() - before;
+        assertTrue("flew " + flown + " m", flown < 3 + MotionController.MAX_POSITION_DRIFT);
+        assertFalse(nonFiniteSticks);
+    }
+
+    @Test
+    public void moveIsAbandonedWhenThePositionIsNotANumber() {
+        assertTrue(controller.move(3, 0, 0));
+        fly(clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500));
+        reportPosition(Double.NaN, Double.NaN, SimulatedDrone.SATELLITE_COUNT);
+        MotionController.Result done = endGoal();
+
+        assertFalse(done.toString(), done.completed);
+        assertTrue(done.toString(), done.elapsedNanos <= LOST_FIX_BUDGET_NANOS);
+        assertFalse(done.toString(), Double.isNaN(done.finalError));
+        assertFalse(nonFiniteSticks);
+        assertFalse(controller.hasPositionFix());
+        assertFalse(controller.move(3, 0, 0));
+        //a turn does not need the position
+        controller.turn(90);
+        runGoal();
+        assertFalse(nonFiniteSticks);
+    }
+}
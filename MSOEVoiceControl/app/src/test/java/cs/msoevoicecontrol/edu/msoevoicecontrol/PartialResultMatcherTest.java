@@ -0,0 +1,173 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This feeds the matcher hypotheses the way the recognizer revises them and checks that
+ * every spoken command fires exactly once.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PartialResultMatcherTest {
+
+    private static final File GRAMMAR = new File("src/main/assets/sync/digits.gram");
+
+    private final List<SpokenCommand> commands = new ArrayList<SpokenCommand>();
+    private final List<Boolean> partials = new ArrayList<Boolean>();
+    private final PartialResultMatcher.Listener listener = new PartialResultMatcher.Listener() {
+        @Override
+        public void onCommand(SpokenCommand command, boolean partial, long latencyNanos) {
+            commands.add(command);
+            partials.add(partial);
+        }
+    };
+    private CommandTable table;
+    private PartialResultMatcher matcher;
+    private long now;
+
+    @Before
+    public void setUp() throws IOException {
+        table = CommandTable.compile(GRAMMAR);
+        matcher = new PartialResultMatcher(table, listener, 2, 0, false);
+        now = 1;
+        matcher.onSpeechStart(now);
+    }
+
+    /**
+     * This switches to a matcher set up as keyword spotting uses it
+     */
+    private void spotKeywords() {
+        matcher = new PartialResultMatcher(table, listener, 1, 0, false);
+        matcher.onSpeechStart(++now);
+    }
+
+    private void partial(String hypothesis) {
+        matcher.onPartialResult(hypothesis, ++now);
+    }
+
+    private void result(String hypothesis) {
+        matcher.onFinalResult(hypothesis, ++now);
+    }
+
+    private void assertFired(VoiceCommand... expected) {
+        List<VoiceCommand> actual = new ArrayList<VoiceCommand>();
+        for (SpokenCommand command : commands) {
+            actual.add(command.command);
+        }
+        assertEquals(Arrays.asList(expected), actual);
+    }
+
+    @Test
+    public void firesStablePartialOnce() {
+        partial("up left");
+        partial("up left");
+        assertFired(VoiceCommand.UP);
+        result("up left");
+        assertFired(VoiceCommand.UP, VoiceCommand.LEFT);
+        assertEquals(Arrays.asList(true, false), partials);
+    }
+
+    @Test
+    public void finalInsertsWordBeforeFiredCommand() {
+        partial("up left");
+        partial("up left");
+        assertFired(VoiceCommand.UP);
+        result("down up");
+        assertFired(VoiceCommand.UP, VoiceCommand.DOWN);
+    }
+
+    @Test
+    public void finalDropsFiredCommand() {
+        partial("up left right");
+        partial("up left right");
+        assertFired(VoiceCommand.UP, VoiceCommand.LEFT);
+        result("down left right");
+        assertFired(VoiceCommand.UP, VoiceCommand.LEFT, VoiceCommand.DOWN, VoiceCommand.RIGHT);
+    }
+
+    @Test
+    public void partialInsertsWordBeforeFiredCommand() {
+        partial("up left");
+        partial("up left");
+        partial("down up left");
+        partial("down up left");
+        assertFired(VoiceCommand.UP, VoiceCommand.DOWN);
+        partial("down up left right");
+        partial("down up left right");
+        result("down up left right");
+        assertFired(VoiceCommand.UP, VoiceCommand.DOWN, VoiceCommand.LEFT, VoiceCommand.RIGHT);
+    }
+
+    @Test
+    public void repeatedCommandFiresForEachTime() {
+        partial("up up left");
+        partial("up up left");
+        assertFired(VoiceCommand.UP, VoiceCommand.UP);
+        result("up up up");
+        assertFired(VoiceCommand.UP, VoiceCommand.UP, VoiceCommand.UP);
+    }
+
+    @Test
+    public void revisedAmountFiresAgain() {
+        partial("forward three meters left");
+        partial("forward three meters left");
+        result("forward two meters left");
+        assertEquals(3, commands.size());
+        assertEquals(3.0, commands.get(0).amount, 0);
+        assertEquals(2.0, commands.get(1).amount, 0);
+        assertEquals(VoiceCommand.LEFT, commands.get(2).command);
+    }
+
+    @Test
+    public void spottedMoveWaitsForItsAmount() {
+        spotKeywords();
+        partial("turn around");
+        assertFired(VoiceCommand.REVERSE);
+        partial("turn around forward");
+        assertFired(VoiceCommand.REVERSE);
+        partial("turn around forward three");
+        partial("turn around forward three meters");
+        assertFired(VoiceCommand.REVERSE, VoiceCommand.FORWARD);
+        assertEquals(3.0, commands.get(1).amount, 0);
+        partial("turn around forward three meters right");
+        partial("turn around forward three meters right left");
+        assertFired(VoiceCommand.REVERSE, VoiceCommand.FORWARD, VoiceCommand.RIGHT);
+        assertFalse(commands.get(2).hasAmount());
+    }
+
+    @Test
+    public void pauseFiresHeldMove() {
+        spotKeywords();
+        partial("turn around left");
+        assertFired(VoiceCommand.REVERSE);
+        matcher.onSpeechPause(++now);
+        assertFired(VoiceCommand.REVERSE, VoiceCommand.LEFT);
+        //a number after the pause does not turn the left that already fired again
+        partial("turn around left ninety");
+        matcher.onSpeechPause(++now);
+        assertFired(VoiceCommand.REVERSE, VoiceCommand.LEFT);
+        partial("turn around left ninety up");
+        partial("turn around left ninety up down");
+        assertFired(VoiceCommand.REVERSE, VoiceCommand.LEFT, VoiceCommand.UP);
+        result("turn around left ninety up down");
+        assertFired(VoiceCommand.REVERSE, VoiceCommand.LEFT, VoiceCommand.UP, VoiceCommand.DOWN);
+    }
+
+    @Test
+    public void nextUtteranceStartsOver() {
+        partial("up left");
+        partial("up left");
+        result("up");
+        matcher.onSpeechStart(++now);
+        result("up");
+        assertFired(VoiceCommand.UP, VoiceCommand.UP);
+    }
+}
@@ -0,0 +1,50 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This checks which units and amounts each command accepts and how its amount is converted.
+ */
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpokenCommandTest {
+
+    @Test
+    public void turnsTakeDegreesOnly() {
+        assertTrue(new SpokenCommand(VoiceCommand.LEFT, 90, SpokenCommand.Unit.DEGREES).unitFits());
+        assertTrue(new SpokenCommand(VoiceCommand.RIGHT, 90, SpokenCommand.Unit.NONE).unitFits());
+        assertFalse(new SpokenCommand(VoiceCommand.LEFT, 10, SpokenCommand.Unit.FEET).unitFits());
+        assertFalse(new SpokenCommand(VoiceCommand.RIGHT, 2, SpokenCommand.Unit.METERS).unitFits());
+    }
+
+    @Test
+    public void movesTakeDistancesOnly() {
+        assertTrue(new SpokenCommand(VoiceCommand.FORWARD, 3, SpokenCommand.Unit.METERS).unitFits());
+        assertTrue(new SpokenCommand(VoiceCommand.UP, 10, SpokenCommand.Unit.FEET).unitFits());
+        assertTrue(new SpokenCommand(VoiceCommand.BACK, 2, SpokenCommand.Unit.NONE).unitFits());
+        assertFalse(new SpokenCommand(VoiceCommand.FORWARD, 90, SpokenCommand.Unit.DEGREES).unitFits());
+        assertTrue(SpokenCommand.of(VoiceCommand.DOWN).unitFits());
+    }
+
+    @Test
+    public void convertsAmounts() {
+        assertEquals(3.048, new SpokenCommand(VoiceCommand.UP, 10, SpokenCommand.Unit.FEET).meters(1), 1e-9);
+        assertEquals(2, new SpokenCommand(VoiceCommand.BACK, 2, SpokenCommand.Unit.NONE).meters(1), 0);
+        assertEquals(1, SpokenCommand.of(VoiceCommand.FORWARD).meters(1), 0);
+        assertEquals(90, new SpokenCommand(VoiceCommand.LEFT, 90, SpokenCommand.Unit.DEGREES).degrees(10), 0);
+    }
+
+    @Test
+    public void amountsAreLimited() {
+        assertTrue(new SpokenCommand(VoiceCommand.FORWARD, 5, SpokenCommand.Unit.METERS).amountFits());
+        assertTrue(new SpokenCommand(VoiceCommand.BACK, 15, SpokenCommand.Unit.FEET).amountFits());
+        assertFalse(new SpokenCommand(VoiceCommand.FORWARD, 900, SpokenCommand.Unit.FEET).amountFits());
+        assertFalse(new SpokenCommand(VoiceCommand.UP, 20, SpokenCommand.Unit.NONE).amountFits());
+        assertTrue(new SpokenCommand(VoiceCommand.LEFT, 360, SpokenCommand.Unit.DEGREES).amountFits());
+        assertFalse(new SpokenCommand(VoiceCommand.LEFT, 900, SpokenCommand.Unit.NONE).amountFits());
+        assertFalse(new SpokenCommand(VoiceCommand.RIGHT, 999.9, SpokenCommand.Unit.DEGREES).amountFits());
+        assertTrue(SpokenCommand.of(VoiceCommand.FORWARD).amountFits());
+    }
+}
@@ -0,0 +1,223 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This feeds an Annex B stream laid out like the aircraft's (SPS, PPS and IDR, then P
+ * slices) through the queue in buffers that do not follow NAL units, with a sink that
+ * decodes only when the test lets it, and checks what the decoder is given.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VideoIngestQueueTest {
+
+    private static final int CHUNK_SIZE = 700;
+    private static final int P_SLICES = 5;
+    //where each NAL unit of a GOP starts
+    private static final int PPS_START = 17;
+    private static final int IDR_START = PPS_START + 9;
+    private static final int P_START = IDR_START + 1505;
+
+    /**
+     * A decoder that takes one buffer per permit and keeps everything it is given
+     */
+    private static class SlowSink implements VideoIngestQueue.Sink {
+        final Semaphore permits = new Semaphore(0);
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        volatile boolean blocked = true;
+
+        @Override
+        public void decode(byte[] data, int size) {
+            if (blocked) {
+                permits.acquireUninterruptibly();
+            }
+            synchronized (decoded) {
+                decoded.write(data, 0, size);
+            }
+        }
+
+        byte[] bytes() {
+            synchronized (decoded) {
+                return decoded.toByteArray();
+            }
+        }
+    }
+
+    private SlowSink sink;
+    private VideoIngestQueue queue;
+
+    @Before
+    public void setUp() {
+        sink = new SlowSink();
+        queue = new VideoIngestQueue(2, sink);
+        queue.start();
+    }
+
+    @After
+    public void tearDown() {
+        sink.blocked = false;
+        sink.permits.release(100);
+        queue.stop();
+    }
+
+    private void restart() {
+        tearDown();
+        setUp();
+    }
+
+    /**
+     * @return one group of pictures: SPS, PPS and an IDR slice, then P slices, each behind a
+     *         four byte start code
+     */
+    private static byte[] gop(int seed) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        nal(stream, 0x67, 12, seed);
+        nal(stream, 0x68, 4, seed);
+        nal(stream, 0x65, 1500, seed);
+        for (int i = 0; i < P_SLICES; i++) {
+            nal(stream, 0x41, 400, seed + i);
+        }
+        return stream.toByteArray();
+    }
+
+    private static void nal(ByteArrayOutputStream stream, int header, int length, int seed) {
+        stream.write(0);
+        stream.write(0);
+        stream.write(0);
+        stream.write(1);
+        stream.write(header);
+        for (int i = 0; i < length; i++) {
+            //emulation prevention keeps start codes out of the payload, so never two zeros in a row
+            stream.write(0x10 + (i * 31 + seed) % 0xe0);
+        }
+    }
+
+    private static List<byte[]> chunks(byte[] stream, int... cuts) {
+        List<byte[]> chunks = new ArrayList<byte[]>();
+        int start = 0;
+        for (int cut : cuts) {
+            chunks.add(Arrays.copyOfRange(stream, start, cut));
+            start = cut;
+        }
+        for (; start < stream.length; start += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(stream, start, Math.min(stream.length, start + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private void offerAll(List<byte[]> chunks) throws InterruptedException {
+        for (byte[] chunk : chunks) {
+            queue.offer(chunk, chunk.length);
+            awaitDrained();
+        }
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.getDepth() > 0) {
+            assertTrue("the decode thread did not drain the queue", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            stream.write(part, 0, part.length);
+        }
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void findsSpsAndIdrStartCodes() {
+        byte[] stream = gop(1);
+        assertEquals(0, VideoIngestQueue.findKeyframe(stream, stream.length));
+        byte[] withoutSps = Arrays.copyOfRange(stream, PPS_START, stream.length);
+        assertEquals(IDR_START - PPS_START, VideoIngestQueue.findKeyframe(withoutSps, withoutSps.length));
+        byte[] pSlices = Arrays.copyOfRange(stream, P_START, stream.length);
+        assertEquals(-1, VideoIngestQueue.findKeyframe(pSlices, pSlices.length));
+        //a start code cut off at the end of the data is not found
+        assertEquals(-1, VideoIngestQueue.findKeyframe(stream, 4));
+    }
+
+    @Test
+    public void waitsForKeyframeAtStart() throws InterruptedException {
+        sink.blocked = false;
+        byte[] first = gop(1);
+        byte[] second = gop(2);
+        byte[] pSlices = Arrays.copyOfRange(first, P_START, first.length);
+        offerAll(chunks(pSlices));
+        offerAll(chunks(second));
+        assertArrayEquals(second, sink.bytes());
+        assertEquals(pSlices.length, queue.getDroppedBytes());
+    }
+
+    @Test
+    public void dropsRestOfGopWhenFull() throws InterruptedException {
+        byte[] first = gop(1);
+        byte[] second = gop(2);
+        List<byte[]> firstChunks = chunks(first);
+
+        //the sink holds the first buffer and the ring has room for one more
+        assertTrue(queue.offer(firstChunks.get(0), firstChunks.get(0).length));
+        assertTrue(queue.offer(firstChunks.get(1), firstChunks.get(1).length));
+        assertFalse(queue.offer(firstChunks.get(2), firstChunks.get(2).length));
+
+        sink.blocked = false;
+        sink.permits.release();
+        awaitDrained();
+        //room again, but the rest of the GOP cannot be decoded without what was dropped
+        offerAll(firstChunks.subList(3, firstChunks.size()));
+        assertEquals(2, queue.getDecodedFrames());
+
+        offerAll(chunks(second));
+        assertArrayEquals(concat(firstChunks.get(0), firstChunks.get(1), second), sink.bytes());
+        long dropped = first.length - firstChunks.get(0).length - firstChunks.get(1).length;
+        assertEquals(dropped, queue.getDroppedBytes());
+        assertEquals(firstChunks.size() - 2, queue.getDroppedFrames());
+        assertEquals(firstChunks.get(0).length + firstChunks.get(1).length + second.length, queue.getCopiedBytes());
+    }
+
+    @Test
+    public void resumesAtStartCodeSplitAcrossBuffers() throws InterruptedException {
+        sink.blocked = false;
+        byte[] first = gop(1);
+        byte[] second = gop(2);
+        byte[] third = gop(3);
+        byte[] stream = concat(first, second, third);
+        for (int split = 1; split <= 5; split++) {
+            restart();
+            sink.blocked = false;
+            //cut the stream inside the start code of the second SPS, or just after its header
+            int sps = first.length;
+            offerAll(chunks(Arrays.copyOfRange(stream, 0, 800)));
+            queue.dropUntilKeyframe(0);
+            offerAll(chunks(Arrays.copyOfRange(stream, 800, stream.length), sps + split - 800));
+            assertArrayEquals("split after " + split + " bytes",
+                    concat(Arrays.copyOfRange(first, 0, 800), second, third), sink.bytes());
+        }
+    }
+
+    @Test
+    public void resumesAtSplitIdrWithoutSps() throws InterruptedException {
+        sink.blocked = false;
+        byte[] first = gop(1);
+        byte[] second = gop(2);
+        byte[] pSlices = Arrays.copyOfRange(first, P_START, first.length);
+        byte[] idr = Arrays.copyOfRange(second, IDR_START, second.length);
+        offerAll(chunks(concat(pSlices, idr), pSlices.length + 2));
+        assertArrayEquals(idr, sink.bytes());
+    }
+}
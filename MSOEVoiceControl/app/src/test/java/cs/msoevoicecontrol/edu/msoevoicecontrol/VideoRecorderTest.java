@@ -0,0 +1,201 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This records an Annex B stream laid out like the aircraft's through {@link VideoRecorder}
+ * in buffers that cut the SPS and IDR start codes at every byte, and checks that the .h264
+ * file holds the stream from its first keyframe and that the .idx file has the offset of
+ * every SPS and IDR NAL unit in it.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VideoRecorderTest {
+
+    private static final int CHUNK_SIZE = 700;
+    private static final int P_SLICES = 5;
+    //where the IDR slice of a GOP starts
+    private static final int IDR_START = 17 + 9;
+
+    private File base;
+
+    @Before
+    public void setUp() throws IOException {
+        base = File.createTempFile("video", "");
+    }
+
+    @After
+    public void tearDown() {
+        base.delete();
+        new File(base.getPath() + VideoRecorder.VIDEO_EXTENSION).delete();
+        new File(base.getPath() + VideoRecorder.INDEX_EXTENSION).delete();
+    }
+
+    /**
+     * @return one group of pictures: SPS, PPS and an IDR slice, then P slices, each behind a
+     *         four byte start code
+     */
+    private static byte[] gop(int seed) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        nal(stream, 0x67, 12, seed);
+        nal(stream, 0x68, 4, seed);
+        nal(stream, 0x65, 1500, seed);
+        for (int i = 0; i < P_SLICES; i++) {
+            nal(stream, 0x41, 400, seed + i);
+        }
+        return stream.toByteArray();
+    }
+
+    private static void nal(ByteArrayOutputStream stream, int header, int length, int seed) {
+        stream.write(0);
+        stream.write(0);
+        stream.write(0);
+        stream.write(1);
+        stream.write(header);
+        for (int i = 0; i < length; i++) {
+            //emulation prevention keeps start codes out of the payload, so never two zeros in a row
+            stream.write(0x10 + (i * 31 + seed) % 0xe0);
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            stream.write(part, 0, part.length);
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * This cuts the stream at the given offsets and into CHUNK_SIZE buffers after the last
+     */
+    private static List<byte[]> chunks(byte[] stream, int... cuts) {
+        List<byte[]> chunks = new ArrayList<byte[]>();
+        int start = 0;
+        for (int cut : cuts) {
+            chunks.add(Arrays.copyOfRange(stream, start, cut));
+            start = cut;
+        }
+        for (; start < stream.length; start += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(stream, start, Math.min(stream.length, start + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the offset of every SPS and IDR start code in the stream
+     */
+    private static List<Long> keyframes(byte[] stream) {
+        List<Long> offsets = new ArrayList<Long>();
+        for (int i = 0; i + 4 < stream.length; i++) {
+            if (stream[i] == 0 && stream[i + 1] == 0 && stream[i + 2] == 0 && stream[i + 3] == 1
+                    && (stream[i + 4] == 0x67 || stream[i + 4] == 0x65)) {
+                offsets.add((long) i);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * This records the buffers, each stamped with its index, and stops the recorder
+     */
+    private VideoRecorder record(List<byte[]> chunks) throws IOException {
+        //enough buffers that a slow disk does not drop any of them
+        VideoRecorder recorder = new VideoRecorder(chunks.size(), 64 * 1024);
+        recorder.start(base);
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            recorder.record(chunk, chunk.length, i);
+        }
+        recorder.stop();
+        assertEquals(null, recorder.getWriteError());
+        return recorder;
+    }
+
+    private byte[] video() throws IOException {
+        return Files.readAllBytes(new File(base.getPath() + VideoRecorder.VIDEO_EXTENSION).toPath());
+    }
+
+    /**
+     * @return the file offsets in the index, checking its magic and that the timestamps only
+     *         go forwards
+     */
+    private List<Long> index() throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(base.getPath() + VideoRecorder.INDEX_EXTENSION));
+        try {
+            byte[] magic = new byte[8];
+            in.readFully(magic);
+            assertArrayEquals("H264IDX1".getBytes("US-ASCII"), magic);
+            List<Long> offsets = new ArrayList<Long>();
+            long lastTimestamp = 0;
+            while (true) {
+                long offset;
+                try {
+                    offset = in.readLong();
+                } catch (EOFException end) {
+                    return offsets;
+                }
+                long timestamp = in.readLong();
+                assertTrue(timestamp >= lastTimestamp);
+                lastTimestamp = timestamp;
+                offsets.add(offset);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void indexesEveryKeyframeWhereverTheBufferIsCut() throws IOException {
+        byte[] first = gop(1);
+        byte[] stream = concat(first, gop(2), gop(3));
+        for (int split = 1; split <= 5; split++) {
+            //inside the start codes of the second SPS and the second IDR, or just after their headers
+            int sps = first.length + split;
+            int idr = first.length + IDR_START + split;
+            VideoRecorder recorder = record(chunks(stream, 700, sps, idr));
+            assertArrayEquals("split after " + split + " bytes", stream, video());
+            assertEquals("split after " + split + " bytes", keyframes(stream), index());
+            assertEquals(6, recorder.getKeyframes());
+            assertEquals(0, recorder.getDroppedWrites());
+        }
+    }
+
+    @Test
+    public void indexesEveryKeyframeInOneBuffer() throws IOException {
+        byte[] stream = concat(gop(1), gop(2), gop(3));
+        VideoRecorder recorder = record(chunks(stream, stream.length));
+        assertArrayEquals(stream, video());
+        assertEquals(keyframes(stream), index());
+        assertEquals(1, recorder.getRecordedChunks());
+    }
+
+    @Test
+    public void startsAtKeyframeWhoseStartCodeBeganInDroppedData() throws IOException {
+        byte[] first = gop(1);
+        byte[] stream = concat(Arrays.copyOfRange(first, IDR_START + 100, first.length), gop(2), gop(3));
+        int sps = first.length - IDR_START - 100;
+        for (int split = 1; split <= 4; split++) {
+            VideoRecorder recorder = record(chunks(stream, sps - 50, sps + split));
+            byte[] expected = Arrays.copyOfRange(stream, sps, stream.length);
+            assertArrayEquals("split after " + split + " bytes", expected, video());
+            assertEquals("split after " + split + " bytes", keyframes(expected), index());
+            assertEquals(2, recorder.getDroppedWrites());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This drives the virtual stick loop by hand on a virtual clock against a stand-in flight
+ * controller, and once on its own thread to check how it stops.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualStickLoopTest {
+
+    private static final int RATE_HZ = 20;
+    private static final long HOLD_MS = 1000;
+    private static final long DECAY_MS = 500;
+    private static final long PERIOD = TimeUnit.SECONDS.toNanos(1) / RATE_HZ;
+
+    /**
+     * A stand-in flight controller that keeps the last packet without allocating
+     */
+    private static class RecordingOutput implements VirtualStickLoop.Output {
+        volatile float pitch;
+        volatile float roll;
+        volatile float yaw;
+        volatile float throttle;
+        volatile int packets;
+        volatile Thread lastThread;
+        //set while a send is running, to catch two threads writing the packet at once
+        volatile boolean sending;
+        volatile boolean overlapped;
+
+        @Override
+        public void send(float pitch, float roll, float yaw, float throttle) {
+            if (sending) {
+                overlapped = true;
+            }
+            sending = true;
+            this.pitch = pitch;
+            this.roll = roll;
+            this.yaw = yaw;
+            this.throttle = throttle;
+            lastThread = Thread.currentThread();
+            packets++;
+            sending = false;
+        }
+    }
+
+    private VirtualClock clock;
+    private RecordingOutput output;
+    private VirtualStickLoop loop;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock(TimeUnit.SECONDS.toNanos(1));
+        output = new RecordingOutput();
+        loop = new VirtualStickLoop(output, clock, RATE_HZ, HOLD_MS, DECAY_MS);
+    }
+
+    private void step() {
+        clock.advance(PERIOD);
+        loop.tick(clock.nanoTime());
+    }
+
+    @Test
+    public void holdsThenDecaysToZero() {
+        loop.command(0.5f, -2f, 10f, 1f);
+        loop.tick(clock.nanoTime());
+        assertEquals(-2f, output.roll, 0f);
+
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(HOLD_MS) - PERIOD);
+        loop.tick(clock.nanoTime());
+        assertEquals(0.5f, output.pitch, 0f);
+        assertEquals(10f, output.yaw, 0f);
+
+        clock.advance(PERIOD + TimeUnit.MILLISECONDS.toNanos(DECAY_MS) / 2);
+        loop.tick(clock.nanoTime());
+        assertEquals(5f, output.yaw, 0.01f);
+        assertEquals(0.5f, output.throttle, 0.01f);
+        assertTrue(loop.isActive());
+
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(DECAY_MS));
+        loop.tick(clock.nanoTime());
+        assertEquals(0f, output.yaw, 0f);
+        assertFalse(loop.isActive());
+    }
+
+    @Test
+    public void releaseSendsZeroOnNextTick() {
+        loop.command(1f, 1f, 1f, 1f);
+        step();
+        loop.release();
+        step();
+        assertEquals(0f, output.pitch, 0f);
+        assertEquals(0f, output.roll, 0f);
+        assertEquals(0f, output.yaw, 0f);
+        assertEquals(0f, output.throttle, 0f);
+    }
+
+    @Test
+    public void measuresJitter() {
+        for (int i = 0; i < 10; i++) {
+            step();
+        }
+        assertEquals(10, loop.getTickCount());
+        assertEquals(0, loop.getMaxJitterNanos());
+        assertEquals(0, loop.getMeanJitterNanos());
+
+        //one late tick is followed by an early one
+        long late = TimeUnit.MILLISECONDS.toNanos(8);
+        clock.advance(PERIOD + late);
+        loop.tick(clock.nanoTime());
+        clock.advance(PERIOD - late);
+        loop.tick(clock.nanoTime());
+        assertEquals(late, loop.getMaxJitterNanos());
+        assertEquals(2 * late / 11, loop.getMeanJitterNanos());
+    }
+
+    @Test
+    public void ticksDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        loop.command(1f, 0, 0, 0);
+        //warm up so class loading and the first compilation are not counted
+        for (int i = 0; i < 20000; i++) {
+            step();
+            if (i % 25 == 0) {
+                loop.command(1f, 0.5f, 0, 0);
+            }
+        }
+
+        int ticks = 10000;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ticks; i++) {
+            step();
+            if (i % 25 == 0) {
+                loop.command(1f, 0.5f, 0, 0);
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        //getThreadAllocatedBytes may allocate once itself, but nothing per tick
+        assertTrue(allocated + " bytes over " + ticks + " ticks", allocated < ticks);
+    }
+
+    @Test
+    public void stopSendsZeroFromTheLoopThread() throws InterruptedException {
+        RecordingOutput output = new RecordingOutput();
+        VirtualStickLoop loop = new VirtualStickLoop(output, 200, 10000, 0);
+        loop.start();
+        loop.command(1f, 1f, 1f, 1f);
+        Thread.sleep(50);
+        assertEquals(1f, output.pitch, 0f);
+
+        loop.stop();
+        int packets = output.packets;
+        assertEquals(0f, output.pitch, 0f);
+        assertEquals(0f, output.roll, 0f);
+        assertEquals(0f, output.yaw, 0f);
+        assertEquals(0f, output.throttle, 0f);
+        assertNotSame(Thread.currentThread(), output.lastThread);
+        assertFalse(output.overlapped);
+
+        Thread.sleep(50);
+        assertEquals(packets, output.packets);
+    }
+}
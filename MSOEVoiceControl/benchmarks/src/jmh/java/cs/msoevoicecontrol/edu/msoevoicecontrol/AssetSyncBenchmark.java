@@ -0,0 +1,182 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark syncs the recognizer assets with an {@link AssetStore}, reading them from
+ * the app's asset directory (benchmarks.assets) instead of an APK.  A cold start installs
+ * every asset into an empty directory; a warm start finds the installed manifest up to
+ * date and only compares the two version lines.  One changed asset is a sync after an
+ * update that changed a single file.  Each sync checks how many assets it copied, so a
+ * run that did not sync what its name says fails instead of being timed.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetSyncBenchmark {
+
+    /**
+     * Assets read from a directory laid out like the APK's assets
+     */
+    static final class DirectorySource implements AssetStore.Source {
+        private final File root;
+
+        DirectorySource(File root) {
+            this.root = root;
+        }
+
+        @Override
+        public InputStream open(String path) throws IOException {
+            return new FileInputStream(new File(root, path));
+        }
+
+        @Override
+        public void copyTo(String path, FileChannel target) throws IOException {
+            FileChannel in = new FileInputStream(new File(root, path)).getChannel();
+            try {
+                long position = 0;
+                long size = in.size();
+                while (position < size) {
+                    long sent = in.transferTo(position, size - position, target);
+                    if (sent <= 0) {
+                        throw new IOException("Short read copying " + path);
+                    }
+                    position += sent;
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private DirectorySource source;
+    private int assetCount;
+    private String lastPath;
+    private File scratch;
+    private File warmDir;
+
+    /**
+     * An empty directory for every cold start
+     */
+    @State(Scope.Thread)
+    public static class Cold {
+        File dir;
+        private int run;
+
+        @Setup(Level.Invocation)
+        public void prepare(AssetSyncBenchmark benchmark) {
+            dir = new File(benchmark.scratch, "cold-" + run++);
+        }
+
+        @TearDown(Level.Invocation)
+        public void cleanUp() {
+            delete(dir);
+        }
+    }
+
+    /**
+     * An installed copy whose manifest is put back before every sync to the one from
+     * before an update that changed the last asset
+     */
+    @State(Scope.Thread)
+    public static class Changed {
+        File dir;
+        private File installed;
+        private byte[] stale;
+
+        @Setup(Level.Trial)
+        public void setup(AssetSyncBenchmark benchmark) throws IOException {
+            dir = new File(benchmark.scratch, "changed");
+            expectCopied(new AssetStore(benchmark.source, dir), benchmark.assetCount);
+            installed = new File(dir, ".manifest");
+            StringBuilder manifest = new StringBuilder("# stale\n");
+            for (String line : Files.readAllLines(installed.toPath(), StandardCharsets.UTF_8)) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                //a different hash for the last asset, which is then copied again
+                manifest.append(line.endsWith(" " + benchmark.lastPath) ? "0" + line.substring(1) : line).append('\n');
+            }
+            stale = manifest.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            Files.write(installed.toPath(), stale);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File assets = new File(System.getProperty("benchmarks.assets", "../app/src/main/assets"));
+        source = new DirectorySource(assets);
+        for (String line : Files.readAllLines(new File(assets, AssetStore.MANIFEST_NAME).toPath(), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                assetCount++;
+                lastPath = line.split(" ", 3)[2];
+            }
+        }
+        scratch = Files.createTempDirectory("assets").toFile();
+        warmDir = new File(scratch, "warm");
+        expectCopied(new AssetStore(source, warmDir), assetCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delete(scratch);
+    }
+
+    @Benchmark
+    public File coldStart(Cold cold) throws IOException {
+        return expectCopied(new AssetStore(source, cold.dir), assetCount);
+    }
+
+    @Benchmark
+    public File warmStart() throws IOException {
+        return expectCopied(new AssetStore(source, warmDir), 0);
+    }
+
+    @Benchmark
+    public File oneChangedAsset(Changed changed) throws IOException {
+        return expectCopied(new AssetStore(source, changed.dir), 1);
+    }
+
+    /**
+     * This syncs and checks how many assets were copied, not counting the manifest
+     */
+    private static File expectCopied(AssetStore store, int files) throws IOException {
+        File root = store.sync();
+        long copied = store.getCopiedFiles() == 0 ? 0 : store.getCopiedFiles() - 1;
+        if (copied != files) {
+            throw new IllegalStateException("copied " + copied + " assets, expected " + files);
+        }
+        return root;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,62 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This class runs the JMH suites twice: once in throughput mode for ops/s and once in
+ * sample mode for the latency percentiles.  Both passes run with the GC profiler, which
+ * adds the allocation rate per operation, and save their results as JSON.
+ *
+ * Any arguments are passed to JMH, so a regex selects suites the same way it does for
+ * the JMH command line.
+ */
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        File results = new File(System.getProperty("benchmarks.results", "build/reports/jmh"));
+        if (!results.isDirectory() && !results.mkdirs()) {
+            throw new RunnerException("cannot create " + results);
+        }
+        String run = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        run(commandLine, Mode.Throughput, TimeUnit.SECONDS, new File(results, run + "-throughput.json"));
+        run(commandLine, Mode.SampleTime, TimeUnit.MICROSECONDS, new File(results, run + "-sample.json"));
+    }
+
+    private static void run(CommandLineOptions commandLine, Mode mode, TimeUnit unit, File result)
+            throws RunnerException {
+        List<String> jvmArgs = new ArrayList<String>();
+        jvmArgs.add("-Dbenchmarks.grammar=" + System.getProperty("benchmarks.grammar",
+                "../app/src/main/assets/sync/digits.gram"));
+        jvmArgs.add("-Dbenchmarks.assets=" + System.getProperty("benchmarks.assets", "../app/src/main/assets"));
+        if (System.getProperty("benchmarks.rotorNoise") != null) {
+            jvmArgs.add("-Dbenchmarks.rotorNoise=" + System.getProperty("benchmarks.rotorNoise"));
+        }
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .mode(mode)
+                .timeUnit(unit)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend(jvmArgs.toArray(new String[jvmArgs.size()]))
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build();
+        new Runner(options).run();
+    }
+}
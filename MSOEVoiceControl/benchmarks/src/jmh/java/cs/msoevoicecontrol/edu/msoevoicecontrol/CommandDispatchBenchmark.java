@@ -0,0 +1,132 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark compares turning a final hypothesis into a command with the chain of
+ * string comparisons the activity used to run in onResult against the compiled
+ * {@link CommandTable}, and parsing hypotheses with spoken amounts against splitting them
+ * into words and looking each one up, which is what the table did before it read amounts.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+
+    //every phrase in digits.gram, in the order the old chain tested them
+    private static final String[] PHRASES = {
+            "up", "fly up", "down", "fly down", "left", "turn left", "right", "turn right",
+            "forward", "move forward", "back", "backward", "move backward", "reverse",
+            "turn around", "finish", "land"
+    };
+
+    private static final String[] HYPOTHESES = {
+            "move forward turn left", "fly up", "turn around move forward fly down",
+            "backward", "turn right turn right land", "move forward three meters",
+            "turn left ninety degrees fly up one point five", "move backward twelve feet land",
+            "turn right one hundred and eighty degrees forward two"
+    };
+
+    private CommandTable table;
+    private final CommandTable.Parsed commands = new CommandTable.Parsed();
+    private final Map<String, Integer> words = new HashMap<>();
+    private int next;
+    private int nextHypothesis;
+
+    @Setup
+    public void setup() throws IOException {
+        table = CommandTable.compile(new File(System.getProperty("benchmarks.grammar",
+                "../app/src/main/assets/sync/digits.gram")));
+        for (String hypothesis : HYPOTHESES) {
+            for (String word : hypothesis.split(" ")) {
+                if (!words.containsKey(word)) {
+                    words.put(word, words.size());
+                }
+            }
+        }
+
+        table.parse("turn right one hundred and eighty degrees forward two", commands);
+        if (commands.size() != 2
+                || !commands.matches(0, new SpokenCommand(VoiceCommand.RIGHT, 180, SpokenCommand.Unit.DEGREES))
+                || !commands.matches(1, new SpokenCommand(VoiceCommand.FORWARD, 2, SpokenCommand.Unit.NONE))) {
+            throw new IllegalStateException("parsed " + commands.size() + " commands, first " + commands.get(0));
+        }
+    }
+
+    private String nextHypothesis() {
+        String hypothesis = HYPOTHESES[nextHypothesis];
+        nextHypothesis = nextHypothesis + 1 == HYPOTHESES.length ? 0 : nextHypothesis + 1;
+        return hypothesis;
+    }
+
+    private String nextPhrase() {
+        String phrase = PHRASES[next];
+        next = next + 1 == PHRASES.length ? 0 : next + 1;
+        return phrase;
+    }
+
+    @Benchmark
+    public VoiceCommand equalsChain() {
+        return chain(nextPhrase());
+    }
+
+    @Benchmark
+    public VoiceCommand tableLookup() {
+        return table.lookup(nextPhrase());
+    }
+
+    @Benchmark
+    public int tableParse() {
+        return table.parse(nextHypothesis(), commands);
+    }
+
+    /**
+     * Only the tokenizing the table used to do: a regex split and a map lookup per word
+     */
+    @Benchmark
+    public int splitTokens() {
+        int sum = 0;
+        for (String word : nextHypothesis().trim().split("\\s+")) {
+            sum += words.get(word);
+        }
+        return sum;
+    }
+
+    /**
+     * The dispatch from the original onResult with the stick calls replaced by the command
+     * they sent
+     */
+    private static VoiceCommand chain(String text) {
+        if (text.equals("backward"))
+            text = "back";
+        if (text.equals("finish") || text.equals("Land") || text.equals("land"))
+            return VoiceCommand.FINISH;
+        if (text.equals("up") || text.equals("fly up"))
+            return VoiceCommand.UP;
+        else if (text.equals("down") || text.equals("fly down"))
+            return VoiceCommand.DOWN;
+        else if (text.equals("left") || text.equals("turn left"))
+            return VoiceCommand.LEFT;
+        else if (text.equals("right") || text.equals("turn right"))
+            return VoiceCommand.RIGHT;
+        else if (text.equals("forward") || text.equals("move forward"))
+            return VoiceCommand.FORWARD;
+        else if (text.equals("back") || text.equals("move backward"))
+            return VoiceCommand.BACK;
+        else if (text.equals("reverse") || text.equals("turn around"))
+            return VoiceCommand.REVERSE;
+        return null;
+    }
+}
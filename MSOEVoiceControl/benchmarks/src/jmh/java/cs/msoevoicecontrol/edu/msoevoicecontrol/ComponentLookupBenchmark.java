@@ -0,0 +1,101 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark reads the flight controller from many threads at once, through
+ * {@link FPVApplication#getComponents()} as {@link ModuleVerificationUtil} does, and through
+ * the static synchronized getters FPVApplication used to have.  Both read the same product
+ * from DJISDKManager; only the DJI and Android classes are stand-ins (benchmarks/src/stubs),
+ * since the real ones do not run on a desktop JVM.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dji.sdk.base.BaseProduct;
+import dji.sdk.flightcontroller.FlightController;
+import dji.sdk.products.Aircraft;
+import dji.sdk.sdkmanager.DJISDKManager;
+
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ComponentLookupBenchmark {
+
+    /**
+     * The getters as FPVApplication had them, and ModuleVerificationUtil.getFlightController
+     * over them
+     */
+    static final class SynchronizedGetters {
+        private static BaseProduct product;
+
+        static synchronized Aircraft getAircraftInstance() {
+            if (!isAircraftConnected()) {
+                return null;
+            }
+            return (Aircraft) getProductInstance();
+        }
+
+        static synchronized BaseProduct getProductInstance() {
+            if (product == null) {
+                product = DJISDKManager.getInstance().getProduct();
+            }
+            return product;
+        }
+
+        static boolean isAircraftConnected() {
+            return getProductInstance() != null && getProductInstance() instanceof Aircraft;
+        }
+
+        static FlightController getFlightController() {
+            Aircraft aircraft = getAircraftInstance();
+            if (aircraft != null) {
+                return aircraft.getFlightController();
+            }
+            return null;
+        }
+    }
+
+    private Aircraft aircraft;
+
+    @Setup(Level.Trial)
+    public void connect() {
+        aircraft = new Aircraft();
+        DJISDKManager.getInstance().setProduct(aircraft);
+        if (ModuleVerificationUtil.getFlightController() != aircraft.getFlightController()
+                || SynchronizedGetters.getFlightController() != aircraft.getFlightController()) {
+            throw new IllegalStateException("the flight controller was not found through the SDK");
+        }
+    }
+
+    @Benchmark
+    public FlightController synchronizedGetters() {
+        return SynchronizedGetters.getFlightController();
+    }
+
+    @Benchmark
+    public FlightController volatileSnapshot() {
+        return ModuleVerificationUtil.getFlightController();
+    }
+
+    @Benchmark
+    public boolean capabilityCheck() {
+        return ModuleVerificationUtil.isCompassAvailable();
+    }
+
+    /**
+     * What each product, component or connectivity change costs to publish
+     */
+    @Benchmark
+    @Threads(1)
+    public Components rebuildSnapshot() {
+        return Components.of(aircraft);
+    }
+}
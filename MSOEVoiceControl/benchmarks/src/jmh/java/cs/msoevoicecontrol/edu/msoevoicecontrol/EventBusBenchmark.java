@@ -0,0 +1,145 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark measures the cost of publishing on the {@link EventBus} and the time
+ * from publish until a subscriber on another thread has the event.  The single worker
+ * thread stands in for the UI thread's Looper, and posting a new Runnable to it per event
+ * is the baseline for a Handler post.  The Intent broadcast and 500 ms debounce the bus
+ * replaces need Android to run, so they are not measured here; the debounce alone put a
+ * 500 ms floor under every connection change.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBenchmark {
+
+    //how many events each burst publishes, as the SDK does when a product connects
+    private static final int BURST = 8;
+
+    private final ConnectionEvent event = new ConnectionEvent(true, "Spark");
+    private final AtomicLong received = new AtomicLong();
+    private final EventBus.Subscriber<Object> counter = new EventBus.Subscriber<Object>() {
+        @Override
+        public void onEvent(Object event) {
+            received.incrementAndGet();
+        }
+    };
+    private final Runnable count = new Runnable() {
+        @Override
+        public void run() {
+            received.incrementAndGet();
+        }
+    };
+
+    private ExecutorService looper;
+    private EventBus directBus;
+    private EventBus queuedBus;
+    private EventBus latestBus;
+    private EventBus.Subscription latest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        looper = Executors.newSingleThreadExecutor();
+        directBus = new EventBus();
+        directBus.subscribe(ConnectionEvent.class, EventBus.DIRECT, counter);
+        queuedBus = new EventBus();
+        queuedBus.subscribe(ConnectionEvent.class, looper, counter);
+        latestBus = new EventBus();
+        latest = latestBus.subscribeLatest(ConnectionEvent.class, looper, counter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        looper.shutdown();
+        looper.awaitTermination(1, TimeUnit.SECONDS);
+        System.out.println();
+        System.out.println("queued latency " + queuedBus.getLatency(ConnectionEvent.class));
+        System.out.println("latest latency " + latestBus.getLatency(ConnectionEvent.class)
+                + ", coalesced " + latest.getCoalesced() + " of " + latestBus.getPublished(ConnectionEvent.class));
+    }
+
+    private void awaitReceived(long target) {
+        while (received.get() < target) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Publishing to a subscriber that runs on the publishing thread
+     */
+    @Benchmark
+    public long publishDirect() {
+        directBus.publish(event);
+        return received.get();
+    }
+
+    /**
+     * A new Runnable per event posted to the worker, waiting until it has run
+     */
+    @Benchmark
+    public long postRunnable() {
+        long target = received.get() + 1;
+        looper.execute(new Runnable() {
+            @Override
+            public void run() {
+                count.run();
+            }
+        });
+        awaitReceived(target);
+        return target;
+    }
+
+    /**
+     * One event through a queued subscriber on the worker, waiting until it is delivered
+     */
+    @Benchmark
+    public long publishQueued() {
+        long target = received.get() + 1;
+        queuedBus.publish(event);
+        awaitReceived(target);
+        return target;
+    }
+
+    /**
+     * A burst through a queued subscriber, which sees every event of the burst
+     */
+    @Benchmark
+    public long burstQueued() {
+        long target = received.get() + BURST;
+        for (int i = 0; i < BURST; i++) {
+            queuedBus.publish(event);
+        }
+        awaitReceived(target);
+        return target;
+    }
+
+    /**
+     * A burst through a subscriber that only wants the latest event, waiting until the
+     * last one is delivered.  Events the worker has not reached yet are merged.
+     */
+    @Benchmark
+    public long burstLatest() {
+        for (int i = 0; i < BURST; i++) {
+            latestBus.publish(event);
+        }
+        long target = latestBus.getPublished(ConnectionEvent.class) - latest.getCoalesced();
+        awaitReceived(target);
+        return target;
+    }
+}
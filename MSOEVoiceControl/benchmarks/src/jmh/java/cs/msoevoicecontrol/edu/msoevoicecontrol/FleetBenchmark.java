@@ -0,0 +1,233 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark flies a fleet of {@link SimulatedDrone}s through a {@link FleetManager} in
+ * real time at the 20 Hz control rate, plus one more aircraft whose link blocks for
+ * {@link #STALL_MILLIS} on every packet.  A physics thread keeps every simulator's clock on
+ * the system clock so their telemetry can steer the controllers.
+ *
+ * One operation is one control period: every second the whole fleet is told to turn by
+ * voice ("all turn left ninety degrees") and every period one aircraft is addressed on its
+ * own.  The score is pinned to the control rate; the allocation rate is per period.  Each
+ * trial prints the fleet's CPU time and tick latency, and fails if the worst 99th
+ * percentile of a healthy aircraft is over one control period.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetBenchmark {
+
+    static final long STALL_MILLIS = 200;
+    private static final long PHYSICS_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long TAKEOFF_MILLIS = 2000;
+    private static final int PERIODS_PER_FAN_OUT = FleetManager.DEFAULT_RATE_HZ;
+
+    @Param({"1", "25", "100", "200"})
+    public int fleetSize;
+
+    private FleetManager fleet;
+    private SimulatedDrone[] simulators;
+    private FleetManager.Drone stalled;
+    private Thread physics;
+    private volatile boolean flying;
+
+    private final SpokenCommand[] fanOut = new SpokenCommand[2];
+    private final CommandTable.Parsed parsed = new CommandTable.Parsed();
+    private CommandTable table;
+    private final String[] addressed = {"turn right forty five", "move forward two meters", "fly up one meter"};
+
+    private long period;
+    private long nextPeriodNanos;
+    private long startNanos;
+    private long startCpuNanos;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        table = CommandTable.compile(new File(System.getProperty("benchmarks.grammar",
+                "../app/src/main/assets/sync/digits.gram")));
+        fanOut[0] = parseOne("all turn left ninety degrees");
+        fanOut[1] = parseOne("all turn right ninety degrees");
+
+        fleet = new FleetManager(Clock.SYSTEM, FleetManager.DEFAULT_RATE_HZ, FleetManager.DEFAULT_WORKERS, 1);
+        long now = System.nanoTime();
+        simulators = new SimulatedDrone[fleetSize + 1];
+        for (int i = 0; i < simulators.length; i++) {
+            simulators[i] = new SimulatedDrone(new VirtualClock(now), TimeUnit.MILLISECONDS.toNanos(20),
+                    TimeUnit.MILLISECONDS.toNanos(10), i);
+            simulators[i].startTakeoff(null);
+        }
+        for (int i = 0; i < fleetSize; i++) {
+            fleet.add(simulators[i]);
+        }
+        stalled = fleet.add(new StalledLink(simulators[fleetSize]));
+
+        flying = true;
+        physics = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (flying) {
+                    long now = System.nanoTime();
+                    for (SimulatedDrone simulator : simulators) {
+                        simulator.runUntil(now);
+                    }
+                    LockSupport.parkNanos(PHYSICS_NANOS);
+                }
+            }
+        }, "fleet-physics");
+        physics.setDaemon(true);
+        physics.start();
+        fleet.start();
+        Thread.sleep(TAKEOFF_MILLIS);
+
+        startNanos = System.nanoTime();
+        startCpuNanos = fleetCpuNanos();
+        nextPeriodNanos = startNanos;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        long wall = System.nanoTime() - startNanos;
+        long cpu = fleetCpuNanos() - startCpuNanos;
+        fleet.stop();
+        flying = false;
+        physics.join();
+
+        long ticks = wall / fleet.getPeriodNanos() * fleetSize;
+        long worstP99 = 0;
+        long healthySkipped = 0;
+        long rejected = 0;
+        for (FleetManager.Drone drone : fleet.getDrones()) {
+            if (drone != stalled) {
+                worstP99 = Math.max(worstP99, drone.getTickLatency().getValueAtPercentile(99));
+                healthySkipped += drone.getSkippedTicks();
+                rejected += drone.getRejectedCommands();
+            }
+        }
+        System.out.println();
+        System.out.println(String.format("%d aircraft: fleet threads %.1f%% of one core, %.1f us per aircraft tick",
+                fleetSize, 100.0 * cpu / wall, cpu / 1000.0 / Math.max(1, ticks)));
+        System.out.println(String.format("tick latency p50 %d us, p99 %d us, worst healthy p99 %d us, max %d us",
+                fleet.getTickLatency().getValueAtPercentile(50) / 1000,
+                fleet.getTickLatency().getValueAtPercentile(99) / 1000,
+                worstP99 / 1000, fleet.getTickLatency().getMax() / 1000));
+        System.out.println("healthy skipped ticks " + healthySkipped + ", rejected commands " + rejected
+                + ", blocked link skipped " + stalled.getSkippedTicks() + " of its ticks");
+        if (worstP99 > fleet.getPeriodNanos()) {
+            throw new IllegalStateException("a healthy aircraft's p99 tick latency is "
+                    + worstP99 / 1000 + " us, over the " + fleet.getPeriodNanos() / 1000 + " us period");
+        }
+        if (stalled.getSkippedTicks() == 0) {
+            throw new IllegalStateException("the blocked link never missed a tick");
+        }
+    }
+
+    @Benchmark
+    public void controlPeriod() {
+        if (period % PERIODS_PER_FAN_OUT == 0) {
+            fleet.commandAll(fanOut[(int) (period / PERIODS_PER_FAN_OUT % 2)]);
+        } else {
+            table.parse(addressed[(int) (period % addressed.length)], parsed);
+            fleet.command((int) (period % fleetSize) + 1, parsed.get(0));
+        }
+        period++;
+        nextPeriodNanos += fleet.getPeriodNanos();
+        long wait = nextPeriodNanos - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        } else {
+            nextPeriodNanos = System.nanoTime();
+        }
+    }
+
+    private SpokenCommand parseOne(String hypothesis) {
+        if (table.parse(hypothesis, parsed) != 1) {
+            throw new IllegalStateException("expected one command in " + hypothesis);
+        }
+        return parsed.get(0);
+    }
+
+    /**
+     * CPU time of the ticker and worker threads
+     */
+    private static long fleetCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith("fleet-") && !info.getThreadName().equals("fleet-physics")) {
+                total += Math.max(0, threads.getThreadCpuTime(info.getThreadId()));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * A link that blocks on every stick packet, as a congested or wedged radio would
+     */
+    private static final class StalledLink implements DroneLink {
+        private final DroneLink link;
+
+        StalledLink(DroneLink link) {
+            this.link = link;
+        }
+
+        @Override
+        public void sendVirtualStick(float pitch, float roll, float yaw, float throttle, CompletionCallback callback) {
+            try {
+                Thread.sleep(STALL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            link.sendVirtualStick(pitch, roll, yaw, throttle, callback);
+        }
+
+        @Override
+        public void startTakeoff(CompletionCallback callback) {
+            link.startTakeoff(callback);
+        }
+
+        @Override
+        public void startLanding(CompletionCallback callback) {
+            link.startLanding(callback);
+        }
+
+        @Override
+        public void startCompassCalibration(CompletionCallback callback) {
+            link.startCompassCalibration(callback);
+        }
+
+        @Override
+        public CompassState getCompassState() {
+            return link.getCompassState();
+        }
+
+        @Override
+        public void setStateListener(StateListener listener) {
+            link.setStateListener(listener);
+        }
+
+        @Override
+        public void close() {
+            link.close();
+        }
+    }
+}
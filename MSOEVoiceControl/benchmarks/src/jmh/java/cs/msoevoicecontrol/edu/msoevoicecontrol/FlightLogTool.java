@@ -0,0 +1,126 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This is a command-line tool for flight logs written by {@link FlightRecorder} and pulled
+ * off the phone.  It runs on any JVM, through the flightLog task of this module:
+ *
+ *   FlightLogTool info &lt;log&gt;
+ *   FlightLogTool export &lt;log&gt; &lt;telemetry.csv&gt; &lt;commands.csv&gt;
+ *   FlightLogTool replay &lt;log&gt; [speed]
+ *
+ * replay prints every sample in time order, paced at speed times real time (default 1000,
+ * 0 for as fast as possible).
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+
+public class FlightLogTool {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        FlightLogReader log = FlightLogReader.read(new File(args[1]));
+        if (args[0].equals("info")) {
+            info(args[1], log);
+        } else if (args[0].equals("export") && args.length == 4) {
+            export(log, new File(args[2]), new File(args[3]));
+        } else if (args[0].equals("replay")) {
+            replay(log, args.length > 2 ? Double.parseDouble(args[2]) : 1000);
+        } else {
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: FlightLogTool info <log>");
+        System.err.println("       FlightLogTool export <log> <telemetry.csv> <commands.csv>");
+        System.err.println("       FlightLogTool replay <log> [speed]");
+    }
+
+    private static void info(String name, FlightLogReader log) {
+        long bytes = new File(name).length();
+        double minutes = log.getDurationMillis() / 60000.0;
+        System.out.println("started     " + new java.util.Date(log.getStartEpochMillis()));
+        System.out.println("duration    " + log.getDurationMillis() / 1000.0 + " s");
+        System.out.println("telemetry   " + log.getTelemetryCount() + " samples");
+        System.out.println("commands    " + log.getCommandCount() + " samples");
+        System.out.println("size        " + bytes + " bytes"
+                + (minutes > 0 ? String.format(" (%.1f KB per flight-minute)", bytes / 1024.0 / minutes) : ""));
+    }
+
+    private static void export(FlightLogReader log, File telemetryFile, File commandFile)
+            throws IOException, InterruptedException {
+        final Writer telemetry = new BufferedWriter(new FileWriter(telemetryFile));
+        final Writer commands = new BufferedWriter(new FileWriter(commandFile));
+        try {
+            writeRow(telemetry, FlightRecorder.TELEMETRY_COLUMNS);
+            writeRow(commands, FlightRecorder.COMMAND_COLUMNS);
+            log.replay(new FlightLogReader.Listener() {
+                @Override
+                public void onTelemetry(int[] row) {
+                    writeRow(telemetry, row);
+                }
+
+                @Override
+                public void onCommand(int[] row) {
+                    writeRow(commands, row);
+                }
+            }, 0);
+        } finally {
+            telemetry.close();
+            commands.close();
+        }
+    }
+
+    private static void replay(FlightLogReader log, double speed) throws InterruptedException {
+        final PrintStream out = System.out;
+        long start = System.nanoTime();
+        log.replay(new FlightLogReader.Listener() {
+            @Override
+            public void onTelemetry(int[] row) {
+                out.println("T " + join(row));
+            }
+
+            @Override
+            public void onCommand(int[] row) {
+                out.println("C " + join(row));
+            }
+        }, speed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("replayed %.1f s of flight in %.3f s%n", log.getDurationMillis() / 1000.0, seconds);
+    }
+
+    private static void writeRow(Writer out, Object[] values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            line.append(i == 0 ? "" : ",").append(values[i]);
+        }
+        write(out, line);
+    }
+
+    private static void writeRow(Writer out, int[] row) {
+        write(out, join(row).replace(' ', ','));
+    }
+
+    private static void write(Writer out, CharSequence line) {
+        try {
+            out.append(line).append('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String join(int[] row) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            line.append(i == 0 ? "" : " ").append(row[i]);
+        }
+        return line.toString();
+    }
+}
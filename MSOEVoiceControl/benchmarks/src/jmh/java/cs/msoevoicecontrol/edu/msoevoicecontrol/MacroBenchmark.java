@@ -0,0 +1,77 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark plays the "turn around" macro into a {@link SimulatedDrone} through a
+ * {@link VirtualStickLoop}, all on one {@link VirtualClock}, with the link's latency and
+ * jitter switched on.  The score is the cost of simulating the 2.1 s manoeuvre; whether it
+ * finishes on time and turns half a turn is checked by MacroExecutorTest.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacroBenchmark {
+
+    //the macro MainActivity runs for "reverse"
+    static final Macro TURN_AROUND = new Macro("turn around",
+            new Macro.Step(0, 0, 100, 0, 1800),
+            new Macro.Step(0, 0, 0, 0, 300));
+
+    //how often the executor is polled, standing in for its scheduler thread waking up
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    //how long the rotation is left to stop after the macro before the next run
+    private static final long SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private VirtualClock clock;
+    private SimulatedDrone drone;
+    private VirtualStickLoop loop;
+    private MacroExecutor executor;
+    private long nextTick;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clock = new VirtualClock();
+        drone = new SimulatedDrone(clock, TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(10), 1);
+        loop = new VirtualStickLoop(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                drone.sendVirtualStick(pitch, roll, yaw, throttle, null);
+            }
+        }, clock, VirtualStickLoop.DEFAULT_RATE_HZ, VirtualStickLoop.DEFAULT_HOLD_MS, VirtualStickLoop.DEFAULT_DECAY_MS);
+        executor = new MacroExecutor(loop, clock, null);
+        drone.startTakeoff(null);
+        drone.advance(TimeUnit.SECONDS.toNanos(5));
+        nextTick = clock.nanoTime();
+    }
+
+    private void step(long untilNanos) {
+        while (clock.nanoTime() < untilNanos) {
+            long now = clock.nanoTime();
+            executor.poll(now);
+            if (now >= nextTick) {
+                loop.tick(now);
+                nextTick += loop.getPeriodNanos();
+            }
+            drone.advance(POLL_NANOS);
+        }
+    }
+
+    @Benchmark
+    public double turnAroundSimulated() {
+        long start = clock.nanoTime();
+        executor.run(TURN_AROUND);
+        step(start + TURN_AROUND.getDurationNanos() + SETTLE_NANOS);
+        return drone.getYaw();
+    }
+}
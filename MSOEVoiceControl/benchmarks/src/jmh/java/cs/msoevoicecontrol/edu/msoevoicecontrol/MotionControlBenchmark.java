@@ -0,0 +1,113 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark flies the {@link MotionController} against a {@link SimulatedDrone}
+ * with the link's latency and jitter switched on and telemetry at the aircraft's 10 Hz.
+ * The score of each run is the cost of simulating a turn around or a move forward; whether
+ * they settle within budget is checked by MotionControllerTest.  {@link #controllerStep()}
+ * times one control step on its own; its allocation rate should be zero.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionControlBenchmark {
+
+    private static final long STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private VirtualClock clock;
+    private SimulatedDrone drone;
+    private MotionController controller;
+    private VirtualStickLoop loop;
+    private MotionController.Result result;
+    private long nextTick;
+
+    //a controller with a goal it never reaches, for timing single steps
+    private MotionController stepController;
+    private final DroneState stepState = new DroneState();
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setup(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        clock = new VirtualClock();
+        drone = new SimulatedDrone(clock, TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(10), 1);
+        controller = new MotionController(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                drone.sendVirtualStick(pitch, roll, yaw, throttle, null);
+            }
+        }, clock, new MotionController.Listener() {
+            @Override
+            public void onGoalDone(MotionController.Result done) {
+                result = done;
+            }
+        });
+        drone.setStateListener(controller);
+        loop = new VirtualStickLoop(controller, clock, VirtualStickLoop.DEFAULT_RATE_HZ,
+                VirtualStickLoop.DEFAULT_HOLD_MS, VirtualStickLoop.DEFAULT_DECAY_MS);
+        drone.startTakeoff(null);
+        nextTick = clock.nanoTime();
+        run(clock.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+
+        stepController = new MotionController(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                blackhole.consume(pitch + roll + yaw + throttle);
+            }
+        }, clock, null);
+        drone.getState(stepState);
+        stepController.onStateUpdate(stepState);
+        stepController.move(1000, 1000, 0);
+    }
+
+    private void run(long untilNanos) {
+        while (clock.nanoTime() < untilNanos && (result == null || controller.getGoal() != MotionController.Goal.NONE)) {
+            long now = clock.nanoTime();
+            if (now >= nextTick) {
+                loop.tick(now);
+                nextTick += loop.getPeriodNanos();
+            }
+            drone.advance(STEP_NANOS);
+        }
+    }
+
+    private MotionController.Result runGoal() {
+        run(clock.nanoTime() + MotionController.TIMEOUT_NANOS);
+        MotionController.Result done = result;
+        result = null;
+        return done;
+    }
+
+    @Benchmark
+    public MotionController.Result turnAround() {
+        controller.turn(180);
+        return runGoal();
+    }
+
+    @Benchmark
+    public MotionController.Result moveForward() {
+        controller.move(3, 0, 0);
+        return runGoal();
+    }
+
+    /**
+     * One step of a move in progress, as the stick loop runs it on every tick
+     */
+    @Benchmark
+    public void controllerStep() {
+        stepController.send(0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,413 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark runs a minute of audio through the {@link SpeechGate}: spoken commands
+ * over rotor noise at several signal-to-noise ratios.  The noise is the recordings in the
+ * directory named by benchmarks.rotorNoise (16 kHz mono WAVs, looped), or four synthetic
+ * rotors with wind noise and gusts if there is none.  The commands are synthetic voiced
+ * syllables and fricatives, so every sample is known to be speech or not.
+ *
+ * One operation is one 100 ms microphone read, so the score is what the gate itself
+ * costs.  Each trial first gates the whole minute once and prints how much of it would
+ * still reach the decoder, which is the decoder CPU left after the saving, and the
+ * false-reject rate: speech frames the decoder never sees, and utterances it loses
+ * altogether.  It fails if the decoder still gets more than it has to, or if speech 10 dB
+ * or more over the noise is rejected.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpeechGateBenchmark {
+
+    static final int SAMPLE_RATE = 16000;
+    private static final int TRACK_SECONDS = 60;
+    private static final int READ_SAMPLES = SAMPLE_RATE / 10;
+    private static final int PRE_ROLL_MS = 300;
+    //noise alone at the start, for the floor to settle on
+    private static final int LEAD_IN_SECONDS = 3;
+    private static final double NOISE_RMS = 1000;
+    //budgets for speech at least 10 dB over the noise; below that the rejects are only reported
+    private static final int BUDGET_SNR_DB = 10;
+    private static final double MAX_FRAME_REJECTS = 0.02;
+    //the speech itself and the lead-in and hangover around it are a third of the track
+    private static final double MAX_PASSED = 0.45;
+
+    @Param({"0", "5", "10", "20"})
+    public int snrDb;
+
+    private short[] track;
+    private SpeechGate gate;
+    private int position;
+    private final short[] read = new short[READ_SAMPLES];
+    private final CountingSink sink = new CountingSink();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        //the same noise and the same commands at every ratio
+        Random random = new Random(1);
+        short[] noise = loadNoise(System.getProperty("benchmarks.rotorNoise"), random);
+        double[] speech = new double[noise.length];
+        boolean[] speaking = new boolean[noise.length];
+        int[][] utterances = speak(speech, speaking, random);
+        track = mix(noise, speech, snrDb);
+
+        evaluate(speaking, utterances);
+        gate = new SpeechGate(SAMPLE_RATE, PRE_ROLL_MS);
+    }
+
+    @Benchmark
+    public long read() {
+        if (position + READ_SAMPLES > track.length) {
+            position = 0;
+        }
+        System.arraycopy(track, position, read, 0, READ_SAMPLES);
+        gate.process(read, READ_SAMPLES, sink);
+        position += READ_SAMPLES;
+        return sink.samples;
+    }
+
+    /**
+     * This gates the whole track once and reports what the decoder would and would not see
+     */
+    private void evaluate(boolean[] speaking, int[][] utterances) {
+        SpeechGate evaluation = new SpeechGate(SAMPLE_RATE, PRE_ROLL_MS);
+        int frameSize = evaluation.getDetector().getFrameSize();
+        FrameSink frames = new FrameSink(track.length / frameSize);
+        short[] read = new short[READ_SAMPLES];
+        for (int offset = 0; offset + READ_SAMPLES <= track.length; offset += READ_SAMPLES) {
+            System.arraycopy(track, offset, read, 0, READ_SAMPLES);
+            evaluation.process(read, READ_SAMPLES, frames);
+        }
+
+        int speechFrames = 0;
+        int rejectedFrames = 0;
+        int passedFrames = 0;
+        for (int frame = 0; frame < frames.passed.length; frame++) {
+            int speechSamples = 0;
+            for (int i = frame * frameSize; i < (frame + 1) * frameSize; i++) {
+                if (speaking[i]) {
+                    speechSamples++;
+                }
+            }
+            if (frames.passed[frame]) {
+                passedFrames++;
+            }
+            if (speechSamples * 2 >= frameSize) {
+                speechFrames++;
+                if (!frames.passed[frame]) {
+                    rejectedFrames++;
+                }
+            }
+        }
+        int missed = 0;
+        int clipped = 0;
+        for (int[] utterance : utterances) {
+            int first = utterance[0] / frameSize;
+            int last = Math.min(frames.passed.length - 1, utterance[1] / frameSize);
+            int passed = 0;
+            for (int frame = first; frame <= last; frame++) {
+                if (frames.passed[frame]) {
+                    passed++;
+                }
+            }
+            if (passed == 0) {
+                missed++;
+            } else if (passed < last - first + 1) {
+                clipped++;
+            }
+        }
+
+        double passedShare = (double) passedFrames / frames.passed.length;
+        double frameRejects = (double) rejectedFrames / Math.max(1, speechFrames);
+        System.out.println();
+        System.out.println(String.format("%d dB SNR over %s noise: decoder gets %.1f%% of the audio (%.1f%% saved), "
+                        + "speech is %.1f%% of it",
+                snrDb, System.getProperty("benchmarks.rotorNoise") == null ? "synthetic" : "recorded",
+                100 * passedShare, 100 * (1 - passedShare), 100.0 * speechFrames / frames.passed.length));
+        System.out.println(String.format("false rejects: %.2f%% of speech frames, %d of %d utterances missed, %d clipped; %s",
+                100 * frameRejects, missed, utterances.length, clipped, evaluation));
+        if (snrDb >= BUDGET_SNR_DB && (frameRejects > MAX_FRAME_REJECTS || missed > 0)) {
+            throw new IllegalStateException(String.format("the gate rejected %.1f%% of speech frames and missed %d "
+                    + "utterances at %d dB", 100 * frameRejects, missed, snrDb));
+        }
+        if (passedShare > MAX_PASSED) {
+            throw new IllegalStateException(String.format("the gate passed %.1f%% of the audio", 100 * passedShare));
+        }
+    }
+
+    private static short[] loadNoise(String directory, Random random) throws IOException {
+        short[] noise = new short[SAMPLE_RATE * TRACK_SECONDS];
+        if (directory == null) {
+            RotorNoise rotors = new RotorNoise(random);
+            for (int i = 0; i < noise.length; i++) {
+                noise[i] = clip(rotors.next());
+            }
+            return noise;
+        }
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            throw new IOException("cannot list " + directory);
+        }
+        Arrays.sort(files);
+        int filled = 0;
+        while (filled < noise.length) {
+            int before = filled;
+            for (File file : files) {
+                if (!file.getName().toLowerCase().endsWith(".wav")) {
+                    continue;
+                }
+                WavFile recording = WavFile.read(file);
+                if (recording.sampleRate != SAMPLE_RATE) {
+                    throw new IOException(file + " is not " + SAMPLE_RATE + " Hz");
+                }
+                int count = Math.min(recording.samples.length, noise.length - filled);
+                System.arraycopy(recording.samples, 0, noise, filled, count);
+                filled += count;
+            }
+            if (filled == before) {
+                throw new IOException("no audio in " + directory);
+            }
+        }
+        return noise;
+    }
+
+    /**
+     * This writes utterances of one to three words, two to six seconds apart, after the lead-in
+     * @return the first and last sample of each utterance
+     */
+    private static int[][] speak(double[] speech, boolean[] speaking, Random random) {
+        int[][] utterances = new int[TRACK_SECONDS][];
+        int count = 0;
+        int position = LEAD_IN_SECONDS * SAMPLE_RATE;
+        Voice voice = new Voice(random);
+        while (true) {
+            int words = 1 + random.nextInt(3);
+            int start = position;
+            for (int word = 0; word < words; word++) {
+                position = voice.word(speech, speaking, position);
+                position += SAMPLE_RATE * (60 + random.nextInt(120)) / 1000;
+            }
+            if (position >= speech.length) {
+                break;
+            }
+            utterances[count++] = new int[]{start, position};
+            position += SAMPLE_RATE * (2000 + random.nextInt(4000)) / 1000;
+        }
+        return Arrays.copyOf(utterances, count);
+    }
+
+    private static short[] mix(short[] noise, double[] speech, int snrDb) {
+        double noisePower = 0;
+        double speechPower = 0;
+        int speechSamples = 0;
+        for (int i = 0; i < noise.length; i++) {
+            noisePower += (double) noise[i] * noise[i];
+            if (speech[i] != 0) {
+                speechPower += speech[i] * speech[i];
+                speechSamples++;
+            }
+        }
+        double noiseRms = Math.sqrt(noisePower / noise.length);
+        double speechRms = Math.sqrt(speechPower / Math.max(1, speechSamples));
+        //recorded noise is played at its own level
+        double speechGain = noiseRms * Math.pow(10, snrDb / 20.0) / speechRms;
+        short[] mixed = new short[noise.length];
+        for (int i = 0; i < mixed.length; i++) {
+            mixed[i] = clip(noise[i] + speech[i] * speechGain);
+        }
+        return mixed;
+    }
+
+    private static short clip(double sample) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+    }
+
+    /**
+     * Counts what gets through, as cheaply as a sink can
+     */
+    private static final class CountingSink implements SpeechGate.Sink {
+        long samples;
+
+        @Override
+        public void onSpeech(short[] frame, int count) {
+            samples += count;
+        }
+
+        @Override
+        public void onGateClosed() {
+        }
+
+        @Override
+        public void onDropped(int count) {
+        }
+    }
+
+    /**
+     * Marks which frames got through.  The gate passes or drops every frame in order, so
+     * the frames still held back at the end are the ones never reported.
+     */
+    private static final class FrameSink implements SpeechGate.Sink {
+        final boolean[] passed;
+        int next;
+
+        FrameSink(int frames) {
+            passed = new boolean[frames];
+        }
+
+        @Override
+        public void onSpeech(short[] frame, int count) {
+            passed[next++] = true;
+        }
+
+        @Override
+        public void onGateClosed() {
+        }
+
+        @Override
+        public void onDropped(int count) {
+            next++;
+        }
+    }
+
+    /**
+     * Four two-blade rotors, each a fundamental near 170 Hz with its harmonics and a slow
+     * wobble in speed, over wind noise that gusts every few seconds
+     */
+    private static final class RotorNoise {
+        private static final int ROTORS = 4;
+        private static final int HARMONICS = 8;
+        private final Random random;
+        private final double[] frequency = new double[ROTORS];
+        private final double[] phase = new double[ROTORS];
+        private final double[] wobble = new double[ROTORS];
+        private double wind;
+        private long sample;
+
+        RotorNoise(Random random) {
+            this.random = random;
+            for (int rotor = 0; rotor < ROTORS; rotor++) {
+                frequency[rotor] = 160 + 20 * random.nextDouble();
+                wobble[rotor] = 2 * Math.PI * random.nextDouble();
+            }
+        }
+
+        double next() {
+            double t = (double) sample++ / SAMPLE_RATE;
+            double hum = 0;
+            for (int rotor = 0; rotor < ROTORS; rotor++) {
+                double speed = frequency[rotor] * (1 + 0.01 * Math.sin(2 * Math.PI * 0.3 * t + wobble[rotor]));
+                phase[rotor] += 2 * Math.PI * speed / SAMPLE_RATE;
+                for (int harmonic = 1; harmonic <= HARMONICS; harmonic++) {
+                    hum += Math.sin(harmonic * phase[rotor]) / harmonic;
+                }
+            }
+            wind = 0.9 * wind + 0.1 * random.nextGaussian();
+            double gust = 1 + 0.25 * Math.sin(2 * Math.PI * 0.2 * t);
+            return NOISE_RMS * gust * (0.35 * hum + 2.0 * wind);
+        }
+    }
+
+    /**
+     * A buzz at the voice's pitch through two formant resonators for vowels, and a
+     * differenced hiss for fricatives
+     */
+    private static final class Voice {
+        private final Random random;
+
+        Voice(Random random) {
+            this.random = random;
+        }
+
+        /**
+         * @return the sample after the word
+         */
+        int word(double[] speech, boolean[] speaking, int position) {
+            int syllables = 1 + random.nextInt(2);
+            for (int syllable = 0; syllable < syllables; syllable++) {
+                if (random.nextInt(3) == 0) {
+                    position = fricative(speech, speaking, position, SAMPLE_RATE * (50 + random.nextInt(70)) / 1000);
+                }
+                position = vowel(speech, speaking, position, SAMPLE_RATE * (110 + random.nextInt(130)) / 1000);
+            }
+            if (random.nextInt(2) == 0) {
+                position = fricative(speech, speaking, position, SAMPLE_RATE * (50 + random.nextInt(70)) / 1000);
+            }
+            return position;
+        }
+
+        private int vowel(double[] speech, boolean[] speaking, int position, int length) {
+            double pitch = 100 + 120 * random.nextDouble();
+            double first = 400 + 400 * random.nextDouble();
+            double second = 1000 + 1200 * random.nextDouble();
+            Resonator f1 = new Resonator(first, 90);
+            Resonator f2 = new Resonator(second, 140);
+            double phase = 0;
+            for (int i = 0; i < length && position + i < speech.length; i++) {
+                phase += pitch / SAMPLE_RATE;
+                double pulse = 0;
+                if (phase >= 1) {
+                    phase -= 1;
+                    pulse = 1;
+                }
+                double envelope = Math.sin(Math.PI * i / length);
+                double sample = f1.next(pulse) + 0.5 * f2.next(pulse);
+                speech[position + i] += envelope * sample;
+                speaking[position + i] = true;
+            }
+            return position + length;
+        }
+
+        private int fricative(double[] speech, boolean[] speaking, int position, int length) {
+            double previous = 0;
+            for (int i = 0; i < length && position + i < speech.length; i++) {
+                double hiss = random.nextGaussian();
+                double envelope = Math.sin(Math.PI * i / length);
+                speech[position + i] += 0.03 * envelope * (hiss - previous);
+                speaking[position + i] = true;
+                previous = hiss;
+            }
+            return position + length;
+        }
+    }
+
+    /**
+     * A two-pole resonator at a formant's frequency and bandwidth
+     */
+    private static final class Resonator {
+        private final double a1;
+        private final double a2;
+        private final double gain;
+        private double y1;
+        private double y2;
+
+        Resonator(double frequency, double bandwidth) {
+            double r = Math.exp(-Math.PI * bandwidth / SAMPLE_RATE);
+            a1 = 2 * r * Math.cos(2 * Math.PI * frequency / SAMPLE_RATE);
+            a2 = -r * r;
+            gain = 1 - r;
+        }
+
+        double next(double x) {
+            double y = gain * x + a1 * y1 + a2 * y2;
+            y2 = y1;
+            y1 = y;
+            return y;
+        }
+    }
+}
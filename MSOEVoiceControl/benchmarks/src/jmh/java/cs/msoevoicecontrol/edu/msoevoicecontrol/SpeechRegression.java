@@ -0,0 +1,439 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This decodes a directory of recorded commands with {@link DecoderSpeechEngine} and the
+ * app's model, dictionary and grammar, on every core, and reports how well and how fast
+ * they were recognized:
+ *
+ *   SpeechRegression &lt;directory of WAVs&gt;
+ *
+ * Recordings are 16-bit mono WAVs at the model's sample rate, each with the words that were
+ * spoken in a .txt file of the same name; ones without a transcript are timed but not
+ * scored.  Each recording is fed in buffers the size the Android recognizer reads and
+ * decoded as one utterance.  The report has word accuracy, command accuracy (the
+ * transcript and the hypothesis parse to the same {@link SpokenCommand}s), the real-time
+ * factor, and the latency from the last buffer arriving to the final hypothesis.
+ *
+ * With speech.gate set, every recording is decoded a second time behind a
+ * {@link SpeechGate}, as the app does, and the report adds how much decoder CPU the gate
+ * saved and its false-reject rate: of the recordings whose commands were recognized
+ * without the gate, how many were lost with it.  On a corpus recorded under rotor noise
+ * that is the cost of the saving.  Recordings with an empty transcript are noise alone;
+ * for those it reports how much audio still reached the decoder.
+ *
+ * System properties: speech.assets is the directory with en-us-ptm, commands.dict,
+ * digits.gram and commands.kws; speech.search is grammar or keywords; speech.threads
+ * overrides the core count; speech.minAccuracy fails the run if the word accuracy is lower.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SpeechRegression {
+
+    private static final String GRAMMAR_SEARCH = "directions";
+    private static final String KEYWORD_SEARCH = "keywords";
+    private static final int PRE_ROLL_MS = 300;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1) {
+            System.err.println("usage: SpeechRegression <directory of WAVs>");
+            return;
+        }
+        File assets = new File(System.getProperty("speech.assets", "../app/src/main/assets/sync"));
+        final String search = System.getProperty("speech.search", "grammar").equals("keywords")
+                ? KEYWORD_SEARCH : GRAMMAR_SEARCH;
+        int threads = Integer.getInteger("speech.threads", Runtime.getRuntime().availableProcessors());
+        final boolean gated = Boolean.getBoolean("speech.gate");
+
+        final List<File> recordings = new ArrayList<File>();
+        find(new File(args[0]), recordings);
+        if (recordings.isEmpty()) {
+            System.err.println("no WAVs in " + args[0]);
+            return;
+        }
+        threads = Math.max(1, Math.min(threads, recordings.size()));
+
+        //the engines are made one at a time, so the first compiles the grammar and the rest read the cache
+        GrammarCache grammarCache = new GrammarCache(new File(System.getProperty("java.io.tmpdir"), "speech-regression-fsg"));
+        final DecoderSpeechEngine[] engines = new DecoderSpeechEngine[threads];
+        long setupStart = System.nanoTime();
+        GrammarCache.Source source = null;
+        for (int i = 0; i < threads; i++) {
+            engines[i] = newEngine(assets, grammarCache);
+            source = engines[i].addGrammarSearch(GRAMMAR_SEARCH, new File(assets, "digits.gram"),
+                    new File(assets, "commands.dict"));
+            engines[i].addKeywordSearch(KEYWORD_SEARCH, new File(assets, "commands.kws"));
+        }
+        long setupNanos = System.nanoTime() - setupStart;
+
+        final Utterance[] utterances = new Utterance[recordings.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final IOException[] failure = new IOException[1];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            final DecoderSpeechEngine engine = engines[i];
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Decoding decoding = new Decoding(engine, search, gated);
+                    int index;
+                    while ((index = next.getAndIncrement()) < recordings.size()) {
+                        try {
+                            utterances[index] = decoding.decode(recordings.get(index));
+                        } catch (IOException e) {
+                            synchronized (failure) {
+                                failure[0] = e;
+                            }
+                            return;
+                        }
+                    }
+                }
+            }, "speech-regression-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long wall = System.nanoTime() - start;
+        for (DecoderSpeechEngine engine : engines) {
+            engine.shutdown();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        CommandTable table = CommandTable.compile(new File(assets, "digits.gram"));
+        report(utterances, table, search, threads, setupNanos, source, wall);
+        if (gated) {
+            reportGate(utterances, table);
+        }
+    }
+
+    private static DecoderSpeechEngine newEngine(File assets, GrammarCache grammarCache) {
+        return new DecoderSpeechEngine(new File(assets, "en-us-ptm"), new File(assets, "commands.dict"), grammarCache);
+    }
+
+    private static void find(File dir, List<File> recordings) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                find(file, recordings);
+            } else if (file.getName().toLowerCase().endsWith(".wav")) {
+                recordings.add(file);
+            }
+        }
+    }
+
+    private static void report(Utterance[] utterances, CommandTable table, String search, int threads,
+                               long setupNanos, GrammarCache.Source source, long wall) {
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram decode = new LatencyHistogram();
+        CommandTable.Parsed expected = new CommandTable.Parsed();
+        CommandTable.Parsed heard = new CommandTable.Parsed();
+        long audioNanos = 0;
+        long decodeNanos = 0;
+        long cpuNanos = 0;
+        int scored = 0;
+        int words = 0;
+        int wordErrors = 0;
+        int sentencesRight = 0;
+        int commandsRight = 0;
+        List<String> misses = new ArrayList<String>();
+        for (Utterance utterance : utterances) {
+            latency.record(utterance.plain.latencyNanos);
+            decode.record(utterance.plain.decodeNanos);
+            audioNanos += utterance.audioNanos;
+            decodeNanos += utterance.plain.decodeNanos;
+            cpuNanos += utterance.plain.cpuNanos;
+            if (utterance.reference == null) {
+                continue;
+            }
+            scored++;
+            String[] reference = words(utterance.reference);
+            String[] hypothesis = words(utterance.plain.hypothesis);
+            int errors = editDistance(reference, hypothesis);
+            words += reference.length;
+            wordErrors += errors;
+            if (errors == 0) {
+                sentencesRight++;
+            }
+            if (sameCommands(table, utterance.reference, utterance.plain.hypothesis, expected, heard)) {
+                commandsRight++;
+            } else {
+                misses.add(utterance.file.getPath() + ": expected \"" + utterance.reference
+                        + "\", heard \"" + (utterance.plain.hypothesis == null ? "" : utterance.plain.hypothesis) + "\"");
+            }
+        }
+
+        System.out.println(String.format("%d recordings, %.1f s of audio, %s search on %d threads",
+                utterances.length, audioNanos / 1e9, search, threads));
+        System.out.println(String.format("setup %.0f ms for %d decoders, grammar from %s",
+                setupNanos / 1e6, threads, source));
+        if (scored > 0) {
+            System.out.println(String.format("word accuracy %.2f%% (%d errors in %d words), sentences %.1f%%, commands %.1f%% of %d",
+                    100.0 * (words - wordErrors) / Math.max(1, words), wordErrors, words,
+                    100.0 * sentencesRight / scored, 100.0 * commandsRight / scored, scored));
+        }
+        System.out.println(String.format("real-time factor %.3f per thread (%.3f CPU), %.1fx real time overall",
+                (double) decodeNanos / audioNanos, (double) cpuNanos / audioNanos, (double) audioNanos / wall));
+        System.out.println("decode per utterance " + decode);
+        System.out.println("last buffer to result " + latency);
+        for (String miss : misses) {
+            System.out.println("  " + miss);
+        }
+
+        String minAccuracy = System.getProperty("speech.minAccuracy");
+        if (minAccuracy != null && scored > 0) {
+            double accuracy = 100.0 * (words - wordErrors) / Math.max(1, words);
+            if (accuracy < Double.parseDouble(minAccuracy)) {
+                throw new IllegalStateException(String.format("word accuracy %.2f%% is under %s%%", accuracy, minAccuracy));
+            }
+        }
+    }
+
+    private static void reportGate(Utterance[] utterances, CommandTable table) {
+        CommandTable.Parsed expected = new CommandTable.Parsed();
+        CommandTable.Parsed heard = new CommandTable.Parsed();
+        long plainCpu = 0;
+        long gatedCpu = 0;
+        long frames = 0;
+        long passed = 0;
+        long noiseFrames = 0;
+        long noisePassed = 0;
+        int recognized = 0;
+        int rejected = 0;
+        LatencyHistogram latency = new LatencyHistogram();
+        List<String> rejects = new ArrayList<String>();
+        for (Utterance utterance : utterances) {
+            plainCpu += utterance.plain.cpuNanos;
+            gatedCpu += utterance.gated.cpuNanos;
+            frames += utterance.frames;
+            passed += utterance.framesPassed;
+            latency.record(utterance.gated.latencyNanos);
+            if (utterance.reference == null) {
+                continue;
+            }
+            if (utterance.reference.isEmpty()) {
+                noiseFrames += utterance.frames;
+                noisePassed += utterance.framesPassed;
+            } else if (sameCommands(table, utterance.reference, utterance.plain.hypothesis, expected, heard)) {
+                recognized++;
+                if (!sameCommands(table, utterance.reference, utterance.gated.hypothesis, expected, heard)) {
+                    rejected++;
+                    rejects.add(utterance.file.getPath() + ": heard \"" + utterance.plain.hypothesis
+                            + "\" without the gate, \"" + (utterance.gated.hypothesis == null ? "" : utterance.gated.hypothesis)
+                            + "\" with it");
+                }
+            }
+        }
+        System.out.println(String.format("gate passed %.1f%% of the audio; decoder CPU %.2f s without it, %.2f s with it (%.1f%% saved)",
+                100.0 * passed / Math.max(1, frames), plainCpu / 1e9, gatedCpu / 1e9,
+                100.0 * (plainCpu - gatedCpu) / Math.max(1, plainCpu)));
+        if (noiseFrames > 0) {
+            System.out.println(String.format("noise-only recordings: %.1f%% of their audio reached the decoder",
+                    100.0 * noisePassed / noiseFrames));
+        }
+        System.out.println(String.format("false rejects %d of %d recognized recordings (%.1f%%)",
+                rejected, recognized, 100.0 * rejected / Math.max(1, recognized)));
+        System.out.println("gated last buffer to result " + latency);
+        for (String reject : rejects) {
+            System.out.println("  " + reject);
+        }
+    }
+
+    private static boolean sameCommands(CommandTable table, String reference, String hypothesis,
+                                        CommandTable.Parsed expected, CommandTable.Parsed heard) {
+        int count = table.parse(reference, expected, true);
+        if (hypothesis == null || table.parse(hypothesis, heard, true) != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!heard.matches(i, expected.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] words(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return new String[0];
+        }
+        return text.trim().toLowerCase().split("\\s+");
+    }
+
+    /**
+     * @return the substitutions, deletions and insertions that turn the reference into the hypothesis
+     */
+    static int editDistance(String[] reference, String[] hypothesis) {
+        int[] previous = new int[hypothesis.length + 1];
+        int[] current = new int[hypothesis.length + 1];
+        for (int j = 0; j <= hypothesis.length; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= reference.length; i++) {
+            current[0] = i;
+            for (int j = 1; j <= hypothesis.length; j++) {
+                int substitution = previous[j - 1] + (reference[i - 1].equals(hypothesis[j - 1]) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[hypothesis.length];
+    }
+
+    private static String transcript(File recording) throws IOException {
+        String name = recording.getName();
+        File text = new File(recording.getParentFile(), name.substring(0, name.length() - ".wav".length()) + ".txt");
+        if (!text.isFile()) {
+            return null;
+        }
+        BufferedReader in = new BufferedReader(new FileReader(text));
+        try {
+            StringBuilder words = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                words.append(line).append(' ');
+            }
+            return words.toString().trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * One worker's engine and the final hypothesis it last reported.  The gate's noise floor
+     * carries over from one recording to the next, as it would on the phone.
+     */
+    private static final class Decoding implements SpeechEngine.Listener {
+        private final DecoderSpeechEngine engine;
+        private final String search;
+        private final SpeechGate gate;
+        private final short[] buffer;
+        private String result;
+
+        Decoding(DecoderSpeechEngine engine, String search, boolean gated) {
+            this.engine = engine;
+            this.search = search;
+            gate = gated ? new SpeechGate(engine.getSampleRate(), PRE_ROLL_MS) : null;
+            buffer = new short[engine.getBufferSize()];
+            engine.addListener(this);
+        }
+
+        Utterance decode(File file) throws IOException {
+            WavFile audio = WavFile.read(file);
+            if (audio.sampleRate != engine.getSampleRate()) {
+                throw new IOException(file + " is " + audio.sampleRate + " Hz, the model is " + engine.getSampleRate() + " Hz");
+            }
+            String reference = transcript(file);
+            engine.setGate(null);
+            Pass plain = decode(audio);
+            if (gate == null) {
+                return new Utterance(file, reference, audio.getDurationNanos(), plain, null, 0, 0);
+            }
+            gate.reset();
+            long frames = gate.getFramesIn();
+            long passed = gate.getFramesPassed();
+            engine.setGate(gate);
+            Pass gated = decode(audio);
+            return new Utterance(file, reference, audio.getDurationNanos(), plain, gated,
+                    gate.getFramesIn() - frames, gate.getFramesPassed() - passed);
+        }
+
+        private Pass decode(WavFile audio) {
+            result = null;
+            long cpuStart = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            long lastBuffer = start;
+            engine.startListening(search);
+            for (int offset = 0; offset < audio.samples.length; offset += buffer.length) {
+                int count = Math.min(buffer.length, audio.samples.length - offset);
+                System.arraycopy(audio.samples, offset, buffer, 0, count);
+                lastBuffer = System.nanoTime();
+                engine.process(buffer, count);
+            }
+            engine.stop();
+            long end = System.nanoTime();
+            long cpu = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime() - cpuStart;
+            return new Pass(result, end - start, cpu, end - lastBuffer);
+        }
+
+        @Override
+        public void onResult(String hypothesis) {
+            result = hypothesis;
+        }
+
+        @Override
+        public void onBeginningOfSpeech() {
+        }
+
+        @Override
+        public void onEndOfSpeech() {
+        }
+
+        @Override
+        public void onPartialResult(String hypothesis) {
+        }
+
+        @Override
+        public void onError(Exception error) {
+        }
+
+        @Override
+        public void onTimeout() {
+        }
+    }
+
+    /**
+     * One decode of a recording
+     */
+    private static final class Pass {
+        final String hypothesis;
+        final long decodeNanos;
+        final long cpuNanos;
+        final long latencyNanos;
+
+        Pass(String hypothesis, long decodeNanos, long cpuNanos, long latencyNanos) {
+            this.hypothesis = hypothesis;
+            this.decodeNanos = decodeNanos;
+            this.cpuNanos = cpuNanos;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    private static final class Utterance {
+        final File file;
+        final String reference;
+        final long audioNanos;
+        final Pass plain;
+        //null unless speech.gate is set
+        final Pass gated;
+        final long frames;
+        final long framesPassed;
+
+        Utterance(File file, String reference, long audioNanos, Pass plain, Pass gated, long frames,
+                  long framesPassed) {
+            this.file = file;
+            this.reference = reference;
+            this.audioNanos = audioNanos;
+            this.plain = plain;
+            this.gated = gated;
+            this.frames = frames;
+            this.framesPassed = framesPassed;
+        }
+    }
+}
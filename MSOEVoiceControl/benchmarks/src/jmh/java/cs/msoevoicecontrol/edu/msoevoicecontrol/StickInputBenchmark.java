@@ -0,0 +1,124 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark compares the joystick helpers as they were, applying the deadband and
+ * building a new FlightControlData and completion callback for every packet, with the
+ * {@link VirtualStickLoop} that now takes the setpoint and streams it from reused fields.
+ *
+ * FlightControlData is part of the DJI SDK, which does not run on a desktop JVM, so
+ * {@link ControlData} stands in for it with the same four float fields.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StickInputBenchmark {
+
+    /**
+     * The shape of dji.common.flightcontroller.virtualstick.FlightControlData
+     */
+    static final class ControlData {
+        float pitch;
+        float roll;
+        float yaw;
+        float verticalThrottle;
+
+        ControlData(float pitch, float roll, float yaw, float verticalThrottle) {
+            this.pitch = pitch;
+            this.roll = roll;
+            this.yaw = yaw;
+            this.verticalThrottle = verticalThrottle;
+        }
+    }
+
+    interface Callback {
+        void onResult(String error);
+    }
+
+    //includes values inside the deadband
+    private static final double[] INPUTS = {-4, 0.01, 4, -0.015, 2, 0, -2, 100};
+
+    private final ControlData controlData = new ControlData(0, 0, 0, 0);
+    private VirtualClock clock;
+    private VirtualStickLoop loop;
+    private Blackhole blackhole;
+    private int next;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        clock = new VirtualClock();
+        loop = new VirtualStickLoop(new VirtualStickLoop.Output() {
+            @Override
+            public void send(float pitch, float roll, float yaw, float throttle) {
+                controlData.pitch = pitch;
+                controlData.roll = roll;
+                controlData.yaw = yaw;
+                controlData.verticalThrottle = throttle;
+                blackhole.consume(controlData);
+            }
+        }, clock, VirtualStickLoop.DEFAULT_RATE_HZ, VirtualStickLoop.DEFAULT_HOLD_MS,
+                VirtualStickLoop.DEFAULT_DECAY_MS);
+    }
+
+    private double nextInput() {
+        double input = INPUTS[next];
+        next = (next + 1) & (INPUTS.length - 1);
+        return input;
+    }
+
+    /**
+     * The original leftJoystickInput: deadband, then a new packet and callback per call
+     */
+    @Benchmark
+    public void allocatePerPacket() {
+        double pX = nextInput();
+        double pY = nextInput();
+        if (Math.abs(pX) < 0.02)
+            pX = 0;
+        if (Math.abs(pY) < 0.02)
+            pY = 0;
+        blackhole.consume(new ControlData((float) pY, (float) pX, 0, 0));
+        blackhole.consume(new Callback() {
+            @Override
+            public void onResult(String error) {
+                blackhole.consume(error);
+            }
+        });
+    }
+
+    /**
+     * The current leftJoystickInput: deadband, then update the loop's setpoint
+     */
+    @Benchmark
+    public void loopCommand() {
+        double pX = nextInput();
+        double pY = nextInput();
+        if (Math.abs(pX) < 0.02)
+            pX = 0;
+        if (Math.abs(pY) < 0.02)
+            pY = 0;
+        loop.command((float) pY, (float) pX, 0, 0);
+    }
+
+    /**
+     * One tick of the loop, which decays the setpoint and fills the reused packet
+     */
+    @Benchmark
+    public void loopTick() {
+        clock.advance(loop.getPeriodNanos());
+        if (!loop.isActive()) {
+            loop.command(4, -2, 0, 0);
+        }
+        loop.tick(clock.nanoTime());
+    }
+}
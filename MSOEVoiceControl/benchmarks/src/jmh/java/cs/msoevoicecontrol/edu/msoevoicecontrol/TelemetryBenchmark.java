@@ -0,0 +1,131 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark measures the work done on every flight controller state update: the
+ * original callback, which formatted and printed the orientation mode each time, against
+ * the current listener, which records the sample and feeds the {@link FlightStateStore},
+ * logging the orientation changes it reports.  It also times a step of the
+ * {@link SimulatedDrone} delivering updates to that listener.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryBenchmark {
+
+    /**
+     * The values of dji.common.flightcontroller.FlightOrientationMode
+     */
+    enum OrientationMode {
+        AIRCRAFT_HEADING,
+        COURSE_LOCK,
+        HOME_LOCK
+    }
+
+    private final PrintStream console = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private final DroneState state = new DroneState();
+    private final FlightRecorder flightRecorder = new FlightRecorder();
+    private File log;
+    private final FlightStateStore flightState = new FlightStateStore(new EventBus());
+    private int orientationChanges;
+    private long sample;
+
+    private SimulatedDrone drone;
+    private final DroneLink.StateListener listener = new DroneLink.StateListener() {
+        @Override
+        public void onStateUpdate(DroneState state) {
+            onState(state);
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        log = File.createTempFile("telemetry", ".flt");
+        flightRecorder.start(log);
+        drone = new SimulatedDrone(new VirtualClock(), 0, 0, 0,
+                SimulatedDrone.DEFAULT_STEP_NANOS, SimulatedDrone.DEFAULT_STEP_NANOS);
+        drone.setStateListener(listener);
+        drone.startTakeoff(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        flightRecorder.stop();
+        System.out.println("flight log " + flightRecorder.getBytesWritten() + " bytes, "
+                + flightRecorder.getDroppedSamples() + " samples dropped");
+        log.delete();
+    }
+
+    private void nextSample() {
+        sample++;
+        state.pitch = (sample % 7) * 0.5;
+        state.roll = -(sample % 5) * 0.25;
+        state.yaw = sample % 360;
+        state.velocityX = (sample % 11) * 0.1f;
+        state.altitude = 1.2f + (sample % 3) * 0.01f;
+        state.latitude = SimulatedDrone.HOME_LATITUDE + sample * 1e-7;
+        state.longitude = SimulatedDrone.HOME_LONGITUDE;
+        state.orientationMode = (int) (sample / 10000 % OrientationMode.values().length);
+    }
+
+    /**
+     * The original state callback
+     */
+    @Benchmark
+    public void printOrientation() {
+        nextSample();
+        String orientationMode = OrientationMode.values()[state.orientationMode].name();
+        console.println("Orientation mode changed " + orientationMode);
+    }
+
+    /**
+     * The current state listener in MainActivity
+     */
+    @Benchmark
+    public void recordState() {
+        nextSample();
+        onState(state);
+    }
+
+    /**
+     * One physics step of the simulator, publishing an update to the same listener
+     */
+    @Benchmark
+    public void simulatorStep() {
+        drone.advance(SimulatedDrone.DEFAULT_STEP_NANOS);
+    }
+
+    private void onState(DroneState state) {
+        flightRecorder.recordTelemetry(state.pitch, state.roll, state.yaw,
+                state.velocityX, state.velocityY, state.velocityZ, state.altitude,
+                state.latitude, state.longitude);
+        int changed = flightState.update(state);
+        if (FlightStateStore.Field.ORIENTATION_MODE.in(changed)) {
+            orientationChanges++;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This benchmark measures what the SDK's video callback pays per buffer: decoding on the
+ * callback thread as it originally did, or copying into the {@link VideoIngestQueue} for
+ * the decode thread.  The decoder is stood in for by a pass over every byte, since
+ * DJICodecManager needs Android.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VideoHandoffBenchmark {
+
+    private static final int GOP_LENGTH = 30;
+    private static final int QUEUE_CAPACITY = 32;
+
+    @Param({"2048", "32768"})
+    public int packetSize;
+
+    private byte[][] packets;
+    private int next;
+    private VideoIngestQueue queue;
+    private volatile long decoded;
+
+    private final VideoIngestQueue.Sink decoder = new VideoIngestQueue.Sink() {
+        @Override
+        public void decode(byte[] data, int size) {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += data[i];
+            }
+            decoded += sum;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setup() {
+        //one IDR picture followed by P pictures, each behind a four byte start code
+        packets = new byte[GOP_LENGTH][];
+        for (int i = 0; i < GOP_LENGTH; i++) {
+            byte[] packet = new byte[packetSize];
+            for (int j = 5; j < packetSize; j++) {
+                packet[j] = (byte) (j * 31 + i);
+            }
+            packet[3] = 1;
+            packet[4] = (byte) (i == 0 ? 0x65 : 0x41);
+            packets[i] = packet;
+        }
+        queue = new VideoIngestQueue(QUEUE_CAPACITY, decoder);
+        queue.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queue.stop();
+    }
+
+    private byte[] nextPacket() {
+        byte[] packet = packets[next];
+        next = next + 1 == GOP_LENGTH ? 0 : next + 1;
+        return packet;
+    }
+
+    @Benchmark
+    public void decodeOnCallbackThread() {
+        decoder.decode(nextPacket(), packetSize);
+    }
+
+    @Benchmark
+    public boolean offerToQueue() {
+        return queue.offer(nextPacket(), packetSize);
+    }
+
+    @Benchmark
+    public int findKeyframe() {
+        return VideoIngestQueue.findKeyframe(nextPacket(), packetSize);
+    }
+}
@@ -0,0 +1,95 @@
+package cs.msoevoicecontrol.edu.msoevoicecontrol;
+/**
+ * This reads a recording made the way the recognizer hears the microphone: 16-bit PCM,
+ * one channel.  Chunks other than the format and the samples are skipped.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+final class WavFile {
+
+    final File file;
+    final int sampleRate;
+    final short[] samples;
+
+    private WavFile(File file, int sampleRate, short[] samples) {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.samples = samples;
+    }
+
+    /**
+     * @return the length of the recording in nanoseconds
+     */
+    long getDurationNanos() {
+        return samples.length * 1000000000L / sampleRate;
+    }
+
+    static WavFile read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (readInt(in) != 0x46464952 /* RIFF */) {
+                throw new IOException(file + " is not a RIFF file");
+            }
+            readInt(in);
+            if (readInt(in) != 0x45564157 /* WAVE */) {
+                throw new IOException(file + " is not a WAVE file");
+            }
+            int sampleRate = 0;
+            while (true) {
+                int tag = readInt(in);
+                int size = readInt(in);
+                if (tag == 0x20746d66 /* fmt  */) {
+                    int format = readShort(in);
+                    int channels = readShort(in);
+                    sampleRate = readInt(in);
+                    skip(in, 6);
+                    int bits = readShort(in);
+                    if (format != 1 || channels != 1 || bits != 16) {
+                        throw new IOException(file + " is not 16-bit mono PCM");
+                    }
+                    skip(in, size - 16);
+                } else if (tag == 0x61746164 /* data */) {
+                    if (sampleRate == 0) {
+                        throw new IOException(file + " has samples before its format");
+                    }
+                    short[] samples = new short[size / 2];
+                    for (int i = 0; i < samples.length; i++) {
+                        samples[i] = (short) readShort(in);
+                    }
+                    return new WavFile(file, sampleRate, samples);
+                } else {
+                    skip(in, size);
+                }
+                if ((size & 1) != 0) {
+                    skip(in, 1);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private static int readShort(DataInputStream in) throws IOException {
+        return Short.reverseBytes(in.readShort());
+    }
+
+    private static void skip(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+}
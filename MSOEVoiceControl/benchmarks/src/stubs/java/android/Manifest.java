@@ -0,0 +1,12 @@
+package android;
+/**
+ * Stand-in for the Android class, with only the permissions FPVApplication checks
+ */
+
+public final class Manifest {
+
+    public static final class permission {
+        public static final String READ_PHONE_STATE = "android.permission.READ_PHONE_STATE";
+        public static final String WRITE_EXTERNAL_STORAGE = "android.permission.WRITE_EXTERNAL_STORAGE";
+    }
+}
@@ -0,0 +1,12 @@
+package android.app;
+/**
+ * Stand-in for the Android class, with only what FPVApplication uses
+ */
+
+import android.content.Context;
+
+public class Application extends Context {
+
+    public void onCreate() {
+    }
+}
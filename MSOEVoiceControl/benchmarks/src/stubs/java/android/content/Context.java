@@ -0,0 +1,17 @@
+package android.content;
+/**
+ * Stand-in for the Android class, with only what FPVApplication uses
+ */
+
+import java.io.File;
+
+public class Context {
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getFilesDir() {
+        throw new UnsupportedOperationException("no files on the stand-in context");
+    }
+}
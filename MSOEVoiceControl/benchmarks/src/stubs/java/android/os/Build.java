@@ -0,0 +1,15 @@
+package android.os;
+/**
+ * Stand-in for the Android class, with only what FPVApplication uses
+ */
+
+public final class Build {
+
+    public static class VERSION {
+        public static final int SDK_INT = 28;
+    }
+
+    public static class VERSION_CODES {
+        public static final int M = 23;
+    }
+}
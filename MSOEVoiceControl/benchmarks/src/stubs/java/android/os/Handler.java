@@ -0,0 +1,14 @@
+package android.os;
+/**
+ * Stand-in for the Android class.  There is no main thread, so posted work is dropped.
+ */
+
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public final boolean post(Runnable r) {
+        return false;
+    }
+}
@@ -0,0 +1,16 @@
+package android.os;
+/**
+ * Stand-in for the Android class, with only what FPVApplication uses
+ */
+
+public final class Looper {
+
+    private static final Looper MAIN = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+}
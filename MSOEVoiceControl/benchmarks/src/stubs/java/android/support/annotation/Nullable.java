@@ -0,0 +1,13 @@
+package android.support.annotation;
+/**
+ * Stand-in for the support library annotation
+ */
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+@Documented
+@Retention(RetentionPolicy.CLASS)
+public @interface Nullable {
+}
@@ -0,0 +1,13 @@
+package android.support.v4.content;
+/**
+ * Stand-in for the support library class, with only what FPVApplication uses
+ */
+
+import android.content.Context;
+
+public class ContextCompat {
+
+    public static int checkSelfPermission(Context context, String permission) {
+        return 0;
+    }
+}
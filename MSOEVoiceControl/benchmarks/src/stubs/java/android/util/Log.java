@@ -0,0 +1,12 @@
+package android.util;
+/**
+ * Stand-in for the Android class; messages go to standard error
+ */
+
+public final class Log {
+
+    public static int e(String tag, String msg, Throwable tr) {
+        System.err.println(tag + ": " + msg);
+        return 0;
+    }
+}
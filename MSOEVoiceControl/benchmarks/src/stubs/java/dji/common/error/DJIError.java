@@ -0,0 +1,17 @@
+package dji.common.error;
+/**
+ * Stand-in for the DJI SDK class, with only what the app uses
+ */
+
+public class DJIError {
+
+    private final int errorCode;
+
+    protected DJIError(int errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+}
@@ -0,0 +1,13 @@
+package dji.common.error;
+/**
+ * Stand-in for the DJI SDK class, with only what the app uses
+ */
+
+public final class DJISDKError extends DJIError {
+
+    public static final DJISDKError REGISTRATION_SUCCESS = new DJISDKError(0);
+
+    private DJISDKError(int errorCode) {
+        super(errorCode);
+    }
+}
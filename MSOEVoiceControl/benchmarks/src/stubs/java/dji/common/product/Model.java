@@ -0,0 +1,18 @@
+package dji.common.product;
+/**
+ * Stand-in for the DJI SDK enum, with one aircraft
+ */
+
+public enum Model {
+    MAVIC_PRO("Mavic Pro");
+
+    private final String displayName;
+
+    Model(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
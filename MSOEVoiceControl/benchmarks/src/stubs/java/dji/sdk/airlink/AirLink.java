@@ -0,0 +1,19 @@
+package dji.sdk.airlink;
+/**
+ * Stand-in for the DJI SDK class, with only what the app's component snapshot uses
+ */
+
+import dji.sdk.base.BaseComponent;
+
+public class AirLink extends BaseComponent {
+
+    private final WiFiLink wiFiLink = new WiFiLink();
+
+    public WiFiLink getWiFiLink() {
+        return wiFiLink;
+    }
+
+    public LightbridgeLink getLightbridgeLink() {
+        return null;
+    }
+}
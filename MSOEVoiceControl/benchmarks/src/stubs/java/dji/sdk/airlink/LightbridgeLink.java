@@ -0,0 +1,7 @@
+package dji.sdk.airlink;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+public class LightbridgeLink {
+}
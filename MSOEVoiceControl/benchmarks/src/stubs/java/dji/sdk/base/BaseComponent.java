@@ -0,0 +1,14 @@
+package dji.sdk.base;
+/**
+ * Stand-in for the DJI SDK class, with only what the app uses
+ */
+
+public class BaseComponent {
+
+    public interface ComponentListener {
+        void onConnectivityChange(boolean isConnected);
+    }
+
+    public void setComponentListener(ComponentListener listener) {
+    }
+}
@@ -0,0 +1,60 @@
+package dji.sdk.base;
+/**
+ * Stand-in for the DJI SDK class, with only what the app uses.  A stand-in product is
+ * connected and has every component.
+ */
+
+import dji.common.product.Model;
+import dji.sdk.airlink.AirLink;
+import dji.sdk.battery.Battery;
+import dji.sdk.camera.Camera;
+import dji.sdk.gimbal.Gimbal;
+
+public abstract class BaseProduct {
+
+    public enum ComponentKey {
+        FLIGHT_CONTROLLER,
+        CAMERA,
+        GIMBAL,
+        BATTERY,
+        AIR_LINK
+    }
+
+    public interface BaseProductListener {
+        void onComponentChange(ComponentKey key, BaseComponent oldComponent, BaseComponent newComponent);
+
+        void onConnectivityChange(boolean isConnected);
+    }
+
+    private final Camera camera = new Camera();
+    private final Gimbal gimbal = new Gimbal();
+    private final Battery battery = new Battery();
+    private final AirLink airLink = new AirLink();
+
+    public void setBaseProductListener(BaseProductListener listener) {
+    }
+
+    public boolean isConnected() {
+        return true;
+    }
+
+    public Model getModel() {
+        return Model.MAVIC_PRO;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    public Gimbal getGimbal() {
+        return gimbal;
+    }
+
+    public Battery getBattery() {
+        return battery;
+    }
+
+    public AirLink getAirLink() {
+        return airLink;
+    }
+}
@@ -0,0 +1,9 @@
+package dji.sdk.battery;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+import dji.sdk.base.BaseComponent;
+
+public class Battery extends BaseComponent {
+}
@@ -0,0 +1,21 @@
+package dji.sdk.camera;
+/**
+ * Stand-in for the DJI SDK class, with only what the app's component snapshot uses
+ */
+
+import dji.sdk.base.BaseComponent;
+import dji.sdk.media.MediaManager;
+
+public class Camera extends BaseComponent {
+
+    private final PlaybackManager playbackManager = new PlaybackManager();
+    private final MediaManager mediaManager = new MediaManager();
+
+    public PlaybackManager getPlaybackManager() {
+        return playbackManager;
+    }
+
+    public MediaManager getMediaManager() {
+        return mediaManager;
+    }
+}
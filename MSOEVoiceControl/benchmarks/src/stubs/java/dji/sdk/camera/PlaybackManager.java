@@ -0,0 +1,7 @@
+package dji.sdk.camera;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+public class PlaybackManager {
+}
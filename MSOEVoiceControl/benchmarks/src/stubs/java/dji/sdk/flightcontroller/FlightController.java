@@ -0,0 +1,20 @@
+package dji.sdk.flightcontroller;
+/**
+ * Stand-in for the DJI SDK class, with only what the app's component snapshot uses
+ */
+
+import dji.sdk.base.BaseComponent;
+
+public class FlightController extends BaseComponent {
+
+    private final Compass compass = new Compass();
+    private final Simulator simulator = new Simulator();
+
+    public Compass getCompass() {
+        return compass;
+    }
+
+    public Simulator getSimulator() {
+        return simulator;
+    }
+}
@@ -0,0 +1,7 @@
+package dji.sdk.flightcontroller;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+public class Simulator {
+}
@@ -0,0 +1,9 @@
+package dji.sdk.gimbal;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+import dji.sdk.base.BaseComponent;
+
+public class Gimbal extends BaseComponent {
+}
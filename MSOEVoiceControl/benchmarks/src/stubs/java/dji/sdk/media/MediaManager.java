@@ -0,0 +1,7 @@
+package dji.sdk.media;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+public class MediaManager {
+}
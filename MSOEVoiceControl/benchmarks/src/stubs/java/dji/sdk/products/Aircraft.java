@@ -0,0 +1,22 @@
+package dji.sdk.products;
+/**
+ * Stand-in for the DJI SDK class, with only what the app uses
+ */
+
+import dji.sdk.base.BaseProduct;
+import dji.sdk.flightcontroller.FlightController;
+import dji.sdk.remotecontroller.RemoteController;
+
+public class Aircraft extends BaseProduct {
+
+    private final FlightController flightController = new FlightController();
+    private final RemoteController remoteController = new RemoteController();
+
+    public FlightController getFlightController() {
+        return flightController;
+    }
+
+    public RemoteController getRemoteController() {
+        return remoteController;
+    }
+}
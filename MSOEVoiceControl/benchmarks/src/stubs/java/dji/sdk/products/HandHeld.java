@@ -0,0 +1,9 @@
+package dji.sdk.products;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+import dji.sdk.base.BaseProduct;
+
+public class HandHeld extends BaseProduct {
+}
@@ -0,0 +1,9 @@
+package dji.sdk.remotecontroller;
+/**
+ * Stand-in for the DJI SDK class
+ */
+
+import dji.sdk.base.BaseComponent;
+
+public class RemoteController extends BaseComponent {
+}
@@ -0,0 +1,46 @@
+package dji.sdk.sdkmanager;
+/**
+ * Stand-in for the DJI SDK class, with only what the app uses.  The product it reports is
+ * set with {@link #setProduct(BaseProduct)}, which the real class does not have, in place
+ * of connecting to an aircraft.
+ */
+
+import android.content.Context;
+
+import dji.common.error.DJIError;
+import dji.sdk.base.BaseProduct;
+
+public final class DJISDKManager {
+
+    public interface SDKManagerCallback {
+        void onRegister(DJIError error);
+
+        void onProductChange(BaseProduct oldProduct, BaseProduct newProduct);
+    }
+
+    private static final DJISDKManager INSTANCE = new DJISDKManager();
+
+    private volatile BaseProduct product;
+
+    private DJISDKManager() {
+    }
+
+    public static DJISDKManager getInstance() {
+        return INSTANCE;
+    }
+
+    public void registerApp(Context context, SDKManagerCallback callback) {
+    }
+
+    public boolean startConnectionToProduct() {
+        return true;
+    }
+
+    public BaseProduct getProduct() {
+        return product;
+    }
+
+    public void setProduct(BaseProduct product) {
+        this.product = product;
+    }
+}